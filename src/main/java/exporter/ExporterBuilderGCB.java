@@ -0,0 +1,29 @@
+package exporter;
+
+import org.gephi.io.exporter.api.FileType;
+import org.gephi.io.exporter.spi.GraphExporter;
+import org.gephi.io.exporter.spi.GraphFileExporterBuilder;
+import org.openide.util.NbBundle;
+import org.openide.util.lookup.ServiceProvider;
+
+@ServiceProvider(service = GraphFileExporterBuilder.class)
+public class ExporterBuilderGCB implements GraphFileExporterBuilder {
+
+    public static final String IDENTIFER = "gcb";
+
+    @Override
+    public GraphExporter buildExporter() {
+        return new ExporterGCB();
+    }
+
+    @Override
+    public String getName() {
+        return IDENTIFER;
+    }
+
+    @Override
+    public FileType[] getFileTypes() {
+        FileType ft = new FileType(".gcb", NbBundle.getMessage(getClass(), "fileType_GCB_Name"));
+        return new FileType[] {ft};
+    }
+}
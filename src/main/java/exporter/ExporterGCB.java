@@ -0,0 +1,410 @@
+package exporter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.gephi.graph.api.Column;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Element;
+import org.gephi.graph.api.ElementProperties;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphController;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.Table;
+import org.gephi.io.exporter.spi.ByteExporter;
+import org.gephi.io.exporter.spi.GraphExporter;
+import org.gephi.project.api.Workspace;
+import org.gephi.utils.longtask.spi.LongTask;
+import org.gephi.utils.progress.Progress;
+import org.gephi.utils.progress.ProgressTicket;
+import org.openide.util.Lookup;
+
+import importer.GCBFormat;
+
+/**
+ * Writes the graph in the columnar binary format described in {@link GCBFormat}.
+ * Dynamic and array columns are skipped, other non-primitive columns are written
+ * as their string form.
+ */
+public class ExporterGCB implements GraphExporter, ByteExporter, LongTask {
+
+    private Workspace workspace;
+    private OutputStream stream;
+    private boolean exportVisible = false;
+    private ProgressTicket progressTicket;
+    private boolean cancel = false;
+
+    private final ByteBuffer buf = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+    @Override
+    public boolean execute() {
+        var graphModel = Lookup.getDefault().lookup(GraphController.class).getGraphModel(workspace);
+        Graph graph = exportVisible ? graphModel.getGraphVisible() : graphModel.getGraph();
+        graph.readLock();
+        try {
+            exportData(graph);
+            return !cancel;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            graph.readUnlockAll();
+        }
+    }
+
+    private void exportData(Graph graph) throws IOException {
+        Node[] nodes = graph.getNodes().toArray();
+        Edge[] edges = graph.getEdges().toArray();
+        int n = nodes.length;
+        int m = edges.length;
+        Progress.start(progressTicket, n + m);
+
+        var nodeColumns = exportedColumns(graph.getModel().getNodeTable());
+        var edgeColumns = exportedColumns(graph.getModel().getEdgeTable());
+
+        beginSection(24);
+        putInt(GCBFormat.MAGIC);
+        putInt(GCBFormat.VERSION);
+        putInt(n);
+        putInt(m);
+        putInt(nodeColumns.size());
+        putInt(edgeColumns.size());
+        endSection(24);
+
+        var ids = new String[n];
+        var labels = new String[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = String.valueOf(nodes[i].getId());
+            labels[i] = nodes[i].getLabel();
+        }
+        writeStringTable(ids);
+        writeStringTable(labels);
+
+        long geometryLength = 20L * n;
+        beginSection(geometryLength);
+        for (var node : nodes) {
+            putFloat(node.x());
+        }
+        for (var node : nodes) {
+            putFloat(node.y());
+        }
+        for (var node : nodes) {
+            putFloat(node.z());
+        }
+        for (var node : nodes) {
+            putFloat(node.size());
+        }
+        for (var node : nodes) {
+            putInt(argb(node));
+        }
+        endSection(geometryLength);
+        Progress.progress(progressTicket, n);
+
+        // Store ids have gaps once nodes were removed, so size the lookup by the largest one
+        int maxStoreId = 0;
+        for (var node : nodes) {
+            maxStoreId = Math.max(maxStoreId, node.getStoreId());
+        }
+        var indexByStoreId = new int[maxStoreId + 1];
+        for (int i = 0; i < n; i++) {
+            indexByStoreId[nodes[i].getStoreId()] = i;
+        }
+
+        long edgesLength = 17L * m;
+        beginSection(edgesLength);
+        for (var edge : edges) {
+            putInt(indexByStoreId[edge.getSource().getStoreId()]);
+        }
+        for (var edge : edges) {
+            putInt(indexByStoreId[edge.getTarget().getStoreId()]);
+        }
+        for (var edge : edges) {
+            putDouble(edge.getWeight());
+        }
+        for (var edge : edges) {
+            putByte(edge.isDirected() ? (byte) 1 : (byte) 0);
+        }
+        endSection(edgesLength);
+
+        var edgeLabels = new String[m];
+        for (int i = 0; i < m; i++) {
+            edgeLabels[i] = edges[i].getLabel();
+        }
+        writeStringTable(edgeLabels);
+        Progress.progress(progressTicket, m);
+
+        for (var column : nodeColumns) {
+            if (cancel) {
+                return;
+            }
+            writeColumn(column, nodes);
+        }
+        for (var column : edgeColumns) {
+            if (cancel) {
+                return;
+            }
+            writeColumn(column, edges);
+        }
+        flush();
+        Progress.finish(progressTicket);
+    }
+
+    private static List<Column> exportedColumns(Table table) {
+        var columns = new ArrayList<Column>();
+        for (var column : table) {
+            // Id, label, weight and time set are written with the elements themselves
+            if (!column.isProperty() && !column.isDynamic() && !column.isArray()) {
+                columns.add(column);
+            }
+        }
+        return columns;
+    }
+
+    private void writeColumn(Column column, Element[] elements) throws IOException {
+        int count = elements.length;
+        byte type = GCBFormat.typeOf(column.getTypeClass());
+        byte[] idBytes = column.getId().getBytes(StandardCharsets.UTF_8);
+        byte[] titleBytes = column.getTitle().getBytes(StandardCharsets.UTF_8);
+        long headerLength = GCBFormat.padded(9 + idBytes.length + titleBytes.length);
+
+        if (type == GCBFormat.TYPE_STRING) {
+            var values = new String[count];
+            for (int i = 0; i < count; i++) {
+                Object value = elements[i].getAttribute(column);
+                values[i] = value != null ? value.toString() : null;
+            }
+            var table = new EncodedStrings(values);
+            long length = headerLength + table.length();
+            beginSection(length);
+            putColumnHeader(idBytes, titleBytes, type);
+            table.write();
+            endSection(length);
+            return;
+        }
+
+        int width;
+        switch (type) {
+            case GCBFormat.TYPE_LONG:
+            case GCBFormat.TYPE_DOUBLE:
+                width = 8;
+                break;
+            case GCBFormat.TYPE_BOOLEAN:
+                width = 1;
+                break;
+            default:
+                width = 4;
+                break;
+        }
+        var values = new Object[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = elements[i].getAttribute(column);
+        }
+        long bitmapLength = GCBFormat.padded(GCBFormat.bitmapBytes(count));
+        long length = headerLength + bitmapLength + (long) width * count;
+        beginSection(length);
+        putColumnHeader(idBytes, titleBytes, type);
+        writeBitmap(values);
+        for (Object value : values) {
+            switch (type) {
+                case GCBFormat.TYPE_INT:
+                    putInt(value != null ? ((Number) value).intValue() : 0);
+                    break;
+                case GCBFormat.TYPE_LONG:
+                    putLong(value != null ? ((Number) value).longValue() : 0L);
+                    break;
+                case GCBFormat.TYPE_FLOAT:
+                    putFloat(value != null ? ((Number) value).floatValue() : 0f);
+                    break;
+                case GCBFormat.TYPE_DOUBLE:
+                    putDouble(value != null ? ((Number) value).doubleValue() : 0d);
+                    break;
+                default:
+                    putByte(Boolean.TRUE.equals(value) ? (byte) 1 : (byte) 0);
+                    break;
+            }
+        }
+        endSection(length);
+    }
+
+    private void putColumnHeader(byte[] idBytes, byte[] titleBytes, byte type) throws IOException {
+        putInt(idBytes.length);
+        putBytes(idBytes);
+        putInt(titleBytes.length);
+        putBytes(titleBytes);
+        putByte(type);
+        pad(9 + idBytes.length + titleBytes.length);
+    }
+
+    private void writeStringTable(String[] values) throws IOException {
+        var table = new EncodedStrings(values);
+        beginSection(table.length());
+        table.write();
+        endSection(table.length());
+    }
+
+    /**
+     * Strings encoded up front, so the section length is known before writing
+     */
+    private class EncodedStrings {
+        private final Object[] values;
+        private final byte[][] bytes;
+        private final long bytesLength;
+
+        EncodedStrings(String[] strings) {
+            this.values = strings;
+            this.bytes = new byte[strings.length][];
+            long total = 0;
+            for (int i = 0; i < strings.length; i++) {
+                if (strings[i] != null) {
+                    bytes[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+                    total += bytes[i].length;
+                }
+            }
+            if (total > Integer.MAX_VALUE) {
+                throw new IllegalStateException("String table is larger than 2 GB");
+            }
+            this.bytesLength = total;
+        }
+
+        long length() {
+            return GCBFormat.padded(GCBFormat.bitmapBytes(values.length)) + 4L * (values.length + 1) + bytesLength;
+        }
+
+        void write() throws IOException {
+            writeBitmap(values);
+            int offset = 0;
+            putInt(offset);
+            for (var b : bytes) {
+                offset += b != null ? b.length : 0;
+                putInt(offset);
+            }
+            for (var b : bytes) {
+                if (b != null) {
+                    putBytes(b);
+                }
+            }
+        }
+    }
+
+    private void writeBitmap(Object[] values) throws IOException {
+        int bitmapBytes = GCBFormat.bitmapBytes(values.length);
+        for (int i = 0; i < bitmapBytes; i++) {
+            int bits = 0;
+            for (int j = 0; j < 8 && i * 8 + j < values.length; j++) {
+                if (values[i * 8 + j] != null) {
+                    bits |= 1 << j;
+                }
+            }
+            putByte((byte) bits);
+        }
+        pad(bitmapBytes);
+    }
+
+    private static int argb(ElementProperties element) {
+        int a = Math.round(element.alpha() * 255);
+        int r = Math.round(element.r() * 255);
+        int g = Math.round(element.g() * 255);
+        int b = Math.round(element.b() * 255);
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    private void beginSection(long length) throws IOException {
+        putLong(length);
+    }
+
+    private void endSection(long length) throws IOException {
+        pad(length);
+    }
+
+    private void pad(long length) throws IOException {
+        for (long i = length; i < GCBFormat.padded(length); i++) {
+            putByte((byte) 0);
+        }
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buf.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        stream.write(buf.array(), 0, buf.position());
+        buf.clear();
+    }
+
+    private void putByte(byte b) throws IOException {
+        ensure(1);
+        buf.put(b);
+    }
+
+    private void putInt(int i) throws IOException {
+        ensure(4);
+        buf.putInt(i);
+    }
+
+    private void putLong(long l) throws IOException {
+        ensure(8);
+        buf.putLong(l);
+    }
+
+    private void putFloat(float f) throws IOException {
+        ensure(4);
+        buf.putFloat(f);
+    }
+
+    private void putDouble(double d) throws IOException {
+        ensure(8);
+        buf.putDouble(d);
+    }
+
+    private void putBytes(byte[] bytes) throws IOException {
+        if (bytes.length > buf.capacity()) {
+            flush();
+            stream.write(bytes);
+            return;
+        }
+        ensure(bytes.length);
+        buf.put(bytes);
+    }
+
+    @Override
+    public boolean isExportVisible() {
+        return exportVisible;
+    }
+
+    @Override
+    public void setExportVisible(boolean exportVisible) {
+        this.exportVisible = exportVisible;
+    }
+
+    @Override
+    public void setOutputStream(OutputStream stream) {
+        this.stream = stream;
+    }
+
+    @Override
+    public Workspace getWorkspace() {
+        return workspace;
+    }
+
+    @Override
+    public void setWorkspace(Workspace workspace) {
+        this.workspace = workspace;
+    }
+
+    @Override
+    public boolean cancel() {
+        cancel = true;
+        return true;
+    }
+
+    @Override
+    public void setProgressTicket(ProgressTicket progressTicket) {
+        this.progressTicket = progressTicket;
+    }
+}
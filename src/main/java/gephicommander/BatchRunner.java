@@ -0,0 +1,402 @@
+package gephicommander;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Runs one pipeline template over many graph files.
+ * <p>
+ * Gephi keeps its state in the current workspace of one JVM, so parallelism comes from
+ * a bounded set of worker JVMs ({@code --worker}). Each worker is started once and then
+ * takes files from a shared queue, running every file in its own fresh project, so JVM
+ * startup is paid per worker and not per file. Workers get the cache, PNG encoder and
+ * metrics flags of this JVM; a worker that runs over the per-file timeout is killed and
+ * replaced.
+ * <p>
+ * Strings in the template may use {file}, {dir}, {name}, {ext} and {index}.
+ */
+class BatchRunner {
+
+    private static final String RESULT_MARKER = "@@batch-result ";
+
+    private final List<File> files;
+    private final JsonArray template;
+    private final List<String> jvmArgs;
+    private final List<String> workerArgs;
+    private final long timeoutMillis;
+    private final AtomicInteger nextJob = new AtomicInteger();
+    private final JsonObject[] results;
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        var thread = new Thread(r, "batch-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private BatchRunner(List<File> files, JsonArray template, List<String> jvmArgs, long timeoutMillis) {
+        this.files = files;
+        this.template = template;
+        this.jvmArgs = jvmArgs;
+        // Workers use the cache, PNG encoder and metrics flags of this JVM
+        this.workerArgs = PipelineFlags.current().workerArgs();
+        this.timeoutMillis = timeoutMillis;
+        this.results = new JsonObject[files.size()];
+    }
+
+    /*
+     * {op:'batch', files:'dir/*.gml' or [...], pipeline:[...], threads:8, timeoutMillis:60000,
+     *  summaryFile:'summary.json'}
+     */
+    static void run(JsonObject options) {
+        var files = resolveFiles(options.get("files"));
+        var template = options.get("pipeline").getAsJsonArray();
+        int threads = options.has("threads") ?
+            options.get("threads").getAsInt() :
+            Runtime.getRuntime().availableProcessors();
+        threads = Math.max(1, Math.min(threads, files.size()));
+
+        List<String> jvmArgs;
+        if (options.has("jvmArgs")) {
+            jvmArgs = new ArrayList<>();
+            options.get("jvmArgs").getAsJsonArray().forEach(el -> jvmArgs.add(el.getAsString()));
+        } else {
+            jvmArgs = ManagementFactory.getRuntimeMXBean().getInputArguments();
+        }
+
+        // A file that takes longer kills its worker, the next file gets a new one
+        long timeoutMillis = options.has("timeoutMillis") ? options.get("timeoutMillis").getAsLong() : 0;
+
+        System.out.printf("Batch: %s files, %s workers%n", files.size(), threads);
+        var runner = new BatchRunner(files, template, jvmArgs, timeoutMillis);
+        long start = System.nanoTime();
+        var workers = new ArrayList<Thread>();
+        for (int w = 0; w < threads; w++) {
+            int workerId = w;
+            var thread = new Thread(() -> runner.feedWorker(workerId), "batch-worker-"+w);
+            thread.start();
+            workers.add(thread);
+        }
+        for (var thread : workers) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                runner.watchdog.shutdownNow();
+                return;
+            }
+        }
+        runner.watchdog.shutdownNow();
+        long wallMillis = (System.nanoTime() - start) / 1_000_000;
+
+        var summary = runner.summarize(wallMillis, threads);
+        var json = new GsonBuilder().setPrettyPrinting().create().toJson(summary);
+        System.out.println(json);
+        if (options.has("summaryFile")) {
+            try {
+                Files.writeString(Paths.get(options.get("summaryFile").getAsString()), json);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /*
+     * Entry point of a worker JVM: one job per stdin line, {index, pipeline}, one result line per job.
+     * Args are the pipeline flags passed on by the parent.
+     */
+    static void runWorker(String[] args) {
+        var flags = new PipelineFlags();
+        for (int i = 0; i < args.length; i++) {
+            int taken = flags.parse(args, i);
+            if (taken == 0) {
+                throw new IllegalArgumentException("Unknown worker option: "+args[i]);
+            }
+            i += taken - 1;
+        }
+        Locale.setDefault(Locale.ENGLISH);  // Ignore Gephi localization
+        flags.apply();
+        // Ops print freely to stdout, results are told apart by the marker
+        PrintStream out = System.out;
+        try (var in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                var job = JsonParser.parseString(line).getAsJsonObject();
+                // Metrics go back in the result instead of being printed, recordings are numbered by file
+                var result = flags.runIsolated(job.get("pipeline").getAsJsonArray(), null, false,
+                    job.get("index").getAsInt());
+                out.println(RESULT_MARKER + result);
+                out.flush();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void feedWorker(int workerId) {
+        Process process = null;
+        BufferedReader fromWorker = null;
+        Writer toWorker = null;
+        int job;
+        while ((job = nextJob.getAndIncrement()) < files.size()) {
+            var file = files.get(job);
+            var timedOut = new AtomicBoolean();
+            ScheduledFuture<?> timer = null;
+            try {
+                if (process == null || !process.isAlive()) {
+                    process = startWorker();
+                    fromWorker = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+                    toWorker = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+                }
+                if (timeoutMillis > 0) {
+                    var worker = process;
+                    timer = watchdog.schedule(() -> {
+                        timedOut.set(true);
+                        worker.destroyForcibly();
+                    }, timeoutMillis, TimeUnit.MILLISECONDS);
+                }
+                var jobLine = new JsonObject();
+                jobLine.addProperty("index", job);
+                jobLine.add("pipeline", instantiate(template, file, job));
+                toWorker.write(jobLine.toString());
+                toWorker.write('\n');
+                toWorker.flush();
+
+                JsonObject result = null;
+                String line;
+                while ((line = fromWorker.readLine()) != null) {
+                    if (line.startsWith(RESULT_MARKER)) {
+                        result = JsonParser.parseString(line.substring(RESULT_MARKER.length())).getAsJsonObject();
+                        break;
+                    }
+                    System.out.printf("[%s] %s%n", file.getName(), line);
+                }
+                if (timer != null) {
+                    timer.cancel(false);
+                }
+                if (result == null) {
+                    result = new JsonObject();
+                    result.addProperty("status", "error");
+                    result.addProperty("error", timedOut.get() ?
+                        timeoutError() :
+                        "Worker exited while processing this file");
+                    process = null;
+                }
+                result.addProperty("file", file.getPath());
+                results[job] = result;
+                System.out.printf("Batch: %s %s in %s ms (worker %s)%n",
+                    file.getName(), result.get("status").getAsString(),
+                    result.has("millis") ? result.get("millis").getAsLong() : -1, workerId);
+            } catch (IOException e) {
+                if (timer != null) {
+                    timer.cancel(false);
+                }
+                var result = new JsonObject();
+                result.addProperty("file", file.getPath());
+                result.addProperty("status", "error");
+                result.addProperty("error", timedOut.get() ?
+                    timeoutError() :
+                    String.valueOf(e));
+                results[job] = result;
+                System.out.printf("Batch: %s error: %s (worker %s)%n",
+                    file.getName(), result.get("error").getAsString(), workerId);
+                if (process != null) {
+                    process.destroy();
+                }
+                process = null;
+            }
+        }
+        if (process != null) {
+            try {
+                toWorker.close();
+                process.waitFor();
+            } catch (IOException e) {
+                process.destroy();
+            } catch (InterruptedException e) {
+                process.destroy();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private String timeoutError() {
+        return "Timed out after "+timeoutMillis+" ms, worker restarted";
+    }
+
+    private Process startWorker() throws IOException {
+        var command = new ArrayList<String>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(GephiCommander.class.getName());
+        command.add("--worker");
+        command.addAll(workerArgs);
+        return new ProcessBuilder(command)
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+    }
+
+    private JsonObject summarize(long wallMillis, int workers) {
+        var summary = new JsonObject();
+        int ok = 0;
+        long sumMillis = 0;
+        long maxMillis = 0;
+        var failed = new JsonArray();
+        var all = new JsonArray();
+        for (var result : results) {
+            all.add(result);
+            if (result.get("status").getAsString().equals("ok")) {
+                ok++;
+            } else {
+                failed.add(result.get("file").getAsString());
+            }
+            if (result.has("millis")) {
+                long millis = result.get("millis").getAsLong();
+                sumMillis += millis;
+                maxMillis = Math.max(maxMillis, millis);
+            }
+        }
+        summary.addProperty("files", results.length);
+        summary.addProperty("succeeded", ok);
+        summary.addProperty("failed", results.length - ok);
+        summary.addProperty("workers", workers);
+        summary.addProperty("wallMillis", wallMillis);
+        summary.addProperty("sumMillis", sumMillis);
+        summary.addProperty("meanMillis", results.length == 0 ? 0 : sumMillis / results.length);
+        summary.addProperty("maxMillis", maxMillis);
+        // How much of the ideal workers-times speed-up was achieved
+        summary.addProperty("parallelEfficiency",
+            wallMillis == 0 ? 0 : (double) sumMillis / wallMillis / workers);
+        summary.add("failedFiles", failed);
+        summary.add("results", all);
+        return summary;
+    }
+
+    /*
+     * Copies the template, fills placeholders and makes sure it imports the file
+     */
+    static JsonArray instantiate(JsonArray template, File file, int index) {
+        String fileName = file.getName();
+        int dot = fileName.lastIndexOf('.');
+        var values = Map.of(
+            "{file}", file.getAbsolutePath(),
+            "{dir}", file.getAbsoluteFile().getParent(),
+            "{name}", dot > 0 ? fileName.substring(0, dot) : fileName,
+            "{ext}", dot > 0 ? fileName.substring(dot + 1) : "",
+            "{index}", String.valueOf(index));
+
+        var pipeline = fill(template.deepCopy(), values).getAsJsonArray();
+        boolean hasImport = false;
+        for (var opEl : pipeline) {
+            if (opEl.getAsJsonObject().get("op").getAsString().equals("import")) {
+                hasImport = true;
+            }
+        }
+        if (!hasImport) {
+            var importOp = new JsonObject();
+            importOp.addProperty("op", "import");
+            importOp.addProperty("file", file.getAbsolutePath());
+            var withImport = new JsonArray();
+            withImport.add(importOp);
+            withImport.addAll(pipeline);
+            pipeline = withImport;
+        }
+        return pipeline;
+    }
+
+    private static JsonElement fill(JsonElement el, Map<String, String> values) {
+        if (el.isJsonArray()) {
+            var arr = el.getAsJsonArray();
+            for (int i = 0; i < arr.size(); i++) {
+                arr.set(i, fill(arr.get(i), values));
+            }
+        } else if (el.isJsonObject()) {
+            for (var entry : el.getAsJsonObject().entrySet()) {
+                entry.setValue(fill(entry.getValue(), values));
+            }
+        } else if (el.isJsonPrimitive() && el.getAsJsonPrimitive().isString()) {
+            String s = el.getAsString();
+            for (var entry : values.entrySet()) {
+                s = s.replace(entry.getKey(), entry.getValue());
+            }
+            return new JsonPrimitive(s);
+        }
+        return el;
+    }
+
+    /*
+     * Accepts a path, a glob like 'C:/data/*.gml' or an array of those
+     */
+    static List<File> resolveFiles(JsonElement filesEl) {
+        var patterns = new ArrayList<String>();
+        if (filesEl.isJsonArray()) {
+            filesEl.getAsJsonArray().forEach(el -> patterns.add(el.getAsString()));
+        } else {
+            patterns.add(filesEl.getAsString());
+        }
+
+        var files = new ArrayList<File>();
+        for (String pattern : patterns) {
+            if (!pattern.contains("*") && !pattern.contains("?") && !pattern.contains("{")) {
+                files.add(new File(pattern));
+                continue;
+            }
+            String normalized = pattern.replace('\\', '/');
+            // Walk from the deepest directory without wildcards
+            int firstWildcard = normalized.length();
+            for (char c : new char[] {'*', '?', '{', '['}) {
+                int i = normalized.indexOf(c);
+                if (i >= 0) {
+                    firstWildcard = Math.min(firstWildcard, i);
+                }
+            }
+            int lastSlash = normalized.lastIndexOf('/', firstWildcard);
+            Path base = Paths.get(lastSlash >= 0 ? normalized.substring(0, lastSlash + 1) : ".");
+            String relativeGlob = normalized.substring(lastSlash + 1);
+            var matcher = FileSystems.getDefault().getPathMatcher("glob:"+relativeGlob);
+            try (Stream<Path> walk = Files.walk(base)) {
+                files.addAll(walk
+                    .filter(Files::isRegularFile)
+                    .filter(p -> matcher.matches(base.relativize(p)))
+                    .sorted()
+                    .map(Path::toFile)
+                    .collect(Collectors.toList()));
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Cannot list files for "+pattern, e);
+            }
+        }
+        return files;
+    }
+}
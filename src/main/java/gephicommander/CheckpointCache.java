@@ -0,0 +1,619 @@
+package gephicommander;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.gephi.graph.api.Column;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Element;
+import org.gephi.graph.api.GraphController;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.Table;
+import org.gephi.project.api.ProjectController;
+import org.openide.util.Lookup;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Snapshots the graph after expensive ops and restores it when a later run
+ * starts with the same ops on the same input.
+ * <p>
+ * The key of op i is a SHA-256 over the key of op i-1 and the canonical JSON
+ * of op i; import ops also hash the contents of the imported file. A snapshot
+ * holds nodes and edges with ids, labels, positions, sizes, colors, edge types,
+ * attribute columns and the visible view. A graph with a column or an edge type
+ * label a snapshot can't hold is not stored, nor are layouts with a time budget, so a
+ * restored run never differs from one that ran every op. The cache directory is trimmed to a size
+ * limit, least recently used snapshots first.
+ */
+class CheckpointCache {
+
+    private static final int MAGIC = 0x47434350; // GCCP
+    // 2 added edge type labels, version 1 files may have left columns out
+    private static final int VERSION = 2;
+
+    /*
+     * Ops whose effect is fully kept in a snapshot
+     */
+    private static final Set<String> GRAPH_OPS = Set.of(
+        "import", "statistics", "filters", "layouts",
+        "colorNodesBy", "sizeNodesBy", "labelNodesBy", "labelEdgesBy");
+    /*
+     * Ops which also touch state outside of the graph (preview properties),
+     * they are run again after a restore
+     */
+    private static final Set<String> REPLAYED_OPS = Set.of("preview", "colorEdgesBy");
+    /*
+     * Ops worth a snapshot
+     */
+    private static final Set<String> CHECKPOINT_OPS = Set.of("import", "statistics", "filters", "layouts");
+
+    private static CheckpointCache current = null;
+
+    static void enable(File dir, long maxBytes) {
+        current = new CheckpointCache(dir.toPath(), maxBytes);
+    }
+
+    /*
+     * Null when caching is disabled
+     */
+    static CheckpointCache current() {
+        return current;
+    }
+
+    private final Path dir;
+    private final long maxBytes;
+
+    private CheckpointCache(Path dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    /*
+     * Key for each op of the cacheable prefix, null for the rest
+     */
+    String[] keysFor(JsonArray options) {
+        var keys = new String[options.size()];
+        String previous = "gephi-commander-checkpoint-" + VERSION;
+        for (int i = 0; i < options.size(); i++) {
+            var op = options.get(i).getAsJsonObject();
+            if (!isCacheable(op)) {
+                break;
+            }
+            try {
+                var digest = MessageDigest.getInstance("SHA-256");
+                digest.update(previous.getBytes(StandardCharsets.UTF_8));
+                digest.update(canonical(op).getBytes(StandardCharsets.UTF_8));
+                if (op.get("op").getAsString().equals("import")) {
+                    if (!hashInput(op, digest)) {
+                        break;
+                    }
+                }
+                previous = toHex(digest.digest());
+                keys[i] = previous;
+            } catch (NoSuchAlgorithmException | IOException e) {
+                e.printStackTrace();
+                break;
+            }
+        }
+        return keys;
+    }
+
+    boolean shouldStore(JsonObject op) {
+        return CHECKPOINT_OPS.contains(op.get("op").getAsString());
+    }
+
+    static boolean isReplayed(JsonObject op) {
+        return REPLAYED_OPS.contains(op.get("op").getAsString());
+    }
+
+    /*
+     * Restores the latest snapshot of the prefix into a new project.
+     * Returns its op index or -1.
+     */
+    int restoreLongest(String[] keys) {
+        for (int i = keys.length - 1; i >= 0; i--) {
+            if (keys[i] == null) {
+                continue;
+            }
+            Path file = dir.resolve(keys[i] + ".ckpt");
+            if (!Files.isRegularFile(file)) {
+                continue;
+            }
+            try {
+                long start = System.nanoTime();
+                restore(file);
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+                System.out.printf("Restored checkpoint of ops 0..%s from %s in %s ms%n",
+                    i, file, (System.nanoTime() - start) / 1_000_000);
+                return i;
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Ignoring unreadable checkpoint "+file);
+                e.printStackTrace();
+            }
+        }
+        return -1;
+    }
+
+    void store(String key) {
+        var graphModel = Lookup.getDefault().lookup(GraphController.class).getGraphModel();
+        if (graphModel == null) {
+            return;
+        }
+        String unsupported = unsupported(graphModel);
+        if (unsupported != null) {
+            System.out.println("Not saving checkpoint "+key+": "+unsupported);
+            return;
+        }
+        try {
+            Files.createDirectories(dir);
+            Path file = dir.resolve(key + ".ckpt");
+            Path tmp = Files.createTempFile(dir, key, ".tmp");
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                write(graphModel, out);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            evict();
+        } catch (IOException e) {
+            System.out.println("Failed to save checkpoint "+key);
+            e.printStackTrace();
+        }
+    }
+
+    private void evict() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.filter(p -> p.toString().endsWith(".ckpt")).collect(Collectors.toList());
+        }
+        long total = 0;
+        var modified = new TreeMap<Path, Long>();
+        var sizes = new TreeMap<Path, Long>();
+        for (var f : files) {
+            // Batch workers share the directory, another one may have evicted it already
+            try {
+                sizes.put(f, Files.size(f));
+                modified.put(f, Files.getLastModifiedTime(f).toMillis());
+                total += sizes.get(f);
+            } catch (NoSuchFileException e) {
+                sizes.remove(f);
+            }
+        }
+        files = new ArrayList<>(modified.keySet());
+        files.sort(Comparator.comparing(modified::get));
+        for (var f : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            if (Files.deleteIfExists(f)) {
+                System.out.println("Evicted checkpoint "+f.getFileName());
+            }
+            total -= sizes.get(f);
+        }
+    }
+
+    private static boolean isCacheable(JsonObject op) {
+        String name = op.get("op").getAsString();
+        if (!GRAPH_OPS.contains(name) && !REPLAYED_OPS.contains(name)) {
+            return false;
+        }
+        if (name.equals("layouts")) {
+            // A layout stopped by the clock depends on the machine, not on the key
+            if (TimeBudget.isPipelineLimited()) {
+                return false;
+            }
+            // Frames exported during a layout are a side effect a snapshot can't repeat
+            for (var layout : op.get("values").getAsJsonArray()) {
+                if (layout.getAsJsonObject().has("export") || layout.getAsJsonObject().has("maxMillis")) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean hashInput(JsonObject op, MessageDigest digest) throws IOException {
+        if (!op.has("file")) {
+            return false;
+        }
+        var fileEl = op.get("file");
+        if (fileEl.isJsonPrimitive()) {
+            return hashFile(new File(fileEl.getAsString()), digest);
+        }
+        if (!fileEl.isJsonArray()) {
+            return false;
+        }
+        // A list of files is hashed in order, the merged graph depends on it
+        var files = BatchRunner.resolveFiles(fileEl);
+        for (var file : files) {
+            digest.update(file.getPath().getBytes(StandardCharsets.UTF_8));
+            if (!hashFile(file, digest)) {
+                return false;
+            }
+        }
+        return !files.isEmpty();
+    }
+
+    private static boolean hashFile(File file, MessageDigest digest) throws IOException {
+        if (!file.isFile()) {
+            return false;
+        }
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return true;
+    }
+
+    /*
+     * JSON with object keys sorted, so key order in the pipeline doesn't matter
+     */
+    static String canonical(JsonElement el) {
+        if (el.isJsonObject()) {
+            var sorted = new TreeMap<String, JsonElement>();
+            for (var entry : el.getAsJsonObject().entrySet()) {
+                sorted.put(entry.getKey(), entry.getValue());
+            }
+            return sorted.entrySet().stream()
+                .map(e -> new JsonPrimitive(e.getKey()) + ":" + canonical(e.getValue()))
+                .collect(Collectors.joining(",", "{", "}"));
+        }
+        if (el.isJsonArray()) {
+            var parts = new ArrayList<String>();
+            el.getAsJsonArray().forEach(item -> parts.add(canonical(item)));
+            return "[" + String.join(",", parts) + "]";
+        }
+        return el.toString();
+    }
+
+    private static String toHex(byte[] bytes) {
+        var sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private static void write(GraphModel graphModel, DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        var graph = graphModel.getGraph();
+        graph.readLock();
+        try {
+            List<Column> nodeColumns = writeColumns(graphModel.getNodeTable(), out);
+            List<Column> edgeColumns = writeColumns(graphModel.getEdgeTable(), out);
+            writeEdgeTypes(graphModel, out);
+
+            var nodeIndex = new HashMap<Node, Integer>();
+            out.writeInt(graph.getNodeCount());
+            for (Node node : graph.getNodes()) {
+                nodeIndex.put(node, nodeIndex.size());
+                writeString(out, String.valueOf(node.getId()));
+                writeNullableString(out, node.getLabel());
+                out.writeFloat(node.x());
+                out.writeFloat(node.y());
+                out.writeFloat(node.z());
+                out.writeFloat(node.size());
+                writeColor(out, node);
+                writeValues(node, nodeColumns, out);
+            }
+
+            var edgeIndex = new HashMap<Edge, Integer>();
+            out.writeInt(graph.getEdgeCount());
+            for (Edge edge : graph.getEdges()) {
+                edgeIndex.put(edge, edgeIndex.size());
+                writeString(out, String.valueOf(edge.getId()));
+                out.writeInt(nodeIndex.get(edge.getSource()));
+                out.writeInt(nodeIndex.get(edge.getTarget()));
+                out.writeInt(edge.getType());
+                out.writeBoolean(edge.isDirected());
+                out.writeDouble(edge.getWeight());
+                writeNullableString(out, edge.getLabel());
+                writeColor(out, edge);
+                writeValues(edge, edgeColumns, out);
+            }
+
+            // Visible view left by filters
+            var view = graphModel.getVisibleView();
+            out.writeBoolean(!view.isMainView());
+            if (!view.isMainView()) {
+                var visible = graphModel.getGraph(view);
+                out.writeInt(visible.getNodeCount());
+                for (Node node : visible.getNodes()) {
+                    out.writeInt(nodeIndex.get(node));
+                }
+                out.writeInt(visible.getEdgeCount());
+                for (Edge edge : visible.getEdges()) {
+                    out.writeInt(edgeIndex.get(edge));
+                }
+            }
+        } finally {
+            graph.readUnlock();
+        }
+    }
+
+    private static void restore(Path file) throws IOException {
+        var pc = Lookup.getDefault().lookup(ProjectController.class);
+        pc.newProject();
+        var graphModel = Lookup.getDefault().lookup(GraphController.class).getGraphModel(pc.getCurrentWorkspace());
+        var factory = graphModel.factory();
+        var graph = graphModel.getGraph();
+
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a checkpoint of this version: "+file);
+            }
+            List<Column> nodeColumns = readColumns(graphModel.getNodeTable(), in);
+            List<Column> edgeColumns = readColumns(graphModel.getEdgeTable(), in);
+            Map<Integer, Integer> edgeTypes = readEdgeTypes(graphModel, in);
+
+            var nodes = new Node[in.readInt()];
+            for (int i = 0; i < nodes.length; i++) {
+                Node node = factory.newNode(readString(in));
+                node.setLabel(readNullableString(in));
+                node.setX(in.readFloat());
+                node.setY(in.readFloat());
+                node.setZ(in.readFloat());
+                node.setSize(in.readFloat());
+                readColor(in, node);
+                readValues(node, nodeColumns, in);
+                nodes[i] = node;
+            }
+            graph.addAllNodes(List.of(nodes));
+
+            var edges = new Edge[in.readInt()];
+            for (int i = 0; i < edges.length; i++) {
+                String id = readString(in);
+                Node source = nodes[in.readInt()];
+                Node target = nodes[in.readInt()];
+                Integer type = edgeTypes.get(in.readInt());
+                if (type == null) {
+                    throw new IOException("Edge "+id+" has an edge type that is not in the checkpoint");
+                }
+                boolean directed = in.readBoolean();
+                double weight = in.readDouble();
+                Edge edge = factory.newEdge(id, source, target, type, weight, directed);
+                edge.setLabel(readNullableString(in));
+                readColor(in, edge);
+                readValues(edge, edgeColumns, in);
+                edges[i] = edge;
+            }
+            graph.addAllEdges(List.of(edges));
+
+            if (in.readBoolean()) {
+                var view = graphModel.createView();
+                var visible = graphModel.getGraph(view);
+                int nodeCount = in.readInt();
+                var visibleNodes = new ArrayList<Node>(nodeCount);
+                for (int i = 0; i < nodeCount; i++) {
+                    visibleNodes.add(nodes[in.readInt()]);
+                }
+                visible.addAllNodes(visibleNodes);
+                int edgeCount = in.readInt();
+                var visibleEdges = new ArrayList<Edge>(edgeCount);
+                for (int i = 0; i < edgeCount; i++) {
+                    visibleEdges.add(edges[in.readInt()]);
+                }
+                visible.addAllEdges(visibleEdges);
+                graphModel.setVisibleView(view);
+            }
+        }
+    }
+
+    /*
+     * Supported attribute types and their codes in snapshot files
+     */
+    private static final Map<Class<?>, Integer> TYPE_CODES = Map.of(
+        String.class, 1, Integer.class, 2, Long.class, 3, Double.class, 4,
+        Float.class, 5, Boolean.class, 6, Short.class, 7, Byte.class, 8);
+
+    /*
+     * Why the graph can't be stored, or null: a column of a type not in TYPE_CODES
+     * (arrays, dynamic values) or an edge type label other than a string
+     */
+    private static String unsupported(GraphModel graphModel) {
+        for (Table table : List.of(graphModel.getNodeTable(), graphModel.getEdgeTable())) {
+            for (Column column : table) {
+                if (!column.isProperty() && !isSupported(column)) {
+                    return String.format("column %s has type %s", column.getId(), column.getTypeClass().getSimpleName());
+                }
+            }
+        }
+        for (int type : graphModel.getEdgeTypes()) {
+            Object label = graphModel.getEdgeTypeLabel(type);
+            if (label != null && !(label instanceof String)) {
+                return String.format("edge type label %s is a %s", label, label.getClass().getSimpleName());
+            }
+        }
+        return null;
+    }
+
+    private static boolean isSupported(Column column) {
+        return !column.isDynamic() && TYPE_CODES.containsKey(column.getTypeClass());
+    }
+
+    private static List<Column> writeColumns(Table table, DataOutputStream out) throws IOException {
+        var columns = new ArrayList<Column>();
+        for (Column column : table) {
+            if (column.isProperty()) {
+                continue;
+            }
+            if (!isSupported(column)) {
+                throw new IOException("Column "+column.getId()+" can't be stored in a checkpoint");
+            }
+            columns.add(column);
+        }
+        out.writeInt(columns.size());
+        for (Column column : columns) {
+            out.writeUTF(column.getId());
+            out.writeUTF(column.getTitle());
+            out.writeByte(TYPE_CODES.get(column.getTypeClass()));
+        }
+        return columns;
+    }
+
+    private static List<Column> readColumns(Table table, DataInputStream in) throws IOException {
+        int count = in.readInt();
+        var columns = new ArrayList<Column>(count);
+        for (int i = 0; i < count; i++) {
+            String id = in.readUTF();
+            String title = in.readUTF();
+            Class<?> type = typeOf(in.readByte());
+            Column column = table.hasColumn(id) ? table.getColumn(id) : table.addColumn(id, title, type, null);
+            columns.add(column);
+        }
+        return columns;
+    }
+
+    /*
+     * Edge type ids with their labels, the default type has a null label. In id order, so
+     * registering them again on restore gives the same ids.
+     */
+    private static void writeEdgeTypes(GraphModel graphModel, DataOutputStream out) throws IOException {
+        int[] types = graphModel.getEdgeTypes().clone();
+        Arrays.sort(types);
+        out.writeInt(types.length);
+        for (int type : types) {
+            out.writeInt(type);
+            writeNullableString(out, (String) graphModel.getEdgeTypeLabel(type));
+        }
+    }
+
+    /*
+     * Registers the labels again, returns the new type of each stored one
+     */
+    private static Map<Integer, Integer> readEdgeTypes(GraphModel graphModel, DataInputStream in) throws IOException {
+        int count = in.readInt();
+        var types = new HashMap<Integer, Integer>();
+        for (int i = 0; i < count; i++) {
+            int type = in.readInt();
+            String label = readNullableString(in);
+            types.put(type, label == null ? graphModel.getEdgeType(null) : graphModel.addEdgeType(label));
+        }
+        return types;
+    }
+
+    private static Class<?> typeOf(int code) throws IOException {
+        for (var entry : TYPE_CODES.entrySet()) {
+            if (entry.getValue() == code) {
+                return entry.getKey();
+            }
+        }
+        throw new IOException("Unknown column type code "+code);
+    }
+
+    private static void writeValues(Element element, List<Column> columns, DataOutputStream out) throws IOException {
+        for (Column column : columns) {
+            Object value = element.getAttribute(column);
+            out.writeBoolean(value != null);
+            if (value == null) {
+                continue;
+            }
+            switch (TYPE_CODES.get(column.getTypeClass())) {
+                case 1: writeString(out, (String) value); break;
+                case 2: out.writeInt((Integer) value); break;
+                case 3: out.writeLong((Long) value); break;
+                case 4: out.writeDouble((Double) value); break;
+                case 5: out.writeFloat((Float) value); break;
+                case 6: out.writeBoolean((Boolean) value); break;
+                case 7: out.writeShort((Short) value); break;
+                case 8: out.writeByte((Byte) value); break;
+                default: throw new IllegalStateException("Unsupported type: "+column.getTypeClass());
+            }
+        }
+    }
+
+    private static void readValues(Element element, List<Column> columns, DataInputStream in) throws IOException {
+        for (Column column : columns) {
+            if (!in.readBoolean()) {
+                continue;
+            }
+            Object value;
+            switch (TYPE_CODES.get(column.getTypeClass())) {
+                case 1: value = readString(in); break;
+                case 2: value = in.readInt(); break;
+                case 3: value = in.readLong(); break;
+                case 4: value = in.readDouble(); break;
+                case 5: value = in.readFloat(); break;
+                case 6: value = in.readBoolean(); break;
+                case 7: value = in.readShort(); break;
+                case 8: value = in.readByte(); break;
+                default: throw new IllegalStateException("Unsupported type: "+column.getTypeClass());
+            }
+            element.setAttribute(column, value);
+        }
+    }
+
+    /*
+     * Components as floats, edges without own color have negative or zero ones
+     */
+    private static void writeColor(DataOutputStream out, Element element) throws IOException {
+        out.writeFloat(element.r());
+        out.writeFloat(element.g());
+        out.writeFloat(element.b());
+        out.writeFloat(element.alpha());
+    }
+
+    private static void readColor(DataInputStream in, Element element) throws IOException {
+        element.setR(in.readFloat());
+        element.setG(in.readFloat());
+        element.setB(in.readFloat());
+        element.setAlpha(in.readFloat());
+    }
+
+    /*
+     * Unlike writeUTF, not limited to 64 KB
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeNullableString(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            writeString(out, s);
+        }
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? readString(in) : null;
+    }
+}
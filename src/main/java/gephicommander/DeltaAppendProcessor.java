@@ -0,0 +1,82 @@
+package gephicommander;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphController;
+import org.gephi.graph.api.Node;
+import org.gephi.io.importer.api.ContainerUnloader;
+import org.gephi.io.importer.api.NodeDraft;
+import org.gephi.io.processor.plugin.AppendProcessor;
+import org.openide.util.Lookup;
+
+/**
+ * Merges a delta file into the current workspace.
+ * <p>
+ * Nodes already in the graph keep their position, size, color and every column the
+ * delta does not mention; only the label and the delta's own columns are updated.
+ * New nodes that link to existing ones are placed next to them, so a following
+ * layout starts close to a settled state. Only the delta's elements are visited.
+ */
+class DeltaAppendProcessor extends AppendProcessor {
+
+    private Graph graph;
+    private final List<Node> addedNodes = new ArrayList<>();
+    private int updatedNodes = 0;
+
+    @Override
+    protected void flushToNode(ContainerUnloader container, NodeDraft nodeDraft, Node node) {
+        if (graph == null) {
+            graph = Lookup.getDefault().lookup(GraphController.class).getGraphModel(workspace).getGraph();
+        }
+        if (graph.contains(node)) {
+            if (nodeDraft.getLabel() != null) {
+                flushLabel(nodeDraft, node);
+            }
+            flushToElementAttributes(container, nodeDraft, node);
+            updatedNodes++;
+        } else {
+            super.flushToNode(container, nodeDraft, node);
+            addedNodes.add(node);
+        }
+    }
+
+    @Override
+    public void process() {
+        super.process();
+        placeAddedNodes();
+        System.out.printf("Appended: %s new nodes, %s updated nodes%n", addedNodes.size(), updatedNodes);
+    }
+
+    /*
+     * Moves each new node to the centroid of its neighbors that were already placed
+     */
+    private void placeAddedNodes() {
+        if (graph == null || addedNodes.isEmpty()) {
+            return;
+        }
+        var added = new HashSet<>(addedNodes);
+        var random = new Random(42);
+        for (var node : addedNodes) {
+            float x = 0;
+            float y = 0;
+            int count = 0;
+            for (var neighbor : graph.getNeighbors(node)) {
+                if (!added.contains(neighbor)) {
+                    x += neighbor.x();
+                    y += neighbor.y();
+                    count++;
+                }
+            }
+            if (count > 0) {
+                // Jitter by the node size so new siblings do not start on the same point
+                float spread = Math.max(1f, node.size());
+                node.setX(x / count + (random.nextFloat() - 0.5f) * spread);
+                node.setY(y / count + (random.nextFloat() - 0.5f) * spread);
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package gephicommander;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.ElementProperties;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphController;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.preview.api.PreviewController;
+import org.gephi.project.api.ProjectController;
+import org.gephi.project.api.Workspace;
+import org.openide.util.Lookup;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Frame export in the background, for layouts with exportAsync. At an export point the
+ * layout thread only copies node positions, sizes and colors into a snapshot buffer and
+ * goes on with the next step. A render thread puts the snapshot on a copy of the visible
+ * graph, kept in a workspace of its own, and exports the frame from there (preview
+ * refresh, render, encode, write), so it never reads the graph the layout is moving.
+ * <p>
+ * There are two buffers: the layout fills one while the other is rendered, and waits
+ * when the render thread is two frames behind. There is one render thread, so frames are
+ * written in the order they were taken and MyPNGExporter counts them as before. More render
+ * threads would each need their own copy of the graph and preview model; the costly part,
+ * PNG encoding and writing, already runs on the bounded PngEncoder pool.
+ */
+class FramePipeline {
+
+    private static final int BUFFERS = 2;
+
+    private static class Snapshot {
+        final float[] x;
+        final float[] y;
+        final float[] size;
+        final int[] rgba;
+        File file;
+
+        Snapshot(int n) {
+            x = new float[n];
+            y = new float[n];
+            size = new float[n];
+            rgba = new int[n];
+        }
+    }
+
+    private final Node[] nodes;
+    private final Node[] copies;
+    private final Workspace workspace;
+    private final JsonObject exportOptions;
+    private final BlockingQueue<Snapshot> free = new ArrayBlockingQueue<>(BUFFERS);
+    private final ExecutorService renderer = Executors.newSingleThreadExecutor(r -> {
+        var thread = new Thread(r, "frame-export");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Frames submitted and not yet checked for failure
+    private final List<Future<?>> frames = new ArrayList<>();
+    private int frameCount = 0;
+
+    private FramePipeline(Node[] nodes, Node[] copies, Workspace workspace, JsonObject exportOptions) {
+        this.nodes = nodes;
+        this.copies = copies;
+        this.workspace = workspace;
+        this.exportOptions = exportOptions;
+        for (int b = 0; b < BUFFERS; b++) {
+            free.add(new Snapshot(nodes.length));
+        }
+    }
+
+    /*
+     * Copies the visible graph of the current workspace and its preview settings into a
+     * new workspace that only the render thread uses
+     */
+    static FramePipeline start(JsonObject exportOptions) {
+        var pc = Lookup.getDefault().lookup(ProjectController.class);
+        var graphController = Lookup.getDefault().lookup(GraphController.class);
+        var source = pc.getCurrentWorkspace();
+        var sourceModel = graphController.getGraphModel(source);
+        var workspace = pc.newWorkspace(pc.getCurrentProject());
+        var graphModel = graphController.getGraphModel(workspace);
+        graphModel.setConfiguration(sourceModel.getConfiguration().copy());
+
+        Node[] nodes;
+        Node[] copies;
+        var graph = sourceModel.getGraphVisible();
+        graph.readLock();
+        try {
+            nodes = graph.getNodes().toArray();
+            copies = copyGraph(graph, nodes, graphModel);
+        } finally {
+            graph.readUnlock();
+        }
+
+        var previewController = Lookup.getDefault().lookup(PreviewController.class);
+        var from = previewController.getModel(source).getProperties();
+        var to = previewController.getModel(workspace).getProperties();
+        for (var property : from.getProperties()) {
+            to.putValue(property.getName(), property.getValue());
+        }
+        return new FramePipeline(nodes, copies, workspace, exportOptions);
+    }
+
+    /*
+     * Nodes and edges with what the preview draws: ids, labels, sizes, colors, weights
+     */
+    private static Node[] copyGraph(Graph graph, Node[] nodes, GraphModel graphModel) {
+        var sourceModel = graph.getModel();
+        var factory = graphModel.factory();
+        var copies = new Node[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            var node = nodes[i];
+            var copy = factory.newNode(node.getId());
+            copy.setLabel(node.getLabel());
+            copy.setX(node.x());
+            copy.setY(node.y());
+            copy.setZ(node.z());
+            copy.setSize(node.size());
+            copyColors(node, copy);
+            copies[i] = copy;
+        }
+        var copyGraph = graphModel.getGraph();
+        copyGraph.addAllNodes(List.of(copies));
+
+        var edges = new ArrayList<Edge>(graph.getEdgeCount());
+        for (var edge : graph.getEdges()) {
+            int type = graphModel.addEdgeType(sourceModel.getEdgeTypeLabel(edge.getType()));
+            var copy = factory.newEdge(edge.getId(), copyGraph.getNode(edge.getSource().getId()),
+                copyGraph.getNode(edge.getTarget().getId()), type, edge.getWeight(), edge.isDirected());
+            copy.setLabel(edge.getLabel());
+            copyColors(edge, copy);
+            edges.add(copy);
+        }
+        copyGraph.addAllEdges(edges);
+        return copies;
+    }
+
+    private static void copyColors(ElementProperties from, ElementProperties to) {
+        to.setR(from.r());
+        to.setG(from.g());
+        to.setB(from.b());
+        to.setAlpha(from.alpha());
+        var text = from.getTextProperties();
+        var copyText = to.getTextProperties();
+        copyText.setColor(text.getColor());
+        copyText.setSize(text.getSize());
+        copyText.setVisible(text.isVisible());
+        copyText.setText(text.getText());
+    }
+
+    /*
+     * Takes a snapshot of the graph for a frame written to file, and returns as soon as the
+     * render thread has it. Waits while both buffers are in use. A frame that failed to
+     * export stops the run here.
+     */
+    void submit(File file) {
+        checkFailures();
+        Snapshot snapshot;
+        try {
+            snapshot = free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a frame buffer", e);
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            snapshot.x[i] = nodes[i].x();
+            snapshot.y[i] = nodes[i].y();
+            snapshot.size[i] = nodes[i].size();
+            snapshot.rgba[i] = nodes[i].getRGBA();
+        }
+        snapshot.file = file;
+        frames.add(renderer.submit(() -> render(snapshot)));
+        frameCount++;
+    }
+
+    private void render(Snapshot snapshot) {
+        try {
+            for (int i = 0; i < copies.length; i++) {
+                var copy = copies[i];
+                copy.setX(snapshot.x[i]);
+                copy.setY(snapshot.y[i]);
+                copy.setSize(snapshot.size[i]);
+                int rgba = snapshot.rgba[i];
+                copy.setR(((rgba >> 16) & 0xFF) / 255f);
+                copy.setG(((rgba >> 8) & 0xFF) / 255f);
+                copy.setB((rgba & 0xFF) / 255f);
+                copy.setAlpha(((rgba >>> 24) & 0xFF) / 255f);
+            }
+            GephiCommander.exportTo(snapshot.file, exportOptions, workspace);
+        } finally {
+            free.add(snapshot);
+        }
+    }
+
+    private void checkFailures() {
+        var pending = frames.iterator();
+        while (pending.hasNext()) {
+            var frame = pending.next();
+            if (frame.isDone()) {
+                await(frame);
+                pending.remove();
+            }
+        }
+    }
+
+    private static void await(Future<?> frame) {
+        try {
+            frame.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Frame export failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for frames", e);
+        }
+    }
+
+    /*
+     * Waits for the frames still being rendered, a failed one is thrown here
+     */
+    void finish() {
+        for (var frame : frames) {
+            await(frame);
+        }
+        frames.clear();
+    }
+
+    /*
+     * Stops the render thread and removes the copy's workspace, also after a failure
+     */
+    void close() {
+        renderer.shutdownNow();
+        Lookup.getDefault().lookup(ProjectController.class).deleteWorkspace(workspace);
+    }
+
+    int frameCount() {
+        return frameCount;
+    }
+}
@@ -15,23 +15,35 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
-import javax.imageio.ImageIO;
 import javax.swing.JFrame;
 import javax.swing.Timer;
 
+import jdk.jfr.Recording;
+
 import org.gephi.appearance.api.AppearanceController;
 import org.gephi.appearance.api.AppearanceModel;
 import org.gephi.appearance.api.Function;
@@ -63,15 +75,20 @@ import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphController;
 import org.gephi.graph.api.GraphModel;
 import org.gephi.graph.api.Node;
+import org.gephi.graph.api.Table;
 import org.gephi.io.exporter.api.ExportController;
-import org.gephi.io.exporter.preview.PNGExporter;
 import org.gephi.io.exporter.spi.GraphExporter;
 import org.gephi.io.importer.api.Container;
 import org.gephi.io.importer.api.EdgeDirectionDefault;
 import org.gephi.io.importer.api.EdgeMergeStrategy;
 import org.gephi.io.importer.api.ImportController;
 import org.gephi.io.importer.api.ImportUtils;
+import org.gephi.io.importer.api.Issue;
+import org.gephi.io.importer.api.Report;
+import org.gephi.io.importer.spi.FileImporter;
+import org.gephi.io.importer.spi.FileImporterBuilder;
 import org.gephi.io.processor.plugin.DefaultProcessor;
+import org.gephi.io.processor.plugin.MergeProcessor;
 import org.gephi.layout.plugin.force.StepDisplacement;
 import org.gephi.layout.plugin.force.yifanHu.YifanHuLayout;
 import org.gephi.layout.plugin.force.yifanHu.YifanHuProportional;
@@ -103,6 +120,20 @@ import org.gephi.toolkit.demos.plugins.preview.PreviewSketch;
 import org.openide.nodes.Node.Property;
 import org.openide.util.Lookup;
 
+import importer.CompressedInput;
+import importer.DecompressingImporter;
+import importer.ImporterBuilderNDJSON;
+import importer.ImporterEdgeList;
+import importer.InterningImporter;
+import importer.ImporterJSON;
+import importer.ImporterNDJSON;
+import importer.ProjectingImporter;
+import importer.StringDictionary;
+import layout.BarnesHutLayoutBuilder;
+import layout.BufferedPositionsLayout;
+import layout.GridNoverlapLayoutBuilder;
+import layout.PivotMDSLayoutBuilder;
+
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -111,10 +142,39 @@ import com.google.gson.JsonParser;
 public class GephiCommander {
     
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--server")) {
+            GephiServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--worker")) {
+            BatchRunner.runWorker(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--bench-import")) {
+            try {
+                ImportBenchmark.main(Arrays.copyOfRange(args, 1, args.length));
+            } catch (Exception e) {
+                e.printStackTrace();
+                System.exit(1);
+            }
+            return;
+        }
+        // Flags go before the last arg, which is the pipeline file or '-'
+        var flags = new PipelineFlags();
+        for (int i = 0; i < args.length - 1; i++) {
+            int taken = flags.parse(args, i);
+            if (taken > 0) {
+                i += taken - 1;
+            } else {
+                System.err.println("Unknown option: "+args[i]);
+                System.exit(1);
+            }
+        }
+
         JsonArray options = null;
         try (Reader reader = args[args.length-1].equals("-") ?
                 new InputStreamReader(System.in) :
-                new FileReader(args[0])) {
+                new FileReader(args[args.length-1])) {
                     options = JsonParser.parseReader(reader).getAsJsonArray();
         } catch (Exception e) {
             System.err.println("Last arg should be a filepath or '-' to read from stdin.");
@@ -124,56 +184,174 @@ public class GephiCommander {
 
         Locale.setDefault(Locale.ENGLISH);  // Ignore Gephi localization
 
-        for (var opEl : options) {
-            var op = opEl.getAsJsonObject();
+        if (flags.metricsEnabled()) {
+            PipelineMetrics.enable();
+        }
+        flags.apply();
+        Recording recording = flags.jfrFile == null ? null : PipelineFlags.startRecording();
+        // The budget covers running the ops
+        TimeBudget.startPipeline(flags.maxMillis);
+        try {
+            runPipeline(options, null);
+        } finally {
+            TimeBudget.endPipeline();
+            if (recording != null) {
+                PipelineFlags.stopRecording(recording, flags.jfrFile);
+            }
+        }
+        if (PipelineMetrics.current() != null) {
+            flags.writeMetrics(PipelineMetrics.current().toJson());
+        }
+    }
+
+    /*
+     * Runs ops one after another. If onOpDone is not null, it receives a short
+     * summary (op name, index, millis) after each op.
+     */
+    static void runPipeline(JsonArray options, Consumer<JsonObject> onOpDone) {
+        resolveAutoColumns(options);
+
+        // Skip the longest prefix that has a checkpoint
+        int first = 0;
+        String[] checkpointKeys = null;
+        var cache = CheckpointCache.current();
+        if (cache != null) {
+            checkpointKeys = cache.keysFor(options);
+            first = cache.restoreLongest(checkpointKeys) + 1;
+            for (int i = 0; i < first; i++) {
+                var op = options.get(i).getAsJsonObject();
+                if (CheckpointCache.isReplayed(op)) {
+                    runOp(op);
+                }
+            }
+        }
+
+        for (int index = first; index < options.size(); index++) {
+            var op = options.get(index).getAsJsonObject();
+            // Some ops modify their options, so read them beforehand
             var opName = op.get("op").getAsString();
-            switch (opName) {
-                case "import":
-                    importData(op);
-                    break;
-                case "statistics":
-                    var statsOpts = op.get("values").getAsJsonArray();
-                    applyStatistics(statsOpts);
-                    break;
-                case "filters":
-                    applyFilters(op.get("values").getAsJsonArray());
-                    break;
-                case "livePreview":
-                    showLivePreview(op);
-                    break;
-                case "layouts":
-                    applyLayouts(op.get("values").getAsJsonArray());
-                    break;
-                case "preview":
-                    setGraphPreview(op);
-                    break;
-                case "labelNodesBy":
-                    labelElementsByColumn(Node.class, op);
-                    break;
-                case "labelEdgesBy":
-                    labelElementsByColumn(Edge.class, op);
-                    break;
-                case "colorNodesBy":
-                    colorElementsByColumn(Node.class, op);
-                    break;
-                case "colorEdgesBy":
-                    colorElementsByColumn(Edge.class, op);
-                    break;
-                case "sizeNodesBy":
-                    sizeNodesByColumn(op);
-                    break;
-                case "print":
-                    printInfo(op.get("values").getAsJsonArray());
-                    break;
-                case "export":
-                    export(op);
-                    break;
-                default:
-                    System.out.println("Unknown root element "+opName);
-                    break;
+            boolean checkpoint = checkpointKeys != null && checkpointKeys[index] != null && cache.shouldStore(op);
+            long start = System.nanoTime();
+            var metrics = PipelineMetrics.current();
+            var sample = metrics == null ? null : metrics.begin(index, opName);
+            var event = new PipelineEvents.Op();
+            if (event.isEnabled()) {
+                event.optionsHash = Integer.toHexString(op.toString().hashCode());
+            }
+            event.begin();
+            try {
+                runOp(op);
+            } finally {
+                if (sample != null) {
+                    metrics.end(sample);
+                }
+                event.end();
+                if (event.shouldCommit()) {
+                    event.op = opName;
+                    event.index = index;
+                    var graphModel = Lookup.getDefault().lookup(GraphController.class).getGraphModel();
+                    if (graphModel != null) {
+                        var graph = graphModel.getGraphVisible();
+                        event.nodes = graph.getNodeCount();
+                        event.edges = graph.getEdgeCount();
+                    }
+                    event.commit();
+                }
+            }
+            // Only reached when the op succeeded, a failed op throws above
+            if (checkpoint) {
+                cache.store(checkpointKeys[index]);
+            }
+            if (onOpDone != null) {
+                var summary = new JsonObject();
+                summary.addProperty("op", opName);
+                summary.addProperty("index", index);
+                summary.addProperty("millis", (System.nanoTime() - start) / 1_000_000);
+                onOpDone.accept(summary);
             }
         }
-        
+    }
+
+    /*
+     * Runs a pipeline in a fresh project and closes it afterwards.
+     * Returns status, error (if any), millis and exported files.
+     */
+    static JsonObject runIsolated(JsonArray options, Consumer<JsonObject> onOpDone) {
+        long start = System.nanoTime();
+        var result = new JsonObject();
+        var pc = Lookup.getDefault().lookup(ProjectController.class);
+        pc.newProject();
+        MyPNGExporter.reset();
+        clearExportedFiles();
+        try {
+            runPipeline(options, onOpDone);
+            result.addProperty("status", "ok");
+        } catch (Exception e) {
+            e.printStackTrace();
+            result.addProperty("status", "error");
+            result.addProperty("error", String.valueOf(e));
+        } finally {
+            var files = new JsonArray();
+            exportedFiles.forEach(f -> files.add(f.getPath()));
+            result.add("files", files);
+            clearExportedFiles();
+            pc.closeCurrentProject();
+        }
+        result.addProperty("millis", (System.nanoTime() - start) / 1_000_000);
+        return result;
+    }
+
+    private static void runOp(JsonObject op) {
+        var opName = op.get("op").getAsString();
+        switch (opName) {
+            case "import":
+                importData(op);
+                break;
+            case "statistics":
+                var statsOpts = op.get("values").getAsJsonArray();
+                applyStatistics(statsOpts);
+                break;
+            case "filters":
+                applyFilters(op.get("values").getAsJsonArray());
+                break;
+            case "livePreview":
+                showLivePreview(op);
+                break;
+            case "layouts":
+                applyLayouts(op.get("values").getAsJsonArray());
+                break;
+            case "preview":
+                setGraphPreview(op);
+                break;
+            case "labelNodesBy":
+                labelElementsByColumn(Node.class, op);
+                break;
+            case "labelEdgesBy":
+                labelElementsByColumn(Edge.class, op);
+                break;
+            case "colorNodesBy":
+                colorElementsByColumn(Node.class, op);
+                break;
+            case "colorEdgesBy":
+                colorElementsByColumn(Edge.class, op);
+                break;
+            case "sizeNodesBy":
+                sizeNodesByColumn(op);
+                break;
+            case "print":
+                printInfo(op.get("values").getAsJsonArray());
+                break;
+            case "export":
+                export(op);
+                PngEncoder.get().flush();
+                break;
+            case "batch":
+                BatchRunner.run(op);
+                break;
+            default:
+                System.out.println("Unknown root element "+opName);
+                break;
+        }
     }
     
     private static void showLivePreview(JsonObject op) {
@@ -237,13 +415,14 @@ public class GephiCommander {
         File outputDir = new File("frames");
         outputDir.mkdirs();
         
+        var encoder = PngEncoder.get();
         for(int i = 0; i < frames.size(); i++) {
-            try {
-                ImageIO.write(frames.get(i), "png", 
-                    new File(outputDir, String.format("frame_%03d.png", i)));
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            encoder.submit(frames.get(i), new File(outputDir, String.format("frame_%03d.png", i)));
+        }
+        try {
+            encoder.flush();
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
         }
         System.out.println("images saved to "+outputDir);
         // Then use FFmpeg to combine:
@@ -256,31 +435,313 @@ public class GephiCommander {
 
 
     private static void importData(JsonObject options) {
-        var file = new File(options.get("file").getAsString());
+        // file: a path, or a list of paths and globs that are parsed in parallel and merged into one graph
+        var fileEl = options.get("file");
+        List<File> files = fileEl.isJsonArray() ? BatchRunner.resolveFiles(fileEl) : List.of(new File(fileEl.getAsString()));
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("No file to import: "+fileEl);
+        }
         
+        // mode 'append' merges into the current graph instead of starting a new project
+        boolean append = options.has("mode") && options.get("mode").getAsString().equals("append");
+
         //Init a project - and therefore a workspace
         ProjectController pc = Lookup.getDefault().lookup(ProjectController.class);
-        pc.newProject();
+        if (!append || pc.getCurrentWorkspace() == null) {
+            pc.newProject();
+        }
         Workspace workspace = pc.getCurrentWorkspace();
 
         ImportController importController = Lookup.getDefault().lookup(ImportController.class);
         
-        //Import file       
-        Container container;
+        //Import files
+        var containers = new Container[files.size()];
+        Set<String> columns = options.has("columns") ? importedColumns(options.get("columns")) : null;
+        boolean projected = columns != null;
+        // One dictionary for all files, so a value repeated across files is kept once
+        StringDictionary dictionary = stringDictionary(options.has("intern") ? options.get("intern") : null);
+        boolean interned = false;
+        long start = System.nanoTime();
+        var pool = Executors.newFixedThreadPool(Math.min(files.size(), Runtime.getRuntime().availableProcessors()));
         try {
-            container = importController.importFile(file);
+            var importers = new ArrayList<FileImporter>();
+            for (var file : files) {
+                if (!file.getPath().equals("-") && !file.isFile()) {
+                    throw new IllegalArgumentException("No such file: "+file);
+                }
+                var importer = fileImporter(file, options, importController);
+                if (importer == null) {
+                    throw new IllegalStateException("No importer for "+file);
+                }
+                if (columns != null && importer instanceof ProjectingImporter) {
+                    ((ProjectingImporter) importer).setColumns(columns);
+                } else {
+                    projected = false;
+                }
+                if (importer instanceof InterningImporter) {
+                    ((InterningImporter) importer).setDictionary(dictionary);
+                    interned = dictionary != null;
+                }
+                importers.add(importer);
+            }
+            var futures = new ArrayList<Future<Container>>();
+            for (int i = 0; i < files.size(); i++) {
+                var file = files.get(i);
+                var importer = importers.get(i);
+                futures.add(pool.submit(() -> importContainer(file, importer, importController)));
+            }
+            for (int i = 0; i < containers.length; i++) {
+                containers[i] = futures.get(i).get();
+                if (containers[i] == null) {
+                    printIssues(importers.get(i).getReport());
+                    throw new IllegalStateException("Import failed: "+files.get(i));
+                }
+                printIssues(containers[i].getReport());
+            }
+        } catch (ExecutionException ex) {
+            // Fail the op, so the pipeline does not go on with an empty graph
+            throw new IllegalStateException("Import failed: "+ex.getCause(), ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Import interrupted", ex);
+        } finally {
+            pool.shutdownNow();
+        }
+        if (files.size() > 1) {
+            System.out.printf("Parsed %s files in %s ms%n", files.size(), (System.nanoTime() - start) / 1_000_000);
+        }
+        if (interned) {
+            System.out.println(dictionary.summary());
+        }
+        for (var container : containers) {
             container.getLoader().setEdgeDefault(EdgeDirectionDefault.DIRECTED);   //Force DIRECTED
-            container.getLoader().setAllowParallelEdge(true);
-            container.getLoader().setEdgesMergeStrategy(EdgeMergeStrategy.NO_MERGE);
+            if (append) {
+                // An edge that is already there is updated, not doubled
+                container.getLoader().setAllowParallelEdge(false);
+                container.getLoader().setEdgesMergeStrategy(EdgeMergeStrategy.LAST);
+            } else {
+                container.getLoader().setAllowParallelEdge(true);
+                container.getLoader().setEdgesMergeStrategy(EdgeMergeStrategy.NO_MERGE);
+            }
             container.getLoader().setAutoScale(false);
-        } catch (Exception ex) {
-            ex.printStackTrace();
-            return;
         }
 
+        // Columns already in the graph, e.g. statistics or earlier imports, are kept by the drop below
+        var graphModel = Lookup.getDefault().lookup(GraphController.class).getGraphModel(workspace);
+        var existingNodeColumns = columnIds(graphModel.getNodeTable());
+        var existingEdgeColumns = columnIds(graphModel.getEdgeTable());
+
         //Append imported data to GraphAPI
-        importController.process(container, new DefaultProcessor(), workspace);
+        if (append) {
+            for (var container : containers) {
+                importController.process(container, new DeltaAppendProcessor(), workspace);
+            }
+        } else if (containers.length == 1) {
+            importController.process(containers[0], new DefaultProcessor(), workspace);
+        } else {
+            // Nodes with the same id in several files become one node, containers are merged in file order
+            importController.process(containers, new MergeProcessor(), workspace);
+        }
+
+        if (columns != null && !projected) {
+            // The importer cannot skip columns itself, so drop the ones it added before they are used
+            dropUnusedColumns(graphModel.getNodeTable(), columns, existingNodeColumns);
+            dropUnusedColumns(graphModel.getEdgeTable(), columns, existingEdgeColumns);
+        }
+    }
+
+    /*
+     * The importer named in options, or the one for the file extension, with its options applied
+     */
+    private static FileImporter fileImporter(File file, JsonObject options, ImportController importController) {
+        // graph.gml.gz is imported by the importer for graph.gml
+        var codec = CompressedInput.codecFor(file);
+        // file '-' reads standard input, as JSON lines unless another importer is named
+        boolean stdin = file.getPath().equals("-");
+        // Picks an importer by name, e.g. 'edgelist' for .csv files that the default importer would take
+        var importer = options.has("importer") ?
+            buildImporter(options.get("importer").getAsString()) :
+            stdin ? buildImporter(ImporterBuilderNDJSON.IDENTIFER) :
+            codec != null ?
+                importController.getFileImporter(extension(CompressedInput.uncompressedFile(file))) :
+                importController.getFileImporter(file);
+        if (importer instanceof ImporterJSON) {
+            var json = (ImporterJSON) importer;
+            if (options.has("typeSample")) {
+                json.setTypeSample(options.get("typeSample").getAsInt());
+            }
+            if (options.has("floatColumns")) {
+                json.setFloatColumns(options.get("floatColumns").getAsBoolean());
+            }
+        }
+        if (importer instanceof ImporterNDJSON) {
+            var ndjson = (ImporterNDJSON) importer;
+            if (options.has("typeSample")) {
+                ndjson.setTypeSample(options.get("typeSample").getAsInt());
+            }
+            if (options.has("floatColumns")) {
+                ndjson.setFloatColumns(options.get("floatColumns").getAsBoolean());
+            }
+            if (options.has("threads")) {
+                ndjson.setThreads(options.get("threads").getAsInt());
+            }
+        }
+        if (importer instanceof ImporterEdgeList) {
+            var edgeList = (ImporterEdgeList) importer;
+            if (options.has("delimiter")) {
+                edgeList.setDelimiter(options.get("delimiter").getAsString().charAt(0));
+            }
+            if (options.has("header")) {
+                edgeList.setHeader(options.get("header").getAsBoolean());
+            }
+            if (options.has("threads")) {
+                edgeList.setThreads(options.get("threads").getAsInt());
+            }
+        }
+        return importer;
+    }
+
+    private static Container importContainer(File file, FileImporter importer, ImportController importController) throws IOException {
+        if (file.getPath().equals("-")) {
+            return importController.importFile(new InputStreamReader(System.in, StandardCharsets.UTF_8), importer);
+        } else if (CompressedInput.codecFor(file) == null) {
+            return importController.importFile(file, importer);
+        } else if (importer instanceof DecompressingImporter) {
+            return importDecompressing(file, importer);
+        } else {
+            // Stock importers get the decompressed stream, instead of Gephi extracting the file to disk
+            return importController.importFile(CompressedInput.open(file), importer);
+        }
+    }
+
+    /*
+     * Same as ImportController.importFile(file, importer), which would extract a compressed file first
+     */
+    private static Container importDecompressing(File file, FileImporter importer) {
+        Container container = Lookup.getDefault().lookup(Container.Factory.class).newContainer();
+        container.setReport(new Report());
+        ((FileImporter.FileAware) importer).setFile(file);
+        boolean imported = importer.execute(container.getLoader());
+        if (importer.getReport() != null) {
+            container.getReport().append(importer.getReport());
+        }
+        container.getReport().close();
+        return imported ? container : null;
+    }
+
+    /*
+     * Warnings and errors of an import, e.g. skipped rows, which Gephi only keeps in the report
+     */
+    private static void printIssues(Report report) {
+        if (report == null) {
+            return;
+        }
+        for (var issue : report.getIssuesList(Integer.MAX_VALUE)) {
+            if (issue.getLevel().toInteger() >= Issue.Level.WARNING.toInteger()) {
+                System.out.println(issue.getLevel()+": "+issue.getMessage());
+            }
+        }
+    }
+
+    private static String extension(File file) {
+        String name = file.getName();
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    /*
+     * intern: true/'auto' (default) for low-cardinality columns, false for none, or a list of columns
+     */
+    private static StringDictionary stringDictionary(JsonElement internEl) {
+        if (internEl == null || (internEl.isJsonPrimitive() && internEl.getAsString().equals("auto"))) {
+            return new StringDictionary();
+        }
+        if (internEl.isJsonPrimitive()) {
+            return internEl.getAsBoolean() ? new StringDictionary() : null;
+        }
+        var columns = new HashSet<String>();
+        internEl.getAsJsonArray().forEach(el -> columns.add(el.getAsString().toLowerCase(Locale.ROOT)));
+        return new StringDictionary(columns);
+    }
+
+    private static Set<String> importedColumns(JsonElement columnsEl) {
+        if (columnsEl.isJsonPrimitive()) {
+            // 'auto' is replaced by a list before the pipeline runs, see resolveAutoColumns
+            throw new IllegalArgumentException("columns should be a list or 'auto', not "+columnsEl);
+        }
+        var columns = new HashSet<String>();
+        columnsEl.getAsJsonArray().forEach(el -> columns.add(el.getAsString().toLowerCase(Locale.ROOT)));
+        return columns;
+    }
+
+    private static Set<String> columnIds(Table table) {
+        var ids = new HashSet<String>();
+        for (var column : table) {
+            ids.add(column.getId());
+        }
+        return ids;
+    }
+
+    private static void dropUnusedColumns(Table table, Set<String> columns, Set<String> existing) {
+        var unused = new ArrayList<Column>();
+        for (var column : table) {
+            if (!column.isProperty() && !existing.contains(column.getId())
+                    && !columns.contains(column.getId().toLowerCase(Locale.ROOT))) {
+                unused.add(column);
+            }
+        }
+        unused.forEach(table::removeColumn);
+    }
+
+    /*
+     * Replaces columns:'auto' on import ops with the columns that the following ops refer to
+     */
+    static void resolveAutoColumns(JsonArray pipeline) {
+        for (int i = 0; i < pipeline.size(); i++) {
+            var op = pipeline.get(i).getAsJsonObject();
+            if (!op.get("op").getAsString().equals("import") || !op.has("columns")
+                    || !op.get("columns").isJsonPrimitive() || !op.get("columns").getAsString().equals("auto")) {
+                continue;
+            }
+            var referenced = new TreeSet<String>();
+            for (int j = i + 1; j < pipeline.size(); j++) {
+                var later = pipeline.get(j).getAsJsonObject();
+                if (later.get("op").getAsString().equals("import") && !later.has("mode")) {
+                    break;
+                }
+                collectColumnReferences(later, referenced);
+            }
+            var columns = new JsonArray();
+            referenced.forEach(columns::add);
+            op.add("columns", columns);
+            System.out.println("Importing columns "+referenced);
+        }
+    }
+
+    private static void collectColumnReferences(JsonElement el, Set<String> referenced) {
+        if (el.isJsonArray()) {
+            el.getAsJsonArray().forEach(child -> collectColumnReferences(child, referenced));
+        } else if (el.isJsonObject()) {
+            for (var entry : el.getAsJsonObject().entrySet()) {
+                var value = entry.getValue();
+                if ((entry.getKey().equals("column") || entry.getKey().equals("columnId"))
+                        && value.isJsonPrimitive()) {
+                    referenced.add(value.getAsString().toLowerCase(Locale.ROOT));
+                } else {
+                    collectColumnReferences(value, referenced);
+                }
+            }
+        }
+    }
+
+    static FileImporter buildImporter(String name) {
+        for (var builder : Lookup.getDefault().lookupAll(FileImporterBuilder.class)) {
+            if (builder.getName().equalsIgnoreCase(name)) {
+                return builder.buildImporter();
+            }
+        }
+        throw new IllegalArgumentException("Unknown importer "+name);
     }
+
     private static void applyStatistics(JsonArray options) {
         var graphModel = Lookup.getDefault().lookup(GraphController.class).getGraphModel();
         for (var el : options) {
@@ -375,26 +836,25 @@ public class GephiCommander {
             var name = options.get("name").getAsString();
 
             switch (name) {
-                case "YifanHu" : {
-                    applyYifanHu(graphModel, options); break;
-                }
-                case "YifanHuProportional" : {
-                    applyYifanHuProportional(graphModel, options); break;
-                }
-                case "ForceAtlas2" : {
-                    applyForceAtlas2(graphModel, options); break;
+                case "Multilevel" : {
+                    applyMultilevel(graphModel, options); break;
                 }
-                case "OpenOrd" : {
-                    applyOpenOrd(graphModel, options); break;
+                case "Components" : {
+                    applyComponents(graphModel, options); break;
                 }
-                case "RandomLayout" : {
-                    applyRandomLayout(graphModel, options); break;
+                case "OpenOrd" :
+                case "RandomLayout" :
+                case "Noverlap" :
+                case PivotMDSLayoutBuilder.IDENTIFER : {
+                    applyLayout(buildLayout(name, graphModel), options, false); break;
                 }
-                case "Noverlap" : {
-                    applyNoverlapLayout(options); break;
-                }
-                case "FruchtermanReingold" : {
-                    applyFruchtermanReingoldLayout(options); break;
+                case "YifanHu" :
+                case "YifanHuProportional" :
+                case "ForceAtlas2" :
+                case "FruchtermanReingold" :
+                case BarnesHutLayoutBuilder.IDENTIFER :
+                case GridNoverlapLayoutBuilder.IDENTIFER : {
+                    applyLayout(buildLayout(name, graphModel), options, true); break;
                 }
                 default : System.out.println("No such layout: "+name);
     
@@ -496,10 +956,6 @@ public class GephiCommander {
         return getGraphBounds(graph, 0f);
     }
 
-    static Node getNodeById(Object id) {
-        var graphModel = Lookup.getDefault().lookup(GraphController.class).getGraphModel();
-        return graphModel.getGraph().getNode(id);
-    }
     private static JsonObject printNodeCoordinates() {
         System.out.println("Entered printNodeCoordinates()...");
         var graphModel = Lookup.getDefault().lookup(GraphController.class).getGraphModel();
@@ -842,6 +1298,18 @@ public class GephiCommander {
                 case "Integer":
                     filter.setMatch(value.getAsInt());
                     break;
+                case "Long":
+                    filter.setMatch(value.getAsLong());
+                    break;
+                case "Short":
+                    filter.setMatch(value.getAsShort());
+                    break;
+                case "Byte":
+                    filter.setMatch(value.getAsByte());
+                    break;
+                case "Float":
+                    filter.setMatch(value.getAsFloat());
+                    break;
                 case "Double":
                     filter.setMatch(value.getAsDouble());
                     break;
@@ -875,82 +1343,280 @@ public class GephiCommander {
         var query = filterController.createQuery(filterResult);
         return query;
     }
-    private static void applyForceAtlas2(GraphModel graphModel, JsonObject options) {
-        ForceAtlas2 layout = new ForceAtlas2(null);
-        layout.setGraphModel(graphModel);
-        setLayoutProperties(layout, options);
-        printLayoutProperties(layout);
-        if (options.has("export")) {
-            runAlgoWithExporting(layout,options);
-        } else {
-            runAlgoFor(layout, options);
+    /*
+     * A layout by its pipeline name, set up like its layouts entry, or null for an unknown name
+     */
+    static Layout buildLayout(String name, GraphModel graphModel) {
+        switch (name) {
+            case "YifanHu" : {
+                var layout = new YifanHuLayout(null, new StepDisplacement(1f));
+                layout.resetPropertiesValues();
+                layout.setGraphModel(graphModel);
+                return layout;
+            }
+            case "YifanHuProportional" : {
+                var layout = new YifanHuProportional().buildLayout();
+                layout.resetPropertiesValues();
+                layout.setGraphModel(graphModel);
+                return layout;
+            }
+            case "ForceAtlas2" : {
+                var layout = new ForceAtlas2(null);
+                layout.setGraphModel(graphModel);
+                return layout;
+            }
+            case "OpenOrd" : {
+                var layout = new OpenOrdLayoutBuilder().buildLayout();
+                layout.resetPropertiesValues();
+                layout.setGraphModel(graphModel);
+                return layout;
+            }
+            case "RandomLayout" : {
+                var layout = new RandomLayout(new Random(), 50);
+                layout.setGraphModel(graphModel);
+                return layout;
+            }
+            case "Noverlap" : {
+                var layout = new NoverlapLayout(new NoverlapLayoutBuilder());
+                layout.setGraphModel(graphModel);
+                layout.resetPropertiesValues();
+                return layout;
+            }
+            case "FruchtermanReingold" : {
+                var layout = new FruchtermanReingoldBuilder().buildLayout();
+                layout.setGraphModel(graphModel);
+                layout.resetPropertiesValues();
+                return layout;
+            }
+            case BarnesHutLayoutBuilder.IDENTIFER : {
+                var layout = new BarnesHutLayoutBuilder().buildLayout();
+                layout.setGraphModel(graphModel);
+                layout.resetPropertiesValues();
+                return layout;
+            }
+            case GridNoverlapLayoutBuilder.IDENTIFER : {
+                var layout = new GridNoverlapLayoutBuilder().buildLayout();
+                layout.setGraphModel(graphModel);
+                layout.resetPropertiesValues();
+                return layout;
+            }
+            case PivotMDSLayoutBuilder.IDENTIFER : {
+                var layout = new PivotMDSLayoutBuilder().buildLayout();
+                layout.setGraphModel(graphModel);
+                layout.resetPropertiesValues();
+                return layout;
+            }
+            default : return null;
         }
     }
 
-    private static void applyYifanHu(GraphModel graphModel, JsonObject options) {
-        YifanHuLayout layout = new YifanHuLayout(null, new StepDisplacement(1f));
-        layout.resetPropertiesValues();
-        layout.setGraphModel(graphModel);
-        setLayoutProperties(layout, options);
-        printLayoutProperties(layout);
+    /*
+     * Lays out the coarsest level of the graph (see GraphCoarsening), then each finer level
+     * starting from the coarser one's positions, e.g. {name: 'Multilevel', layout: 'ForceAtlas2',
+     * steps: 500, refineSteps: 30, minNodes: 100, Scaling: 2.0}. steps and converge are for the
+     * coarsest level, maxMillis for the whole run, other options go to the layout at every level.
+     */
+    private static void applyMultilevel(GraphModel graphModel, JsonObject options) {
+        var layoutName = options.has("layout") ? options.get("layout").getAsString() : "ForceAtlas2";
+        int minNodes = options.has("minNodes") ? options.get("minNodes").getAsInt() : 100;
+        int maxLevels = options.has("maxLevels") ? options.get("maxLevels").getAsInt() : 30;
+        int refineSteps = options.has("refineSteps") ? options.get("refineSteps").getAsInt() : 30;
+        var layoutOptions = options.deepCopy();
+        for (var key : List.of("name", "layout", "minNodes", "maxLevels", "refineSteps")) {
+            layoutOptions.remove(key);
+        }
+        if (buildLayout(layoutName, graphModel) == null) {
+            throw new IllegalStateException("No such layout for Multilevel: "+layoutName);
+        }
         if (options.has("export")) {
-            runAlgoWithExporting(layout,options);
-        } else {
-            runAlgoFor(layout, options);
+            System.out.println("Multilevel doesn't export frames, ignoring export");
+        }
+        var budget = TimeBudget.forLayout(options);
+
+        long start = System.nanoTime();
+        var levels = GraphCoarsening.build(graphModel.getGraphVisible(), minNodes, maxLevels, 42);
+        int coarsest = levels.levels() - 1;
+        var sizes = new ArrayList<String>();
+        for (int level = 0; level <= coarsest; level++) {
+            sizes.add(String.valueOf(levels.nodeCount(level)));
+        }
+        System.out.printf("Coarsened into %s levels in %s ms, nodes: %s%n",
+            levels.levels(), (System.nanoTime() - start) / 1_000_000, String.join(", ", sizes));
+
+        var levelMillis = new ArrayList<String>();
+        for (int level = coarsest; level >= 0; level--) {
+            long levelStart = System.nanoTime();
+            if (level < coarsest) {
+                levels.interpolate(level);
+            }
+            var levelModel = level == 0 ? graphModel : levels.graphModel(level);
+            var layout = buildLayout(layoutName, levelModel);
+            setLayoutProperties(layout, layoutOptions);
+            if (level == coarsest) {
+                printLayoutProperties(layout);
+            }
+            System.out.printf("Level %s, %s nodes, %s edges: ", level, levels.nodeCount(level), levels.edgeCount(level));
+            if (level < coarsest) {
+                runAlgoFor(layout, refineSteps, budget);
+            } else if (layoutOptions.has("converge")) {
+                int maxSteps = layoutOptions.has("steps") ? layoutOptions.get("steps").getAsInt() :
+                    layoutOptions.has("maxSteps") ? layoutOptions.get("maxSteps").getAsInt() : Integer.MAX_VALUE;
+                runAlgoUntilConverged(layout, new LayoutConvergence(layoutOptions.get("converge")), maxSteps, budget,
+                    levelModel.getGraphVisible());
+            } else {
+                runAlgoFor(layout, layoutOptions.has("steps") ? layoutOptions.get("steps").getAsInt() : 500, budget);
+            }
+            if (level > 0) {
+                levels.readPositions(level);
+            }
+            levelMillis.add(String.valueOf((System.nanoTime() - levelStart) / 1_000_000));
+        }
+        System.out.printf("Multilevel %s done in %s ms, coarsest level first: %s ms%n",
+            layoutName, (System.nanoTime() - start) / 1_000_000, String.join(", ", levelMillis));
+    }
+
+    /*
+     * Lays out each connected component on its own, several at a time, then packs them
+     * (see GraphComponents), e.g. {name: 'Components', layout: 'ForceAtlas2', steps: 200,
+     * threads: 8, gap: 20}. steps applies to every component; with converge each component
+     * stops once it has converged, steps or maxSteps capping it. maxMillis is one budget shared
+     * by all of them, other options go to the layout. Every component runs with the property
+     * values resolved for the whole graph, so they come out at the same scale. Layouts with a
+     * 'Threads number' get 1 thread each unless it is given.
+     */
+    private static void applyComponents(GraphModel graphModel, JsonObject options) {
+        var layoutName = options.has("layout") ? options.get("layout").getAsString() : "ForceAtlas2";
+        int threads = options.has("threads") ? options.get("threads").getAsInt() : Runtime.getRuntime().availableProcessors();
+        double gap = options.has("gap") ? options.get("gap").getAsDouble() : 20;
+        var converge = options.has("converge") ? options.get("converge") : null;
+        int steps = options.has("steps") ? options.get("steps").getAsInt() :
+            converge == null ? 100 :
+            options.has("maxSteps") ? options.get("maxSteps").getAsInt() : Integer.MAX_VALUE;
+        var layoutOptions = options.deepCopy();
+        for (var key : List.of("name", "layout", "threads", "gap")) {
+            layoutOptions.remove(key);
+        }
+        // checks the options once, before any thread starts
+        var probe = buildLayout(layoutName, graphModel);
+        if (probe == null) {
+            throw new IllegalStateException("No such layout for Components: "+layoutName);
+        }
+        for (var prop : probe.getProperties()) {
+            if (prop.getProperty().getName().equals("Threads number") && !layoutOptions.has("Threads number")) {
+                layoutOptions.addProperty("Threads number", 1);
+            }
+        }
+        setLayoutProperties(probe, layoutOptions);
+        printLayoutProperties(probe);
+        // ForceAtlas2 picks its scaling and Barnes-Hut from the node count of the model it is
+        // given, so the components get the probe's values rather than their own defaults
+        var propertyValues = layoutPropertyValues(probe);
+        var budget = TimeBudget.forLayout(options);
+        var outOfTime = new AtomicBoolean();
+        var converged = new AtomicInteger();
+
+        long start = System.nanoTime();
+        var components = GraphComponents.of(graphModel.getGraphVisible());
+        int count = components.count();
+        System.out.printf("Laying out %s components, largest %s nodes, on %s threads, %s...%n",
+            count, count > 0 ? components.nodeCount(0) : 0, threads,
+            converge == null ? steps+" steps each" : "each until it converges, no more than "+steps+" steps");
+        var pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        var threadModels = ThreadLocal.withInitial(GraphModel.Factory::newInstance);
+        try {
+            var futures = new ArrayList<Future<PipelineMetrics.StepTimes>>();
+            // largest first, so the longest runs start early
+            for (int c = 0; c < count; c++) {
+                if (components.nodeCount(c) < 2) {
+                    continue;
+                }
+                int component = c;
+                futures.add(pool.submit(() -> {
+                    var componentModel = threadModels.get();
+                    components.copyTo(component, componentModel);
+                    var layout = buildLayout(layoutName, componentModel);
+                    setLayoutPropertyValues(layout, propertyValues);
+                    var componentTimes = new PipelineMetrics.StepTimes();
+                    layout.initAlgo();
+                    var convergence = converge == null ? null : new LayoutConvergence(converge);
+                    if (convergence != null) {
+                        convergence.start(layout, componentModel.getGraphVisible());
+                    }
+                    for (int k = 1; k <= steps && layout.canAlgo(); k++) {
+                        if (budget.isSpent()) {
+                            outOfTime.set(true);
+                            break;
+                        }
+                        goAlgoTimed(layout, k, componentTimes);
+                        if (convergence != null && convergence.step()) {
+                            converged.incrementAndGet();
+                            break;
+                        }
+                    }
+                    layout.endAlgo();
+                    components.readPositions(component);
+                    return componentTimes;
+                }));
+            }
+            var stepTimes = new PipelineMetrics.StepTimes();
+            for (var future : futures) {
+                stepTimes.addAll(future.get());
+            }
+            components.pack(gap);
+            System.out.printf("Laid out %s components (%s steps in all) in %s ms%n",
+                count, stepTimes.count(), (System.nanoTime() - start) / 1_000_000);
+            var details = new JsonObject();
+            details.addProperty("components", count);
+            if (converge != null) {
+                System.out.printf("%s of %s components converged%n", converged.get(), futures.size());
+                details.addProperty("converged", converged.get());
+            }
+            budget.report(probe.getClass().getSimpleName(), stepTimes.count(), outOfTime.get(), details);
+            recordLayoutMetrics(probe, stepTimes, 0, details);
+        } catch (Exception ex) {
+            throw new IllegalStateException("Components layout failed", ex);
+        } finally {
+            pool.shutdownNow();
         }
     }
 
-    private static void applyYifanHuProportional(GraphModel graphModel, JsonObject options) {
-        var layout =  new YifanHuProportional().buildLayout();
-        layout.resetPropertiesValues();
-        layout.setGraphModel(graphModel);
+    /*
+     * OpenOrd, RandomLayout, Noverlap and PivotMDS don't export frames
+     */
+    private static void applyLayout(Layout layout, JsonObject options, boolean canExport) {
         setLayoutProperties(layout, options);
         printLayoutProperties(layout);
-        if (options.has("export")) {
+        if (canExport && options.has("export")) {
             runAlgoWithExporting(layout,options);
         } else {
             runAlgoFor(layout, options);
         }
     }
-    
-    private static void applyOpenOrd(GraphModel graphModel, JsonObject options) {
-        var layout =  new OpenOrdLayoutBuilder().buildLayout();
-        layout.resetPropertiesValues();
-        layout.setGraphModel(graphModel);
-        setLayoutProperties(layout, options);
-        printLayoutProperties(layout);
-        runAlgoFor(layout, options);
-    }
-    private static void applyRandomLayout(GraphModel graphModel, JsonObject options) {
-        var layout =  new RandomLayout(new Random(), 50);
-        layout.setGraphModel(graphModel);
-        setLayoutProperties(layout, options);
-        printLayoutProperties(layout);
-        runAlgoFor(layout, options);
-    }
-    private static void applyNoverlapLayout(JsonObject options) {
-        var graphModel = Lookup.getDefault().lookup(GraphController.class).getGraphModel();
-        // var layout = (NoverlapLayout)(new NoverlapLayoutBuilder().buildLayout());
-        var layout = new NoverlapLayout(new NoverlapLayoutBuilder());
-        layout.setGraphModel(graphModel);
-        layout.resetPropertiesValues();
-        setLayoutProperties(layout, options);
-        printLayoutProperties(layout);
-        runAlgoFor(layout, options);
+
+    private static Map<String, Object> layoutPropertyValues(Layout layout) {
+        var values = new HashMap<String, Object>();
+        for (var lProp : layout.getProperties()) {
+            var prop = lProp.getProperty();
+            try {
+                values.put(prop.getName(), prop.getValue());
+            } catch (IllegalAccessException|InvocationTargetException e) {
+                throw new IllegalStateException("Failed to read "+prop.getName(), e);
+            }
+        }
+        return values;
     }
 
-    private static void applyFruchtermanReingoldLayout(JsonObject options) {
-        var graphModel = Lookup.getDefault().lookup(GraphController.class).getGraphModel();
-        // var layout = (NoverlapLayout)(new NoverlapLayoutBuilder().buildLayout());
-        var layout = new FruchtermanReingoldBuilder().buildLayout();
-        layout.setGraphModel(graphModel);
-        layout.resetPropertiesValues();
-        setLayoutProperties(layout, options);
-        printLayoutProperties(layout);
-        if (options.has("export")) {
-            runAlgoWithExporting(layout,options);
-        } else {
-            runAlgoFor(layout, options);
+    private static void setLayoutPropertyValues(Layout layout, Map<String, Object> values) {
+        for (var lProp : layout.getProperties()) {
+            @SuppressWarnings("unchecked")
+            var prop = (Property<Object>) lProp.getProperty();
+            if (prop.canWrite() && values.containsKey(prop.getName())) {
+                try {
+                    prop.setValue(values.get(prop.getName()));
+                } catch (IllegalAccessException|IllegalArgumentException|InvocationTargetException e) {
+                    throw new IllegalStateException("Failed to set "+prop.getName(), e);
+                }
+            }
         }
     }
 
@@ -1013,7 +1679,7 @@ public class GephiCommander {
             }
             //System.out.printf("%s\t%s%n",name,type);
         }
-        Set<String> predefinedOptionNames = Set.of("name","steps","maxSteps","export","exportEach");
+        Set<String> predefinedOptionNames = Set.of("name","steps","maxSteps","maxMillis","export","exportEach","exportAsync","converge");
         Set<String> userOpts = options.keySet();
         var unknownUserOpts = new HashSet<String>(userOpts);
         unknownUserOpts.removeAll(predefinedOptionNames);
@@ -1387,14 +2053,23 @@ public class GephiCommander {
         }
     }
     private static void export(JsonObject options) {
-        System.out.println("Exporting...");
-        ExportController ec = Lookup.getDefault().lookup(ExportController.class);
         var pc = Lookup.getDefault().lookup(ProjectController.class);
-        var workspace = pc.getCurrentWorkspace();
-        
+        exportTo(exportFile(options), options, pc.getCurrentWorkspace());
+    }
+
+    private static LocalDateTime lastTimestamp = null;
+    /*
+     * The file an export op writes to. Timestamps never repeat, so frames exported within
+     * the same millisecond (e.g. with exportAsync) don't overwrite each other.
+     */
+    private static File exportFile(JsonObject options) {
         String filename = options.has("file") ? options.get("file").getAsString() : "gephi.pdf";
         if (options.has("timestamp") && options.get("timestamp").getAsBoolean()) {
             var now = LocalDateTime.now();
+            if (lastTimestamp != null && !now.isAfter(lastTimestamp.plusNanos(999_999))) {
+                now = lastTimestamp.plusNanos(1_000_000);
+            }
+            lastTimestamp = now;
             var formatter = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmssSSS");
             String ts = now.format(formatter);
 
@@ -1402,7 +2077,15 @@ public class GephiCommander {
             String filenameWithoutExtension = filename.substring(0, filename.lastIndexOf("."));
             filename = filenameWithoutExtension + ts + extension;
         }
-        File outFile = new File(filename);
+        return new File(filename);
+    }
+
+    /*
+     * Exports the graph of workspace, which is not the current one for exportAsync frames
+     */
+    static void exportTo(File outFile, JsonObject options, Workspace workspace) {
+        System.out.println("Exporting...");
+        ExportController ec = Lookup.getDefault().lookup(ExportController.class);
         String extension = outFile.getName().replaceAll("^.*\\.","");
         
         try {
@@ -1422,7 +2105,7 @@ public class GephiCommander {
                 
 
 
-                PNGExporter pngExporter = null;
+                MyPNGExporter pngExporter = null;
                 if (options.has("PNGExporter")) {
                     var pngOpts = options.get("PNGExporter").getAsJsonObject();
                     pngExporter = new MyPNGExporter(pngOpts);
@@ -1439,46 +2122,141 @@ public class GephiCommander {
                     pngExporter.setHeight(y);
                 }
                 pngExporter.setMargin(0);
-                ec.exportFile(outFile, pngExporter);
+                // PngEncoder writes the file in the background, ops flush it before they end
+                pngExporter.setOutputFile(outFile);
+                pngExporter.execute();
+            } else if (exporter != null) {
+                exporter.setWorkspace(workspace);
+                ec.exportFile(outFile, exporter);
             } else {
                 ec.exportFile(outFile);
             }
+            exportedFiles.add(outFile);
             System.out.println("Exported to "+outFile);
             
         } catch (IOException ex) {
-            ex.printStackTrace();
-            return;
+            throw new IllegalStateException("Export failed: "+outFile, ex);
         }
     }
 
-    private static void runAlgoFor(Layout layout, int steps) {
+    private static void runAlgoFor(Layout layout, int steps, TimeBudget budget) {
         System.out.printf("Applying layout %s with %s steps... ",layout.getClass().getSimpleName(), steps); 
+        var stepTimes = new PipelineMetrics.StepTimes();
         layout.initAlgo();
+        boolean outOfTime = false;
         for (int k = 0; k < steps; k++) {
-            layout.goAlgo();
+            if (budget.isSpent()) {
+                outOfTime = true;
+                break;
+            }
+            goAlgoTimed(layout, k, stepTimes);
         }
         layout.endAlgo();
         System.out.println("Done.");
+        var details = new JsonObject();
+        budget.report(layout.getClass().getSimpleName(), stepTimes.count(), outOfTime, details);
+        recordLayoutMetrics(layout, stepTimes, 0, details);
     }
-    private static void runAlgoForMaximum(Layout layout, int maxSteps) {
+    private static void runAlgoForMaximum(Layout layout, int maxSteps, TimeBudget budget) {
         System.out.printf("Applying layout %s with no more than %s steps...%n",layout.getClass().getSimpleName(), maxSteps); 
+        var stepTimes = new PipelineMetrics.StepTimes();
         layout.initAlgo();
         int stepCount = 1;
+        boolean outOfTime = false;
         for (; stepCount <= maxSteps && layout.canAlgo(); stepCount++) {
-            layout.goAlgo();
+            if (budget.isSpent()) {
+                outOfTime = true;
+                break;
+            }
+            goAlgoTimed(layout, stepCount, stepTimes);
         }
         layout.endAlgo();
         System.out.printf("It was %s steps.%n",stepCount);
+        var details = new JsonObject();
+        budget.report(layout.getClass().getSimpleName(), stepTimes.count(), outOfTime, details);
+        recordLayoutMetrics(layout, stepTimes, 0, details);
+    }
+    /*
+     * Runs until nodes stop moving, see LayoutConvergence
+     */
+    private static void runAlgoUntilConverged(Layout layout, LayoutConvergence convergence, int maxSteps, TimeBudget budget, Graph graph) {
+        System.out.printf("Applying layout %s until it converges, no more than %s steps...%n",layout.getClass().getSimpleName(), maxSteps);
+        var stepTimes = new PipelineMetrics.StepTimes();
+        layout.initAlgo();
+        convergence.start(layout, graph);
+        boolean outOfTime = false;
+        for (int k = 1; k <= maxSteps && layout.canAlgo(); k++) {
+            if (budget.isSpent()) {
+                outOfTime = true;
+                break;
+            }
+            goAlgoTimed(layout, k, stepTimes);
+            if (convergence.step()) {
+                break;
+            }
+        }
+        layout.endAlgo();
+        System.out.println(convergence.summary());
+        System.out.println("Displacement curve: "+convergence.curve());
+        var details = new JsonObject();
+        details.add("convergence", convergence.toJson());
+        budget.report(layout.getClass().getSimpleName(), stepTimes.count(), outOfTime, details);
+        recordLayoutMetrics(layout, stepTimes, 0, details);
+    }
+    private static void goAlgoTimed(Layout layout, int step, PipelineMetrics.StepTimes stepTimes) {
+        var event = new PipelineEvents.LayoutStep();
+        event.begin();
+        long stepStart = System.nanoTime();
+        layout.goAlgo();
+        stepTimes.add(System.nanoTime() - stepStart);
+        event.end();
+        if (event.shouldCommit()) {
+            event.layout = layout.getClass().getSimpleName();
+            event.step = step;
+            event.commit();
+        }
+    }
+    /*
+     * details: extra properties of the layout run, e.g. its convergence and budget
+     */
+    private static void recordLayoutMetrics(Layout layout, PipelineMetrics.StepTimes stepTimes, long exportNanos, JsonObject details) {
+        var metrics = PipelineMetrics.current();
+        if (metrics != null) {
+            metrics.recordLayout(layout.getClass().getSimpleName(), stepTimes, exportNanos, details);
+        }
     }
     private static void runAlgoFor(Layout layout, JsonObject options) {
-        if (options.has("steps")) {
-            runAlgoFor(layout, options.get("steps").getAsInt());
+        // maxMillis and the pipeline budget stop the run early, whatever the steps
+        var budget = TimeBudget.forLayout(options);
+        if (options.has("converge")) {
+            // steps or maxSteps cap the run
+            int maxSteps = options.has("steps") ? options.get("steps").getAsInt() :
+                options.has("maxSteps") ? options.get("maxSteps").getAsInt() : Integer.MAX_VALUE;
+            var graph = Lookup.getDefault().lookup(GraphController.class).getGraphModel().getGraphVisible();
+            runAlgoUntilConverged(layout, new LayoutConvergence(options.get("converge")), maxSteps, budget, graph);
+        }
+        else if (options.has("steps")) {
+            runAlgoFor(layout, options.get("steps").getAsInt(), budget);
         }
         else {
             int maxSteps = options.has("maxSteps") ? options.get("maxSteps").getAsInt() : Integer.MAX_VALUE;
-            runAlgoForMaximum(layout, maxSteps);
+            runAlgoForMaximum(layout, maxSteps, budget);
+        }
+    }
+
+    // exportAsync frames are exported on the frame-export thread, other files on the layout thread
+    private static final List<File> exportedFiles = Collections.synchronizedList(new ArrayList<>());
+    /*
+     * Files written by export ops since the last clearExportedFiles() call
+     */
+    static List<File> getExportedFiles() {
+        synchronized (exportedFiles) {
+            return new ArrayList<>(exportedFiles);
         }
     }
+    static void clearExportedFiles() {
+        exportedFiles.clear();
+    }
 
     private static Integer currentAlgoEach = null;
     static Integer getCurrentAlgoEach() {
@@ -1499,21 +2277,83 @@ public class GephiCommander {
         currentAlgoEach = each;
         currentAlgoSteps = steps;
 
+        // With converge or a time budget, the last frame is exported where the layout stops before 'steps'
+        var convergence = layoutOptions.has("converge") ? new LayoutConvergence(layoutOptions.get("converge")) : null;
+        var budget = TimeBudget.forLayout(layoutOptions);
+
+        // exportAsync renders the frames on another thread, from a copy of the graph
+        FramePipeline frames = null;
+        if (layoutOptions.has("exportAsync") && layoutOptions.get("exportAsync").getAsBoolean()) {
+            if (exportsGraphFile(exportOptions)) {
+                System.out.println("exportAsync only applies to images, graph files are exported between steps");
+            } else {
+                frames = FramePipeline.start(exportOptions);
+            }
+        }
+
         System.out.printf("Applying layout %s with %s steps...%n", layoutName, steps);
+        var stepTimes = new PipelineMetrics.StepTimes();
+        long exportNanos = 0;
         layout.initAlgo();
-        for (int k = 1; k <= steps; k++) {
-            layout.goAlgo();
-            if (k % each == 0 || k == steps) {
-                export(exportOptions);
+        if (convergence != null) {
+            convergence.start(layout, Lookup.getDefault().lookup(GraphController.class).getGraphModel().getGraphVisible());
+        }
+        boolean outOfTime = false;
+        try {
+            for (int k = 1; k <= steps; k++) {
+                goAlgoTimed(layout, k, stepTimes);
+                boolean converged = convergence != null && convergence.step();
+                outOfTime = k < steps && !converged && budget.isSpent();
+                if (k % each == 0 || k == steps || converged || outOfTime) {
+                    long exportStart = System.nanoTime();
+                    if (layout instanceof BufferedPositionsLayout) {
+                        ((BufferedPositionsLayout) layout).writePositions();
+                    }
+                    if (frames != null) {
+                        frames.submit(exportFile(exportOptions));
+                    } else {
+                        export(exportOptions);
+                    }
+                    exportNanos += System.nanoTime() - exportStart;
+                }
+                if (converged || outOfTime) {
+                    break;
+                }
+            }
+            layout.endAlgo();
+            long waitStart = System.nanoTime();
+            if (frames != null) {
+                // with exportAsync the export time is what the layout spent on snapshots and waiting
+                frames.finish();
+                System.out.printf("%s frames exported in the background%n", frames.frameCount());
+            }
+            PngEncoder.get().flush();
+            exportNanos += System.nanoTime() - waitStart;
+        } finally {
+            if (frames != null) {
+                frames.close();
             }
         }
-        layout.endAlgo();
+        var details = new JsonObject();
+        if (convergence != null) {
+            System.out.println(convergence.summary());
+            System.out.println("Displacement curve: "+convergence.curve());
+            details.add("convergence", convergence.toJson());
+        }
+        budget.report(layoutName, stepTimes.count(), outOfTime, details);
+        recordLayoutMetrics(layout, stepTimes, exportNanos, details);
         System.out.println("Applying "+ layoutName + " is finished.");
 
         currentAlgoEach = null;
         currentAlgoSteps = null;
     }
 
+    private static boolean exportsGraphFile(JsonObject exportOptions) {
+        String filename = exportOptions.has("file") ? exportOptions.get("file").getAsString() : "gephi.pdf";
+        String extension = filename.replaceAll("^.*\\.","");
+        return Lookup.getDefault().lookup(ExportController.class).getExporter(extension) instanceof GraphExporter;
+    }
+
     private static Color parseColor(String colorValue) {
         try {
             Color color = ImportUtils.parseColor(colorValue);
@@ -0,0 +1,255 @@
+package gephicommander;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Keeps a warm JVM and runs pipelines posted to a loopback HTTP endpoint.
+ * <p>
+ * {@code POST /run} takes the same JSON array that {@code main} reads and answers
+ * with JSON lines: one line per finished op, one line per exported file
+ * (base64 encoded, unless {@code ?files=paths} is given) and a final status line,
+ * which holds the metrics when they are enabled.
+ * {@code GET /health} answers {@code ok}.
+ * <p>
+ * Pipelines can read and write any file, so {@code /run} needs the token printed at
+ * startup in the {@code X-Gephi-Token} header and a JSON content type, and refuses
+ * requests with an {@code Origin} header. A web page can send neither the header nor
+ * the content type without a preflight, which the server does not answer.
+ * <p>
+ * Gephi controllers always work on the current workspace, so pipelines
+ * themselves are executed one at a time, each in a fresh project, on a thread of
+ * their own. Request threads stream the lines back, so a slow client does not hold up
+ * the next pipeline. The concurrency limit bounds how many requests are being received,
+ * queued and streamed back at once; requests over the limit get 503.
+ */
+class GephiServer {
+
+    private static final String TOKEN_HEADER = "X-Gephi-Token";
+    // Put on the line queue after the last op of a pipeline
+    private static final JsonObject END = new JsonObject();
+
+    private static final ExecutorService pipelines = Executors.newSingleThreadExecutor(r -> {
+        var thread = new Thread(r, "pipeline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Numbers the flight recordings of the runs
+    private static final AtomicInteger runs = new AtomicInteger();
+
+    private final Semaphore permits;
+    private final byte[] token;
+
+    private GephiServer(int concurrency, String token) {
+        this.permits = new Semaphore(concurrency);
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /*
+     * Args: [--port 8090] [--concurrency 4] [--token secret] plus the pipeline flags of main:
+     * [--cache-dir dir] [--cache-max-mb 1024] [--max-millis ms] [--metrics] [--metrics-file path] [--jfr file]
+     * [--png-threads n] [--png-queue n] [--png-level 4] [--png-filter none]
+     */
+    static void main(String[] args) {
+        int port = 8090;
+        int concurrency = Runtime.getRuntime().availableProcessors();
+        String token = null;
+        var flags = new PipelineFlags();
+        for (int i = 0; i < args.length; i++) {
+            int taken = flags.parse(args, i);
+            if (taken > 0) {
+                i += taken - 1;
+                continue;
+            }
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--concurrency":
+                    concurrency = Integer.parseInt(args[++i]);
+                    break;
+                case "--token":
+                    token = args[++i];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown server option: "+args[i]);
+            }
+        }
+        Locale.setDefault(Locale.ENGLISH);  // Ignore Gephi localization
+        flags.apply();
+        if (token == null) {
+            var bytes = new byte[24];
+            new SecureRandom().nextBytes(bytes);
+            token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+            System.out.println("Token: "+token);
+        }
+
+        try {
+            new GephiServer(concurrency, token).start(port, concurrency);
+        } catch (IOException e) {
+            System.err.println("Failed to start server on port "+port);
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private void start(int port, int concurrency) throws IOException {
+        var address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        HttpServer server = HttpServer.create(address, 0);
+        server.createContext("/run", this::handleRun);
+        server.createContext("/health", this::handleHealth);
+        // Extra threads only reject, the semaphore is what limits real work
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency + 2);
+        server.setExecutor(executor);
+        server.start();
+        System.out.printf("Gephi Commander server listening on http://%s:%s/ (concurrency %s)%n",
+            address.getHostString(), port, concurrency);
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /*
+     * The status a request to run a pipeline is refused with, 0 if it may run
+     */
+    private int refusal(HttpExchange exchange) {
+        var headers = exchange.getRequestHeaders();
+        // Browsers send Origin on cross-origin posts, and a Host other than loopback means DNS rebinding
+        String host = headers.getFirst("Host");
+        String hostName = host == null ? "" : host.replaceFirst(":\\d+$", "");
+        if (headers.containsKey("Origin") ||
+                !(hostName.equals("127.0.0.1") || hostName.equals("localhost") || hostName.equals("[::1]"))) {
+            return 403;
+        }
+        String given = headers.getFirst(TOKEN_HEADER);
+        if (given == null || !MessageDigest.isEqual(token, given.getBytes(StandardCharsets.UTF_8))) {
+            return 401;
+        }
+        String contentType = headers.getFirst("Content-Type");
+        if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("application/json")) {
+            return 415;
+        }
+        return 0;
+    }
+
+    private void handleRun(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            exchange.sendResponseHeaders(405, -1);
+            exchange.close();
+            return;
+        }
+        int refused = refusal(exchange);
+        if (refused != 0) {
+            exchange.sendResponseHeaders(refused, -1);
+            exchange.close();
+            return;
+        }
+        if (!permits.tryAcquire()) {
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+            return;
+        }
+        try {
+            JsonArray pipeline;
+            try (var reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+                pipeline = JsonParser.parseReader(reader).getAsJsonArray();
+            } catch (Exception e) {
+                byte[] body = ("Request body should be a JSON array of ops: "+e.getMessage())
+                    .getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(400, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+                return;
+            }
+            String query = exchange.getRequestURI().getQuery();
+            boolean inlineFiles = query == null || !query.contains("files=paths");
+
+            exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+            exchange.sendResponseHeaders(200, 0);
+            try (Writer out = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8)) {
+                run(pipeline, out, inlineFiles);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static void run(JsonArray pipeline, Writer out, boolean inlineFiles) throws IOException {
+        var lines = new LinkedBlockingQueue<JsonObject>();
+        // Each pipeline gets its own time budget and metrics
+        Future<JsonObject> run = pipelines.submit(() -> {
+            try {
+                return PipelineFlags.current().runIsolated(pipeline, lines::add, true, runs.incrementAndGet());
+            } finally {
+                lines.add(END);
+            }
+        });
+        JsonObject result;
+        try {
+            JsonObject line;
+            while ((line = lines.take()) != END) {
+                writeLine(out, line);
+            }
+            result = run.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while running the pipeline", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Pipeline failed", e.getCause());
+        }
+
+        for (var fileEl : result.remove("files").getAsJsonArray()) {
+            var file = new File(fileEl.getAsString());
+            var line = new JsonObject();
+            line.addProperty("file", file.getPath());
+            line.addProperty("size", file.length());
+            if (inlineFiles && file.isFile()) {
+                line.addProperty("data", Base64.getEncoder().encodeToString(Files.readAllBytes(file.toPath())));
+            }
+            writeLine(out, line);
+        }
+        writeLine(out, result);
+    }
+
+    private static void writeLine(Writer out, JsonObject line) {
+        try {
+            out.write(line.toString());
+            out.write('\n');
+            out.flush();
+        } catch (IOException e) {
+            // Client went away, the pipeline still runs to the end
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package gephicommander;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+
+/**
+ * Levels of the Multilevel layout. Level 0 is the visible graph, each next level
+ * collapses the one before: nodes are matched along their heaviest edge, and nodes
+ * left without a partner join a neighbour's group, so stars and chains shrink too.
+ * Levels are kept as arrays (adjacency with summed edge weights); a coarse level only
+ * becomes a Gephi graph, in a GraphModel of its own, when it is laid out.
+ */
+class GraphCoarsening {
+
+    private static class Level {
+        // Neighbors of node i are targets[offsets[i]] .. targets[offsets[i + 1] - 1]
+        int[] offsets;
+        int[] targets;
+        float[] weights;
+        // Number of level 0 nodes each node stands for
+        int[] size;
+        // Node of the next coarser level each node was collapsed into
+        int[] parent;
+        float[] x;
+        float[] y;
+        Node[] nodes;
+
+        int count() {
+            return offsets.length - 1;
+        }
+    }
+
+    private final List<Level> levels = new ArrayList<>();
+    private final Random random;
+
+    private GraphCoarsening(Random random) {
+        this.random = random;
+    }
+
+    /*
+     * Coarsens until a level has no more than minNodes nodes, stops shrinking, or maxLevels is reached
+     */
+    static GraphCoarsening build(Graph graph, int minNodes, int maxLevels, long seed) {
+        var coarsening = new GraphCoarsening(new Random(seed));
+        var level = readGraph(graph);
+        coarsening.levels.add(level);
+        while (level.count() > minNodes && coarsening.levels.size() < maxLevels) {
+            var coarser = coarsening.collapse(level);
+            // a level that hardly shrinks costs a layout pass and gains nothing
+            if (coarser.count() > level.count() * 0.9) {
+                level.parent = null;
+                break;
+            }
+            coarsening.levels.add(coarser);
+            level = coarser;
+        }
+        return coarsening;
+    }
+
+    int levels() {
+        return levels.size();
+    }
+
+    int nodeCount(int level) {
+        return levels.get(level).count();
+    }
+
+    int edgeCount(int level) {
+        return levels.get(level).targets.length / 2;
+    }
+
+    /*
+     * A new GraphModel holding the coarse level, its nodes at the level's current positions
+     */
+    GraphModel graphModel(int level) {
+        var l = levels.get(level);
+        var graphModel = GraphModel.Factory.newInstance();
+        var factory = graphModel.factory();
+        int n = l.count();
+        l.nodes = new Node[n];
+        for (int i = 0; i < n; i++) {
+            var node = factory.newNode(String.valueOf(i));
+            node.setX(l.x[i]);
+            node.setY(l.y[i]);
+            node.setSize((float) Math.sqrt(l.size[i]));
+            l.nodes[i] = node;
+        }
+        var edges = new ArrayList<Edge>(l.targets.length / 2);
+        for (int i = 0; i < n; i++) {
+            for (int e = l.offsets[i]; e < l.offsets[i + 1]; e++) {
+                int j = l.targets[e];
+                if (i < j) {
+                    edges.add(factory.newEdge(l.nodes[i], l.nodes[j], 0, l.weights[e], false));
+                }
+            }
+        }
+        var graph = graphModel.getUndirectedGraph();
+        graph.addAllNodes(Arrays.asList(l.nodes));
+        graph.addAllEdges(edges);
+        return graphModel;
+    }
+
+    /*
+     * Copies the positions a layout left on the level's nodes back to the level
+     */
+    void readPositions(int level) {
+        var l = levels.get(level);
+        for (int i = 0; i < l.count(); i++) {
+            l.x[i] = l.nodes[i].x();
+            l.y[i] = l.nodes[i].y();
+        }
+        if (level > 0) {
+            // the coarse graph is not needed any more
+            l.nodes = null;
+        }
+    }
+
+    /*
+     * Places the nodes of a level where their coarse node ended up. The coarse layout
+     * is spread by sqrt(fine nodes / coarse nodes) around its center, since the finer
+     * level needs that much more room, and nodes of one group are jittered apart by
+     * a tenth of the mean coarse edge length. Level 0 positions go to the graph's nodes.
+     */
+    void interpolate(int level) {
+        var fine = levels.get(level);
+        var coarse = levels.get(level + 1);
+        int n = coarse.count();
+        double cx = 0, cy = 0;
+        for (int i = 0; i < n; i++) {
+            cx += coarse.x[i];
+            cy += coarse.y[i];
+        }
+        cx /= n;
+        cy /= n;
+        double edgeLength = 0;
+        for (int i = 0; i < n; i++) {
+            for (int e = coarse.offsets[i]; e < coarse.offsets[i + 1]; e++) {
+                int j = coarse.targets[e];
+                edgeLength += Math.hypot(coarse.x[i] - coarse.x[j], coarse.y[i] - coarse.y[j]);
+            }
+        }
+        edgeLength = coarse.targets.length > 0 ? edgeLength / coarse.targets.length : 1;
+        double scale = Math.sqrt((double) fine.count() / n);
+        double jitter = 0.1 * edgeLength * scale;
+
+        for (int i = 0; i < fine.count(); i++) {
+            int p = fine.parent[i];
+            fine.x[i] = (float) (cx + (coarse.x[p] - cx) * scale + (random.nextDouble() - 0.5) * 2 * jitter);
+            fine.y[i] = (float) (cy + (coarse.y[p] - cy) * scale + (random.nextDouble() - 0.5) * 2 * jitter);
+        }
+        if (level == 0) {
+            for (int i = 0; i < fine.count(); i++) {
+                if (!fine.nodes[i].isFixed()) {
+                    fine.nodes[i].setX(fine.x[i]);
+                    fine.nodes[i].setY(fine.y[i]);
+                }
+            }
+        }
+    }
+
+    private static Level readGraph(Graph graph) {
+        var level = new Level();
+        graph.readLock();
+        try {
+            var nodes = graph.getNodes().toArray();
+            int n = nodes.length;
+            level.nodes = nodes;
+            level.x = new float[n];
+            level.y = new float[n];
+            level.size = new int[n];
+            int maxStoreId = 0;
+            for (var node : nodes) {
+                maxStoreId = Math.max(maxStoreId, node.getStoreId());
+            }
+            int[] indexOf = new int[maxStoreId + 1];
+            for (int i = 0; i < n; i++) {
+                level.x[i] = nodes[i].x();
+                level.y[i] = nodes[i].y();
+                level.size[i] = 1;
+                indexOf[nodes[i].getStoreId()] = i;
+            }
+
+            var edges = graph.getEdges().toArray();
+            int[] sources = new int[edges.length];
+            int[] targets = new int[edges.length];
+            float[] weights = new float[edges.length];
+            for (int e = 0; e < edges.length; e++) {
+                sources[e] = indexOf[edges[e].getSource().getStoreId()];
+                targets[e] = indexOf[edges[e].getTarget().getStoreId()];
+                weights[e] = (float) edges[e].getWeight();
+            }
+            setAdjacency(level, n, sources, targets, weights, edges.length);
+        } finally {
+            graph.readUnlock();
+        }
+        return level;
+    }
+
+    /*
+     * Groups the level's nodes and builds the coarser level from the groups
+     */
+    private Level collapse(Level fine) {
+        int n = fine.count();
+        int[] group = new int[n];
+        Arrays.fill(group, -1);
+        int groups = 0;
+
+        // heavy edge matching, visiting nodes in random order
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+        for (int u : order) {
+            if (group[u] >= 0) {
+                continue;
+            }
+            int best = -1;
+            double bestScore = 0;
+            for (int e = fine.offsets[u]; e < fine.offsets[u + 1]; e++) {
+                int v = fine.targets[e];
+                if (v == u || group[v] >= 0) {
+                    continue;
+                }
+                // prefer heavy edges between light nodes, to keep the groups even
+                double score = fine.weights[e] / ((double) fine.size[u] * fine.size[v]);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = v;
+                }
+            }
+            if (best >= 0) {
+                group[u] = groups;
+                group[best] = groups++;
+            }
+        }
+
+        // nodes left over (e.g. leaves of a hub whose neighbours are all matched) join
+        // the smallest group next to them, or stay on their own
+        int[] groupSize = new int[n];
+        for (int u = 0; u < n; u++) {
+            if (group[u] >= 0) {
+                groupSize[group[u]] += fine.size[u];
+            }
+        }
+        for (int u : order) {
+            if (group[u] >= 0) {
+                continue;
+            }
+            int best = -1;
+            for (int e = fine.offsets[u]; e < fine.offsets[u + 1]; e++) {
+                int g = group[fine.targets[e]];
+                if (g >= 0 && fine.targets[e] != u && (best < 0 || groupSize[g] < groupSize[best])) {
+                    best = g;
+                }
+            }
+            group[u] = best >= 0 ? best : groups++;
+            groupSize[group[u]] += fine.size[u];
+        }
+        fine.parent = group;
+
+        // a coarse node starts where one of its members is
+        var coarse = new Level();
+        coarse.x = new float[groups];
+        coarse.y = new float[groups];
+        coarse.size = Arrays.copyOf(groupSize, groups);
+        boolean[] placed = new boolean[groups];
+        for (int u : order) {
+            int g = group[u];
+            if (!placed[g]) {
+                placed[g] = true;
+                coarse.x[g] = fine.x[u];
+                coarse.y[g] = fine.y[u];
+            }
+        }
+
+        // edges between groups, both directions of each are in the fine adjacency
+        int m = fine.targets.length;
+        int[] sources = new int[m];
+        int[] targets = new int[m];
+        float[] weights = new float[m];
+        int count = 0;
+        for (int u = 0; u < n; u++) {
+            for (int e = fine.offsets[u]; e < fine.offsets[u + 1]; e++) {
+                int v = fine.targets[e];
+                if (u < v && group[u] != group[v]) {
+                    sources[count] = group[u];
+                    targets[count] = group[v];
+                    weights[count++] = fine.weights[e];
+                }
+            }
+        }
+        setAdjacency(coarse, groups, sources, targets, weights, count);
+        return coarse;
+    }
+
+    /*
+     * Builds the level's adjacency from an edge list, dropping self loops and summing
+     * the weights of parallel edges
+     */
+    private static void setAdjacency(Level level, int n, int[] sources, int[] targets, float[] weights, int count) {
+        int[] start = new int[n + 1];
+        for (int e = 0; e < count; e++) {
+            if (sources[e] != targets[e]) {
+                start[sources[e] + 1]++;
+                start[targets[e] + 1]++;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            start[i + 1] += start[i];
+        }
+        int[] adjacency = new int[start[n]];
+        float[] adjacencyWeight = new float[start[n]];
+        int[] next = Arrays.copyOf(start, n);
+        for (int e = 0; e < count; e++) {
+            int s = sources[e];
+            int t = targets[e];
+            if (s != t) {
+                adjacency[next[s]] = t;
+                adjacencyWeight[next[s]++] = weights[e];
+                adjacency[next[t]] = s;
+                adjacencyWeight[next[t]++] = weights[e];
+            }
+        }
+
+        // merge parallel edges, last[j] is where neighbor j went in the current row
+        int[] last = new int[n];
+        Arrays.fill(last, -1);
+        level.offsets = new int[n + 1];
+        int out = 0;
+        for (int i = 0; i < n; i++) {
+            int rowStart = out;
+            for (int e = start[i]; e < start[i + 1]; e++) {
+                int j = adjacency[e];
+                if (last[j] >= rowStart) {
+                    adjacencyWeight[last[j]] += adjacencyWeight[e];
+                } else {
+                    last[j] = out;
+                    adjacency[out] = j;
+                    adjacencyWeight[out++] = adjacencyWeight[e];
+                }
+            }
+            level.offsets[i + 1] = out;
+        }
+        level.targets = Arrays.copyOf(adjacency, out);
+        level.weights = Arrays.copyOf(adjacencyWeight, out);
+    }
+}
@@ -0,0 +1,258 @@
+package gephicommander;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+
+/**
+ * Connected components of the visible graph for the Components layout. Each component
+ * can be copied into a separate GraphModel, laid out there (on any thread, one
+ * component per thread), and its positions read back. pack() then puts the components
+ * side by side on shelves, the largest first, into a roughly square rectangle.
+ */
+class GraphComponents {
+
+    private final Node[] nodes;
+    private final Edge[] edges;
+    private final int[] indexOf;
+    // Nodes of component c are nodes[nodeOrder[nodeStart[c]]] .. nodes[nodeOrder[nodeStart[c + 1] - 1]],
+    // edges the same with edgeOrder and edgeStart; components are sorted largest first
+    private final int[] nodeOrder;
+    private final int[] nodeStart;
+    private final int[] edgeOrder;
+    private final int[] edgeStart;
+    // Positions by node index, as the component layouts left them
+    private final float[] x;
+    private final float[] y;
+    // Copies of the nodes of components being laid out, by node index
+    private final Node[] copies;
+
+    private GraphComponents(Node[] nodes, Edge[] edges, int[] indexOf, int[] nodeOrder, int[] nodeStart, int[] edgeOrder, int[] edgeStart) {
+        this.nodes = nodes;
+        this.edges = edges;
+        this.indexOf = indexOf;
+        this.nodeOrder = nodeOrder;
+        this.nodeStart = nodeStart;
+        this.edgeOrder = edgeOrder;
+        this.edgeStart = edgeStart;
+        x = new float[nodes.length];
+        y = new float[nodes.length];
+        copies = new Node[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            x[i] = nodes[i].x();
+            y[i] = nodes[i].y();
+        }
+    }
+
+    static GraphComponents of(Graph graph) {
+        graph.readLock();
+        try {
+            var nodes = graph.getNodes().toArray();
+            var edges = graph.getEdges().toArray();
+            int n = nodes.length;
+            int maxStoreId = 0;
+            for (var node : nodes) {
+                maxStoreId = Math.max(maxStoreId, node.getStoreId());
+            }
+            int[] indexOf = new int[maxStoreId + 1];
+            for (int i = 0; i < n; i++) {
+                indexOf[nodes[i].getStoreId()] = i;
+            }
+
+            // union-find with path halving
+            int[] parent = new int[n];
+            for (int i = 0; i < n; i++) {
+                parent[i] = i;
+            }
+            int[] edgeSource = new int[edges.length];
+            for (int e = 0; e < edges.length; e++) {
+                int a = find(parent, indexOf[edges[e].getSource().getStoreId()]);
+                int b = find(parent, indexOf[edges[e].getTarget().getStoreId()]);
+                if (a != b) {
+                    parent[Math.max(a, b)] = Math.min(a, b);
+                }
+                edgeSource[e] = indexOf[edges[e].getSource().getStoreId()];
+            }
+
+            // number the components by their root, then sort them by size
+            int[] rootComponent = new int[n];
+            Arrays.fill(rootComponent, -1);
+            int[] component = new int[n];
+            var sizes = new ArrayList<Integer>();
+            for (int i = 0; i < n; i++) {
+                int root = find(parent, i);
+                if (rootComponent[root] < 0) {
+                    rootComponent[root] = sizes.size();
+                    sizes.add(0);
+                }
+                component[i] = rootComponent[root];
+                sizes.set(component[i], sizes.get(component[i]) + 1);
+            }
+            int count = sizes.size();
+            Integer[] bySize = IntStream.range(0, count).boxed().toArray(Integer[]::new);
+            Arrays.sort(bySize, Comparator.comparing((Integer c) -> sizes.get(c)).reversed());
+            int[] rank = new int[count];
+            for (int r = 0; r < count; r++) {
+                rank[bySize[r]] = r;
+            }
+            for (int i = 0; i < n; i++) {
+                component[i] = rank[component[i]];
+            }
+
+            int[] nodeStart = new int[count + 1];
+            int[] edgeStart = new int[count + 1];
+            for (int i = 0; i < n; i++) {
+                nodeStart[component[i] + 1]++;
+            }
+            for (int e = 0; e < edges.length; e++) {
+                edgeStart[component[edgeSource[e]] + 1]++;
+            }
+            for (int c = 0; c < count; c++) {
+                nodeStart[c + 1] += nodeStart[c];
+                edgeStart[c + 1] += edgeStart[c];
+            }
+            int[] nodeOrder = new int[n];
+            int[] edgeOrder = new int[edges.length];
+            int[] next = Arrays.copyOf(nodeStart, count);
+            for (int i = 0; i < n; i++) {
+                nodeOrder[next[component[i]]++] = i;
+            }
+            next = Arrays.copyOf(edgeStart, count);
+            for (int e = 0; e < edges.length; e++) {
+                edgeOrder[next[component[edgeSource[e]]]++] = e;
+            }
+            return new GraphComponents(nodes, edges, indexOf, nodeOrder, nodeStart, edgeOrder, edgeStart);
+        } finally {
+            graph.readUnlock();
+        }
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    int count() {
+        return nodeStart.length - 1;
+    }
+
+    int nodeCount(int component) {
+        return nodeStart[component + 1] - nodeStart[component];
+    }
+
+    int edgeCount(int component) {
+        return edgeStart[component + 1] - edgeStart[component];
+    }
+
+    /*
+     * Replaces what graphModel holds with a copy of the component: positions, sizes, edge
+     * weights and directions. Reusing one GraphModel per thread saves setting up a new
+     * one for every component, which costs more than laying out a small component.
+     */
+    void copyTo(int component, GraphModel graphModel) {
+        graphModel.getGraph().clear();
+        var factory = graphModel.factory();
+        var componentNodes = new ArrayList<Node>(nodeCount(component));
+        for (int k = nodeStart[component]; k < nodeStart[component + 1]; k++) {
+            int i = nodeOrder[k];
+            var copy = factory.newNode(String.valueOf(i));
+            copy.setX(x[i]);
+            copy.setY(y[i]);
+            copy.setSize(nodes[i].size());
+            copy.setFixed(nodes[i].isFixed());
+            copies[i] = copy;
+            componentNodes.add(copy);
+        }
+        var componentEdges = new ArrayList<Edge>(edgeCount(component));
+        for (int k = edgeStart[component]; k < edgeStart[component + 1]; k++) {
+            var edge = edges[edgeOrder[k]];
+            var source = copies[indexOf[edge.getSource().getStoreId()]];
+            var target = copies[indexOf[edge.getTarget().getStoreId()]];
+            componentEdges.add(factory.newEdge(source, target, 0, edge.getWeight(), edge.isDirected()));
+        }
+        var graph = graphModel.getGraph();
+        graph.addAllNodes(componentNodes);
+        graph.addAllEdges(componentEdges);
+    }
+
+    /*
+     * Copies the positions a layout left on the component's copy back
+     */
+    void readPositions(int component) {
+        for (int k = nodeStart[component]; k < nodeStart[component + 1]; k++) {
+            int i = nodeOrder[k];
+            x[i] = copies[i].x();
+            y[i] = copies[i].y();
+            copies[i] = null;
+        }
+    }
+
+    /*
+     * Shelf packing: components go left to right, largest first, and a new shelf starts
+     * when a shelf is as wide as the square root of the total area. Node sizes count in
+     * the bounding boxes, gap separates them. The result is centered on the origin.
+     */
+    void pack(double gap) {
+        int count = count();
+        double[] minX = new double[count], minY = new double[count];
+        double[] width = new double[count], height = new double[count];
+        double area = 0;
+        double widest = 0;
+        for (int c = 0; c < count; c++) {
+            double x0 = Double.POSITIVE_INFINITY, y0 = Double.POSITIVE_INFINITY;
+            double x1 = Double.NEGATIVE_INFINITY, y1 = Double.NEGATIVE_INFINITY;
+            for (int k = nodeStart[c]; k < nodeStart[c + 1]; k++) {
+                int i = nodeOrder[k];
+                float size = nodes[i].size();
+                x0 = Math.min(x0, x[i] - size);
+                y0 = Math.min(y0, y[i] - size);
+                x1 = Math.max(x1, x[i] + size);
+                y1 = Math.max(y1, y[i] + size);
+            }
+            minX[c] = x0;
+            minY[c] = y0;
+            width[c] = x1 - x0 + gap;
+            height[c] = y1 - y0 + gap;
+            area += width[c] * height[c];
+            widest = Math.max(widest, width[c]);
+        }
+        double shelfWidth = Math.max(widest, Math.sqrt(area));
+
+        // shelves by descending height, so each shelf wastes little above its components
+        Integer[] byHeight = IntStream.range(0, count).boxed().toArray(Integer[]::new);
+        Arrays.sort(byHeight, Comparator.comparing((Integer c) -> height[c]).reversed());
+        double[] offsetX = new double[count], offsetY = new double[count];
+        double shelfX = 0, shelfY = 0, shelfHeight = 0, totalWidth = 0;
+        for (int c : byHeight) {
+            if (shelfX > 0 && shelfX + width[c] > shelfWidth) {
+                shelfY += shelfHeight;
+                shelfX = 0;
+                shelfHeight = 0;
+            }
+            // shelves go down, the top of a component on the top of its shelf
+            offsetX[c] = shelfX - minX[c];
+            offsetY[c] = -shelfY - (minY[c] + height[c]);
+            shelfX += width[c];
+            shelfHeight = Math.max(shelfHeight, height[c]);
+            totalWidth = Math.max(totalWidth, shelfX);
+        }
+        double centerX = totalWidth / 2, centerY = -(shelfY + shelfHeight) / 2;
+        for (int c = 0; c < count; c++) {
+            for (int k = nodeStart[c]; k < nodeStart[c + 1]; k++) {
+                int i = nodeOrder[k];
+                nodes[i].setX((float) (x[i] + offsetX[c] - centerX));
+                nodes[i].setY((float) (y[i] + offsetY[c] - centerY));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,180 @@
+package gephicommander;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+import org.gephi.graph.api.Column;
+import org.gephi.graph.api.Element;
+import org.gephi.graph.api.GraphController;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Table;
+import org.gephi.io.importer.api.Container;
+import org.gephi.io.importer.api.ImportController;
+import org.gephi.io.processor.plugin.DefaultProcessor;
+import org.gephi.project.api.ProjectController;
+import org.openide.util.Lookup;
+
+/**
+ * Times importers on the same file, e.g. the fast GML importer against Gephi's own:
+ * <pre>
+ * java -cp gephi-commander.jar gephicommander.GephiCommander --bench-import big.gml --runs 3 gml fastgml
+ * </pre>
+ * Each run imports into a fresh project and reports the parse time (importer into the
+ * container), the total time including processing into the graph, the bytes allocated
+ * by the importing thread and a fingerprint of the resulting graph, so the importers
+ * can be checked to build the same graph.
+ */
+class ImportBenchmark {
+
+    /*
+     * Args: file [--runs 3] [importer ...], the importers default to 'gml fastgml'
+     */
+    static void main(String[] args) throws Exception {
+        File file = null;
+        int runs = 3;
+        var importers = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--runs")) {
+                runs = Integer.parseInt(args[++i]);
+            } else if (file == null) {
+                file = new File(args[i]);
+            } else {
+                importers.add(args[i]);
+            }
+        }
+        if (file == null) {
+            throw new IllegalArgumentException("Usage: --bench-import file [--runs 3] [importer ...]");
+        }
+        if (importers.isEmpty()) {
+            importers.add("gml");
+            importers.add("fastgml");
+        }
+        Locale.setDefault(Locale.ENGLISH);  // Ignore Gephi localization
+
+        var best = new LinkedHashMap<String, Result>();
+        for (int run = 1; run <= runs; run++) {
+            for (String name : importers) {
+                var result = importOnce(file, name);
+                System.out.printf("%-10s run %s: parse %.2f s, total %.2f s, %.2f GB allocated, %s nodes, %s edges, fingerprint %016x%n",
+                    name, run, result.parseNanos / 1e9, result.totalNanos / 1e9, result.allocatedBytes / 1e9,
+                    result.nodes, result.edges, result.fingerprint);
+                best.merge(name, result, (a, b) -> a.totalNanos <= b.totalNanos ? a : b);
+            }
+        }
+
+        System.out.println("Best of "+runs+" runs:");
+        Result baseline = best.get(importers.get(0));
+        for (var entry : best.entrySet()) {
+            var result = entry.getValue();
+            System.out.printf("%-10s parse %.2f s, total %.2f s (%.2fx), %.2f GB allocated%s%n",
+                entry.getKey(), result.parseNanos / 1e9, result.totalNanos / 1e9,
+                (double) baseline.totalNanos / result.totalNanos, result.allocatedBytes / 1e9,
+                result.fingerprint == baseline.fingerprint ? "" : ", GRAPH DIFFERS from "+importers.get(0));
+        }
+    }
+
+    private static Result importOnce(File file, String importerName) throws Exception {
+        ProjectController pc = Lookup.getDefault().lookup(ProjectController.class);
+        pc.newProject();
+        var workspace = pc.getCurrentWorkspace();
+        ImportController importController = Lookup.getDefault().lookup(ImportController.class);
+        var importer = GephiCommander.buildImporter(importerName);
+        System.gc();
+
+        var result = new Result();
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        Container container = importController.importFile(file, importer);
+        result.parseNanos = System.nanoTime() - start;
+        if (container == null) {
+            throw new IllegalStateException(importerName+" could not import "+file);
+        }
+        importController.process(container, new DefaultProcessor(), workspace);
+        result.totalNanos = System.nanoTime() - start;
+        result.allocatedBytes = allocatedBytes() - allocated;
+
+        var graphModel = Lookup.getDefault().lookup(GraphController.class).getGraphModel(workspace);
+        result.nodes = graphModel.getGraph().getNodeCount();
+        result.edges = graphModel.getGraph().getEdgeCount();
+        result.fingerprint = fingerprint(graphModel);
+        pc.closeCurrentProject();
+        return result;
+    }
+
+    /*
+     * Order independent hash of ids, labels, geometry, colors, weights and attribute values
+     */
+    private static long fingerprint(GraphModel graphModel) {
+        long hash = 0;
+        var nodeColumns = attributeColumns(graphModel.getNodeTable());
+        for (var node : graphModel.getGraph().getNodes()) {
+            long h = Objects.hash(node.getId(), node.getLabel(), node.x(), node.y(), node.z(), node.size(), node.getColor());
+            hash += mix(h * 31 + attributesHash(node, nodeColumns));
+        }
+        var edgeColumns = attributeColumns(graphModel.getEdgeTable());
+        for (var edge : graphModel.getGraph().getEdges()) {
+            long h = Objects.hash(edge.getSource().getId(), edge.getTarget().getId(), edge.getWeight(),
+                edge.getLabel(), edge.isDirected(), edge.getColor());
+            hash += mix(h * 31 + attributesHash(edge, edgeColumns));
+        }
+        for (var column : nodeColumns) {
+            hash += mix(Objects.hash("node", column.getId(), column.getTypeClass().getName()));
+        }
+        for (var column : edgeColumns) {
+            hash += mix(Objects.hash("edge", column.getId(), column.getTypeClass().getName()));
+        }
+        return hash;
+    }
+
+    private static List<Column> attributeColumns(Table table) {
+        var columns = new ArrayList<Column>();
+        for (var column : table) {
+            if (!column.isProperty()) {
+                columns.add(column);
+            }
+        }
+        return columns;
+    }
+
+    private static long attributesHash(Element element, List<Column> columns) {
+        long h = 0;
+        for (var column : columns) {
+            // Through toString, so a Long and a Double of the same value do not match
+            Object value = element.getAttribute(column);
+            h = h * 31 + Objects.hash(column.getId(), value == null ? null : value.toString());
+        }
+        return h;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long allocatedBytes() {
+        var threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            var bean = (com.sun.management.ThreadMXBean) threadBean;
+            if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+                return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return 0;
+    }
+
+    private static class Result {
+        long parseNanos;
+        long totalNanos;
+        long allocatedBytes;
+        int nodes;
+        int edges;
+        long fingerprint;
+    }
+}
@@ -0,0 +1,168 @@
+package gephicommander;
+
+import java.util.Arrays;
+
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.Node;
+import org.gephi.layout.spi.Layout;
+
+import layout.BufferedPositionsLayout;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Tells when a layout has settled. After every step it measures how far the nodes
+ * moved, as a fraction of the layout's extent (bounding box diagonal), so one
+ * threshold works whatever the scale of the graph. The layout has converged once
+ * the mean (or max) displacement stayed below the threshold for {@code window}
+ * steps in a row.
+ */
+class LayoutConvergence {
+
+    private final double threshold;
+    private final int window;
+    private final boolean useMax;
+
+    private Node[] nodes;
+    private float[] x;
+    private float[] y;
+    private float[] bufferedX;
+    private float[] bufferedY;
+    private double[] meanCurve = new double[64];
+    private double[] maxCurve = new double[64];
+    private int steps = 0;
+    private int calmSteps = 0;
+    private int convergedAt = -1;
+
+    /*
+     * converge: a threshold like 0.001, or {threshold: 0.001, window: 10, measure: 'mean'|'max'}
+     */
+    LayoutConvergence(JsonElement options) {
+        if (options.isJsonObject()) {
+            var obj = options.getAsJsonObject();
+            threshold = obj.has("threshold") ? obj.get("threshold").getAsDouble() : 0.001;
+            window = obj.has("window") ? obj.get("window").getAsInt() : 10;
+            useMax = obj.has("measure") && obj.get("measure").getAsString().equals("max");
+        } else {
+            threshold = options.getAsDouble();
+            window = 10;
+            useMax = false;
+        }
+    }
+
+    /*
+     * Takes the positions before the first step, from the layout's own arrays if it keeps them
+     */
+    void start(Layout layout, Graph graph) {
+        if (layout instanceof BufferedPositionsLayout) {
+            var buffered = (BufferedPositionsLayout) layout;
+            nodes = buffered.nodes();
+            bufferedX = buffered.positionsX();
+            bufferedY = buffered.positionsY();
+        } else {
+            nodes = graph.getNodes().toArray();
+        }
+        x = new float[nodes.length];
+        y = new float[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            x[i] = bufferedX != null ? bufferedX[i] : nodes[i].x();
+            y[i] = bufferedY != null ? bufferedY[i] : nodes[i].y();
+        }
+    }
+
+    /*
+     * Measures the step that just ran, true once the layout has converged
+     */
+    boolean step() {
+        double sum = 0;
+        double max = 0;
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < nodes.length; i++) {
+            float nx = bufferedX != null ? bufferedX[i] : nodes[i].x();
+            float ny = bufferedY != null ? bufferedY[i] : nodes[i].y();
+            double d = Math.hypot(nx - x[i], ny - y[i]);
+            sum += d;
+            max = Math.max(max, d);
+            x[i] = nx;
+            y[i] = ny;
+            minX = Math.min(minX, nx);
+            minY = Math.min(minY, ny);
+            maxX = Math.max(maxX, nx);
+            maxY = Math.max(maxY, ny);
+        }
+        double extent = nodes.length > 1 ? Math.hypot(maxX - minX, maxY - minY) : 0;
+        if (!(extent > 0)) {
+            extent = 1;
+        }
+        double mean = nodes.length > 0 ? sum / nodes.length / extent : 0;
+        max /= extent;
+
+        if (steps == meanCurve.length) {
+            meanCurve = Arrays.copyOf(meanCurve, steps * 2);
+            maxCurve = Arrays.copyOf(maxCurve, steps * 2);
+        }
+        meanCurve[steps] = mean;
+        maxCurve[steps] = max;
+        steps++;
+
+        calmSteps = (useMax ? max : mean) < threshold ? calmSteps + 1 : 0;
+        if (calmSteps >= window && convergedAt < 0) {
+            convergedAt = steps;
+        }
+        return convergedAt >= 0;
+    }
+
+    boolean converged() {
+        return convergedAt >= 0;
+    }
+
+    /*
+     * e.g. 'Converged after 312 steps (mean displacement under 0.001 of the extent for 10 steps)'
+     */
+    String summary() {
+        String measure = useMax ? "max" : "mean";
+        if (converged()) {
+            return String.format("Converged after %s steps (%s displacement under %s of the extent for %s steps)",
+                convergedAt, measure, threshold, window);
+        }
+        return String.format("Did not converge in %s steps (last %s displacement %.3g of the extent, threshold %s)",
+            steps, measure, steps > 0 ? (useMax ? maxCurve : meanCurve)[steps - 1] : 0.0, threshold);
+    }
+
+    /*
+     * About ten points of the mean displacement curve, e.g. '1: 0.0521, 50: 0.00412, ...'
+     */
+    String curve() {
+        var sb = new StringBuilder();
+        int stride = Math.max(1, steps / 10);
+        for (int i = 0; i < steps; i += stride) {
+            sb.append(i == 0 ? "" : ", ").append(i + 1).append(": ").append(String.format("%.3g", meanCurve[i]));
+        }
+        if (steps > 0 && (steps - 1) % stride != 0) {
+            sb.append(", ").append(steps).append(": ").append(String.format("%.3g", meanCurve[steps - 1]));
+        }
+        return sb.toString();
+    }
+
+    JsonObject toJson() {
+        var json = new JsonObject();
+        json.addProperty("threshold", threshold);
+        json.addProperty("window", window);
+        json.addProperty("measure", useMax ? "max" : "mean");
+        if (converged()) {
+            json.addProperty("convergedAt", convergedAt);
+        }
+        var mean = new JsonArray();
+        var max = new JsonArray();
+        for (int i = 0; i < steps; i++) {
+            mean.add(meanCurve[i]);
+            max.add(maxCurve[i]);
+        }
+        json.add("meanDisplacement", mean);
+        json.add("maxDisplacement", max);
+        return json;
+    }
+}
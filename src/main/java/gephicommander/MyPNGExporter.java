@@ -6,12 +6,13 @@ import java.awt.Image;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.io.File;
 import java.io.OutputStream;
 
-import javax.imageio.ImageIO;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 
+import org.gephi.graph.api.GraphController;
 import org.gephi.graph.api.Node;
 import org.gephi.io.exporter.preview.PNGExporter;
 import org.gephi.preview.api.G2DTarget;
@@ -43,6 +44,7 @@ class MyPNGExporter extends PNGExporter {
     private boolean cancel = false;
     private Workspace workspace;
     private OutputStream stream;
+    private File outputFile;
     private int widthImg = 1024;
     private int heightImg = 1024;
     private boolean transparentBackground = false;
@@ -55,6 +57,18 @@ class MyPNGExporter extends PNGExporter {
     private Node node;
     private Point2D.Float pointTr;
 
+    /*
+     * Forget expressions and counters left by previous exports,
+     * so a long-lived JVM can run several pipelines one after another
+     */
+    static void reset() {
+        iteration = 0;
+        scalingExpr = null;
+        translateXExpr = null;
+        translateYExpr = null;
+        previousInfo = null;
+    }
+
     public MyPNGExporter(){}
     public MyPNGExporter(JsonObject options) {
         super();
@@ -68,16 +82,6 @@ class MyPNGExporter extends PNGExporter {
         if (options.has("translateY")) {
             translateYExpr = options.get("translateY").getAsString();
         }
-        if (options.has("findNode")) {
-            var jsonPrim = options.get("findNode").getAsJsonPrimitive();
-            if (jsonPrim.isString()) {
-                node = GephiCommander.getNodeById(jsonPrim.getAsString());
-            } else {
-                node = GephiCommander.getNodeById(jsonPrim.getAsNumber());
-            }
-            System.out.printf("found node: %s %s %s %s %n",
-                node.getId(),node.getLabel(),node.x(),node.y());
-        }
         if (options.has("transparentBg") && 
             options.get("transparentBg").getAsBoolean()) {
             this.setTransparentBackground(true);
@@ -88,10 +92,22 @@ class MyPNGExporter extends PNGExporter {
     public boolean execute() {
         Progress.start(progress);
 
+        var phase = beginPhase();
         PreviewController ctrl
             = Lookup.getDefault().lookup(PreviewController.class);
         PreviewModel m = ctrl.getModel(workspace);
-        
+        // the workspace's own graph: an exportAsync frame is rendered from a copy
+        var graphModel = Lookup.getDefault().lookup(GraphController.class).getGraphModel(workspace);
+        if (options.has("findNode")) {
+            var jsonPrim = options.get("findNode").getAsJsonPrimitive();
+            if (jsonPrim.isString()) {
+                node = graphModel.getGraph().getNode(jsonPrim.getAsString());
+            } else {
+                node = graphModel.getGraph().getNode(jsonPrim.getAsNumber());
+            }
+            System.out.printf("found node: %s %s %s %s %n",
+                node.getId(),node.getLabel(),node.x(),node.y());
+        }
 
         setExportProperties(m);
         ctrl.refreshPreview(workspace);
@@ -104,17 +120,19 @@ class MyPNGExporter extends PNGExporter {
         }
 
         target.refresh();
+        endPhase(phase, "refresh");
         
         
         // var graph = Lookup.getDefault().lookup(GraphModel.class).getUndirectedGraphVisible();
 
         // System.out.printf("%s %s%n",node.x(),node.y());
         try {
+            phase = beginPhase();
             // if user wants to use graph size in his expressions
             JsonObject boundsJsonObj = null;
             if (options.has("boundsMargin")) {
                 var graphMargin = options.get("boundsMargin").getAsFloat();
-                boundsJsonObj = GephiCommander.getGraphBounds(graphMargin);
+                boundsJsonObj = GephiCommander.getGraphBounds(graphModel.getGraphVisible(), graphMargin);
                 String json = boundsJsonObj.toString();
                 System.out.printf("Bounds for margin=%s: %s%n",graphMargin,json);
                 engine.eval("bounds = "+json);
@@ -201,13 +219,16 @@ class MyPNGExporter extends PNGExporter {
                 translateY = value.floatValue();
             }
             target.getTranslate().set(translateX, translateY);
+            endPhase(phase, "script");
             // System.out.println("MyPNGExporter expressons finish");
             // engine.put("bounds", GephiStarter.getGraphBounds(0.01f).toString());
             
             
 
 
+            phase = beginPhase();
             target.refresh();
+            endPhase(phase, "refresh");
             
             
             
@@ -269,10 +290,20 @@ class MyPNGExporter extends PNGExporter {
             }
             
             iteration++;
+            phase = beginPhase();
             BufferedImage img = new BufferedImage(widthImg, heightImg, BufferedImage.TYPE_INT_ARGB);
             img.getGraphics().drawImage(sourceImg, 0, 0, null);
-            ImageIO.write(img, "png", stream);
-            stream.close();
+            endPhase(phase, "copy");
+            phase = beginPhase();
+            if (outputFile != null) {
+                // the encoder threads write the file, this only waits when they are behind
+                PngEncoder.get().submit(img, outputFile);
+                endPhase(phase, "queue");
+            } else {
+                PngEncoder.get().write(img, stream);
+                stream.close();
+                endPhase(phase, "encode");
+            }
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -285,6 +316,23 @@ class MyPNGExporter extends PNGExporter {
     }
     
 
+    private static PipelineEvents.PngExportPhase beginPhase() {
+        var event = new PipelineEvents.PngExportPhase();
+        event.begin();
+        return event;
+    }
+
+    private void endPhase(PipelineEvents.PngExportPhase event, String phase) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = phase;
+            event.frame = iteration;
+            event.width = widthImg;
+            event.height = heightImg;
+            event.commit();
+        }
+    }
+
     private void drawPointByDrawingCoords(Graphics srcGraphics, int x, int y) {
         srcGraphics.fillOval(x, y, 5, 5);
         String str = String.format("%s %s",x,y);
@@ -381,6 +429,13 @@ class MyPNGExporter extends PNGExporter {
         this.stream = stream;
     }
 
+    /*
+     * Encode in the background to this file instead of the output stream, see PngEncoder
+     */
+    public void setOutputFile(File outputFile) {
+        this.outputFile = outputFile;
+    }
+
     @Override
     public boolean cancel() {
         cancel = true;
@@ -0,0 +1,71 @@
+package gephicommander;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events, so ops, layout steps and PNG export phases
+ * show up in Mission Control next to CPU samples and GC.
+ * Committing them costs next to nothing while no recording is running.
+ */
+class PipelineEvents {
+
+    private PipelineEvents() {}
+
+    @Name("gephicommander.Op")
+    @Label("Pipeline Op")
+    @Category("Gephi Commander")
+    @Description("One op of a pipeline, from dispatch to return")
+    static class Op extends Event {
+        @Label("Op")
+        String op;
+
+        @Label("Index")
+        int index;
+
+        @Label("Options Hash")
+        @Description("Hash of the op JSON, tells apart ops of the same name")
+        String optionsHash;
+
+        @Label("Nodes")
+        @Description("Visible nodes after the op")
+        int nodes;
+
+        @Label("Edges")
+        @Description("Visible edges after the op")
+        int edges;
+    }
+
+    @Name("gephicommander.LayoutStep")
+    @Label("Layout Step")
+    @Category("Gephi Commander")
+    @Description("One goAlgo() call")
+    static class LayoutStep extends Event {
+        @Label("Layout")
+        String layout;
+
+        @Label("Step")
+        int step;
+    }
+
+    @Name("gephicommander.PngExportPhase")
+    @Label("PNG Export Phase")
+    @Category("Gephi Commander")
+    @Description("Phase of MyPNGExporter.execute: refresh, script, copy, encode or queue (handing the image to the encoder threads)")
+    static class PngExportPhase extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Frame")
+        int frame;
+
+        @Label("Width")
+        int width;
+
+        @Label("Height")
+        int height;
+    }
+}
@@ -0,0 +1,218 @@
+package gephicommander;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Command line flags that set up pipeline runs: metrics, flight recording, checkpoint
+ * cache, time budget and PNG encoder. A single run, the server and batch workers
+ * all read them the same way.
+ */
+class PipelineFlags {
+
+    private static PipelineFlags current = new PipelineFlags();
+
+    boolean printMetrics = false;
+    String metricsFile = null;
+    String jfrFile = null;
+    String cacheDir = null;
+    long cacheMaxMb = 1024;
+    long maxMillis = 0;
+    int pngThreads = Runtime.getRuntime().availableProcessors();
+    int pngQueue = 0;
+    int pngLevel = 4;
+    PngEncoder.Filter pngFilter = PngEncoder.Filter.NONE;
+
+    /*
+     * The flags applied in this JVM
+     */
+    static PipelineFlags current() {
+        return current;
+    }
+
+    /*
+     * Reads the flag at args[i] and returns how many args it took, 0 if it is not one of these
+     */
+    int parse(String[] args, int i) {
+        switch (args[i]) {
+            case "--metrics":
+                printMetrics = true;
+                return 1;
+            case "--metrics-file":
+                metricsFile = args[i+1];
+                return 2;
+            case "--jfr":
+                jfrFile = args[i+1];
+                return 2;
+            case "--cache-dir":
+                cacheDir = args[i+1];
+                return 2;
+            case "--cache-max-mb":
+                cacheMaxMb = Long.parseLong(args[i+1]);
+                return 2;
+            case "--max-millis":
+                maxMillis = Long.parseLong(args[i+1]);
+                return 2;
+            case "--png-threads":
+                pngThreads = Integer.parseInt(args[i+1]);
+                return 2;
+            case "--png-queue":
+                pngQueue = Integer.parseInt(args[i+1]);
+                return 2;
+            case "--png-level":
+                pngLevel = Integer.parseInt(args[i+1]);
+                return 2;
+            case "--png-filter":
+                pngFilter = PngEncoder.parseFilter(args[i+1]);
+                return 2;
+            default:
+                return 0;
+        }
+    }
+
+    void apply() {
+        if (cacheDir != null) {
+            CheckpointCache.enable(new File(cacheDir), cacheMaxMb * 1024 * 1024);
+        }
+        PngEncoder.configure(pngThreads, pngQueue, pngLevel, pngFilter);
+        current = this;
+    }
+
+    boolean metricsEnabled() {
+        return printMetrics || metricsFile != null;
+    }
+
+    /*
+     * Runs a pipeline in a fresh project (see GephiCommander.runIsolated) with its own
+     * time budget, metrics and flight recording, saved to the --jfr file numbered with run.
+     * The metrics are added to the result and, if writeMetrics is set, printed or saved as asked.
+     */
+    JsonObject runIsolated(JsonArray pipeline, Consumer<JsonObject> onOpDone, boolean writeMetrics, int run) {
+        if (metricsEnabled()) {
+            PipelineMetrics.enable();
+        }
+        Recording recording = jfrFile == null ? null : startRecording();
+        JsonObject result;
+        TimeBudget.startPipeline(maxMillis);
+        try {
+            result = GephiCommander.runIsolated(pipeline, onOpDone);
+        } finally {
+            TimeBudget.endPipeline();
+            if (recording != null) {
+                stopRecording(recording, recordingFile(run));
+            }
+        }
+        if (recording != null) {
+            result.addProperty("recording", recordingFile(run));
+        }
+        if (PipelineMetrics.current() != null) {
+            var metrics = PipelineMetrics.current().toJson();
+            result.add("metrics", metrics);
+            if (writeMetrics) {
+                writeMetrics(metrics);
+            }
+        }
+        return result;
+    }
+
+    /*
+     * profile.jfr becomes profile-3.jfr for run 3
+     */
+    private String recordingFile(int run) {
+        int dot = jfrFile.lastIndexOf('.');
+        return dot > 0 && jfrFile.lastIndexOf(File.separatorChar) < dot ?
+            jfrFile.substring(0, dot) + "-" + run + jfrFile.substring(dot) :
+            jfrFile + "-" + run;
+    }
+
+    /*
+     * JDK 'profile' settings (CPU samples, allocations, locks) plus our own events
+     */
+    static Recording startRecording() {
+        try {
+            var recording = new Recording(Configuration.getConfiguration("profile"));
+            recording.enable(PipelineEvents.Op.class);
+            recording.enable(PipelineEvents.LayoutStep.class);
+            recording.enable(PipelineEvents.PngExportPhase.class);
+            recording.start();
+            return recording;
+        } catch (IOException | ParseException e) {
+            System.err.println("Failed to start flight recording");
+            e.printStackTrace();
+            return null;
+        }
+    }
+    static void stopRecording(Recording recording, String file) {
+        try {
+            recording.stop();
+            recording.dump(Paths.get(file));
+            System.out.println("Flight recording saved to "+file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            recording.close();
+        }
+    }
+
+
+    void writeMetrics(JsonObject metrics) {
+        var json = new GsonBuilder().setPrettyPrinting().create().toJson(metrics);
+        if (printMetrics) {
+            System.out.println("Metrics:");
+            System.out.println(json);
+        }
+        if (metricsFile != null) {
+            try {
+                Files.writeString(Paths.get(metricsFile), json);
+                System.out.println("Metrics saved to "+metricsFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /*
+     * The flags batch workers take over. Their metrics stay in each file's result, each file
+     * gets its own flight recording, and the time budget is left out: it covers the pipeline
+     * that runs the batch.
+     */
+    List<String> workerArgs() {
+        var args = new ArrayList<String>();
+        if (metricsEnabled()) {
+            args.add("--metrics");
+        }
+        if (jfrFile != null) {
+            args.add("--jfr");
+            args.add(new File(jfrFile).getAbsolutePath());
+        }
+        if (cacheDir != null) {
+            args.add("--cache-dir");
+            args.add(new File(cacheDir).getAbsolutePath());
+            args.add("--cache-max-mb");
+            args.add(String.valueOf(cacheMaxMb));
+        }
+        args.add("--png-threads");
+        args.add(String.valueOf(pngThreads));
+        args.add("--png-queue");
+        args.add(String.valueOf(pngQueue));
+        args.add("--png-level");
+        args.add(String.valueOf(pngLevel));
+        args.add("--png-filter");
+        args.add(pngFilter.name().toLowerCase(Locale.ROOT));
+        return args;
+    }
+}
@@ -0,0 +1,219 @@
+package gephicommander;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Collects wall time, CPU time, allocations and GC activity per op,
+ * plus step time percentiles for each layout run. Disabled unless
+ * {@link #enable()} is called, then ops and layouts report into it.
+ */
+class PipelineMetrics {
+
+    private static PipelineMetrics current = null;
+
+    static void enable() {
+        current = new PipelineMetrics();
+    }
+
+    /*
+     * Null when metrics are disabled
+     */
+    static PipelineMetrics current() {
+        return current;
+    }
+
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+    private final List<GarbageCollectorMXBean> gcBeans = ManagementFactory.getGarbageCollectorMXBeans();
+    private final long start = System.nanoTime();
+    private final JsonArray ops = new JsonArray();
+    private OpSample running = null;
+
+    class OpSample {
+        private final JsonObject json = new JsonObject();
+        private final JsonArray layouts = new JsonArray();
+        private final long wallStart = System.nanoTime();
+        private final long threadCpuStart = threadCpuTime();
+        private final long processCpuStart = processCpuTime();
+        private final long allocatedStart = allocatedBytes();
+        private final long gcCountStart = gcCount();
+        private final long gcTimeStart = gcMillis();
+
+        private OpSample(int index, String opName) {
+            json.addProperty("index", index);
+            json.addProperty("op", opName);
+        }
+    }
+
+    OpSample begin(int index, String opName) {
+        running = new OpSample(index, opName);
+        return running;
+    }
+
+    void end(OpSample sample) {
+        var json = sample.json;
+        json.addProperty("wallMillis", (System.nanoTime() - sample.wallStart) / 1e6);
+        json.addProperty("threadCpuMillis", (threadCpuTime() - sample.threadCpuStart) / 1e6);
+        // Layouts and statistics use worker threads, process CPU time includes them
+        json.addProperty("processCpuMillis", (processCpuTime() - sample.processCpuStart) / 1e6);
+        json.addProperty("allocatedBytes", allocatedBytes() - sample.allocatedStart);
+        json.addProperty("gcCount", gcCount() - sample.gcCountStart);
+        json.addProperty("gcMillis", gcMillis() - sample.gcTimeStart);
+        json.addProperty("heapUsedBytes", memoryBean.getHeapMemoryUsage().getUsed());
+        if (sample.layouts.size() > 0) {
+            json.add("layouts", sample.layouts);
+        }
+        ops.add(json);
+        running = null;
+    }
+
+    /*
+     * Attaches a finished layout run to the op that is running now
+     */
+    void recordLayout(String layoutName, StepTimes steps, long otherNanos, JsonObject details) {
+        var json = new JsonObject();
+        json.addProperty("name", layoutName);
+        json.addProperty("steps", steps.count());
+        json.add("stepMillis", steps.toJson());
+        if (otherNanos > 0) {
+            // i.e. time spent exporting frames between steps
+            json.addProperty("exportMillis", otherNanos / 1e6);
+        }
+        if (details != null) {
+            for (var entry : details.entrySet()) {
+                json.add(entry.getKey(), entry.getValue());
+            }
+        }
+        if (running != null) {
+            running.layouts.add(json);
+        }
+    }
+
+    /*
+     * PNG files the op that is running now encoded: count, bytes written, time spent
+     * encoding (summed over the encoder threads), and the frame rate over the wall time
+     * from the first frame to the end of the flush
+     */
+    void recordPng(int frames, long bytes, long encodeNanos, long wallNanos) {
+        if (running == null) {
+            return;
+        }
+        var json = running.json.has("png") ? running.json.getAsJsonObject("png") : new JsonObject();
+        // an op with several layouts encodes several batches
+        if (json.has("frames")) {
+            frames += json.get("frames").getAsInt();
+            bytes += json.get("bytes").getAsLong();
+            encodeNanos += (long) (json.get("encodeMillis").getAsDouble() * 1e6);
+            wallNanos += (long) (json.get("wallMillis").getAsDouble() * 1e6);
+        }
+        json.addProperty("frames", frames);
+        json.addProperty("bytes", bytes);
+        json.addProperty("encodeMillis", encodeNanos / 1e6);
+        json.addProperty("wallMillis", wallNanos / 1e6);
+        json.addProperty("framesPerSecond", frames / Math.max(wallNanos / 1e9, 1e-9));
+        running.json.add("png", json);
+    }
+
+    JsonObject toJson() {
+        var root = new JsonObject();
+        root.addProperty("totalMillis", (System.nanoTime() - start) / 1e6);
+        root.add("ops", ops);
+        return root;
+    }
+
+    private long threadCpuTime() {
+        return threadBean.isCurrentThreadCpuTimeSupported() ? threadBean.getCurrentThreadCpuTime() : 0;
+    }
+
+    private static long processCpuTime() {
+        var os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return 0;
+    }
+
+    private long allocatedBytes() {
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            var bean = (com.sun.management.ThreadMXBean) threadBean;
+            if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+                return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return 0;
+    }
+
+    private long gcCount() {
+        long count = 0;
+        for (var gc : gcBeans) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private long gcMillis() {
+        long millis = 0;
+        for (var gc : gcBeans) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /**
+     * Durations of layout steps, in nanoseconds
+     */
+    static class StepTimes {
+        private long[] nanos = new long[64];
+        private int count = 0;
+
+        void add(long stepNanos) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = stepNanos;
+        }
+
+        void addAll(StepTimes other) {
+            for (int i = 0; i < other.count; i++) {
+                add(other.nanos[i]);
+            }
+        }
+
+        int count() {
+            return count;
+        }
+
+        JsonObject toJson() {
+            var json = new JsonObject();
+            if (count == 0) {
+                return json;
+            }
+            long[] sorted = Arrays.copyOf(nanos, count);
+            Arrays.sort(sorted);
+            long sum = 0;
+            for (long n : sorted) {
+                sum += n;
+            }
+            json.addProperty("total", sum / 1e6);
+            json.addProperty("mean", sum / 1e6 / count);
+            json.addProperty("p50", percentile(sorted, 0.50) / 1e6);
+            json.addProperty("p90", percentile(sorted, 0.90) / 1e6);
+            json.addProperty("p99", percentile(sorted, 0.99) / 1e6);
+            json.addProperty("max", sorted[count - 1] / 1e6);
+            return json;
+        }
+
+        private static long percentile(long[] sorted, double p) {
+            int i = (int) Math.ceil(p * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(i, sorted.length - 1))];
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package gephicommander;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Wall-clock deadline for a layout run: the layout's own {@code maxMillis}, cut short
+ * by the pipeline budget ({@code --max-millis}) when that ends first. Layouts check
+ * it after every step, so a large graph gets fewer steps instead of missing the deadline.
+ */
+class TimeBudget {
+
+    static final TimeBudget NONE = new TimeBudget(0, Long.MAX_VALUE, false);
+
+    private static TimeBudget pipeline = null;
+
+    private final long start;
+    private final long millis;
+    private final boolean fromPipeline;
+
+    private TimeBudget(long start, long millis, boolean fromPipeline) {
+        this.start = start;
+        this.millis = millis;
+        this.fromPipeline = fromPipeline;
+    }
+
+    /*
+     * Budget of the pipeline that starts now, 0 for none
+     */
+    static void startPipeline(long millis) {
+        pipeline = millis > 0 ? new TimeBudget(System.nanoTime(), millis, true) : null;
+    }
+
+    static void endPipeline() {
+        pipeline = null;
+    }
+
+    static boolean isPipelineLimited() {
+        return pipeline != null;
+    }
+
+    /*
+     * Starts the budget of a layout entry, NONE when there is no limit
+     */
+    static TimeBudget forLayout(JsonObject options) {
+        long now = System.nanoTime();
+        var own = options.has("maxMillis") ? new TimeBudget(now, options.get("maxMillis").getAsLong(), false) : NONE;
+        if (pipeline == null) {
+            return own;
+        }
+        long pipelineLeft = Math.max(0, pipeline.millis - (now - pipeline.start) / 1_000_000);
+        return pipelineLeft < own.millis ? new TimeBudget(now, pipelineLeft, true) : own;
+    }
+
+    boolean isLimited() {
+        return this != NONE;
+    }
+
+    boolean isSpent() {
+        return this != NONE && System.nanoTime() - start >= millis * 1_000_000;
+    }
+
+    long millis() {
+        return millis;
+    }
+
+    /*
+     * Prints the step rate and adds it to the layout's metrics details
+     */
+    void report(String layoutName, int steps, boolean stopped, JsonObject details) {
+        if (!isLimited()) {
+            return;
+        }
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        double rate = elapsed > 0 ? steps * 1000.0 / elapsed : 0;
+        if (stopped) {
+            System.out.printf("Stopped %s at the %s ms %s budget: %s steps in %s ms (%.1f steps/s)%n",
+                layoutName, millis, fromPipeline ? "pipeline" : "layout", steps, elapsed, rate);
+        } else {
+            System.out.printf("%s: %s steps in %s ms (%.1f steps/s), within the %s ms budget%n",
+                layoutName, steps, elapsed, rate, millis);
+        }
+        details.addProperty("budgetMillis", millis);
+        details.addProperty("stoppedByBudget", stopped);
+        details.addProperty("stepsPerSecond", rate);
+    }
+}
@@ -0,0 +1,177 @@
+package importer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.openide.util.Lookup;
+
+/**
+ * Opens possibly compressed import files.
+ * <p>
+ * A compressed file is decompressed on its own thread into a bounded queue of chunks,
+ * so decompression overlaps with parsing and nothing is written to disk.
+ */
+public final class CompressedInput {
+
+    private static final int CHUNK_BYTES = 1 << 20;
+    private static final int QUEUED_CHUNKS = 8;
+
+    private CompressedInput() {
+    }
+
+    /*
+     * The codec for the file's extension, null for an uncompressed file
+     */
+    public static CompressionCodec codecFor(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        String ext = name.substring(dot + 1);
+        for (var codec : Lookup.getDefault().lookupAll(CompressionCodec.class)) {
+            if (codec.getExtension().equalsIgnoreCase(ext)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /*
+     * graph.gml.gz -> graph.gml, used to pick the importer
+     */
+    public static File uncompressedFile(File file) {
+        String name = file.getName();
+        return new File(file.getParentFile(), name.substring(0, name.lastIndexOf('.')));
+    }
+
+    public static InputStream open(File file) throws IOException {
+        var codec = codecFor(file);
+        var in = new FileInputStream(file);
+        if (codec == null) {
+            return new BufferedInputStream(in, 1 << 16);
+        }
+        try {
+            return new DecompressingStream(codec.decompress(new BufferedInputStream(in, 1 << 16)), file.getName());
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    public static Reader openReader(File file) throws IOException {
+        return new BufferedReader(new InputStreamReader(open(file), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    /**
+     * Reads the chunks that a decompression thread puts in a bounded queue
+     */
+    private static class DecompressingStream extends InputStream {
+
+        private static final byte[] END = new byte[0];
+
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUED_CHUNKS);
+        private final Thread thread;
+        private volatile Throwable error;
+        private byte[] chunk = null;
+        private int pos = 0;
+        private boolean ended = false;
+
+        DecompressingStream(InputStream source, String name) {
+            thread = new Thread(() -> decompress(source), "decompress-" + name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void decompress(InputStream source) {
+            boolean closed = false;
+            try (source) {
+                while (true) {
+                    var bytes = source.readNBytes(CHUNK_BYTES);
+                    if (bytes.length == 0) {
+                        break;
+                    }
+                    queue.put(bytes);
+                }
+            } catch (InterruptedException e) {
+                // Closed before the end of the file, nobody reads any more
+                closed = true;
+            } catch (Throwable e) {
+                // Also a codec failing on a corrupt stream, the reader gets it after the last chunk
+                error = e;
+            } finally {
+                if (!closed) {
+                    try {
+                        queue.put(END);
+                    } catch (InterruptedException e) {
+                        // Closed while the queue was full
+                    }
+                }
+            }
+        }
+
+        /*
+         * False at the end of the data
+         */
+        private boolean fill() throws IOException {
+            while (!ended && (chunk == null || pos == chunk.length)) {
+                try {
+                    chunk = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while decompressing", e);
+                }
+                pos = 0;
+                if (chunk == END) {
+                    ended = true;
+                    if (error instanceof IOException) {
+                        throw (IOException) error;
+                    } else if (error != null) {
+                        throw new IOException("Decompression failed: "+error, error);
+                    }
+                }
+            }
+            return !ended;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? chunk[pos++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, chunk.length - pos);
+            System.arraycopy(chunk, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return chunk == null ? 0 : chunk.length - pos;
+        }
+
+        @Override
+        public void close() {
+            ended = true;
+            thread.interrupt();
+            queue.clear();
+        }
+    }
+}
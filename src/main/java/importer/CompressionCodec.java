@@ -0,0 +1,18 @@
+package importer;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A compression format that imports can read directly. Codecs are found through the
+ * default Lookup, so a new one only needs a {@code @ServiceProvider} registration.
+ */
+public interface CompressionCodec {
+
+    /*
+     * File extension without the dot, e.g. 'gz'
+     */
+    String getExtension();
+
+    InputStream decompress(InputStream in) throws IOException;
+}
@@ -0,0 +1,8 @@
+package importer;
+
+/**
+ * A file-aware importer that opens its file through {@link CompressedInput}, so it can
+ * be given a compressed file as is instead of an extracted copy.
+ */
+public interface DecompressingImporter {
+}
@@ -0,0 +1,128 @@
+package importer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Layout of the columnar binary graph format (.gcb), shared by {@link ImporterGCB}
+ * and the exporter.
+ * <p>
+ * All numbers are little-endian. The file is a sequence of sections, each one an
+ * 8-byte payload length followed by the payload, padded to 8 bytes. Sections are
+ * mapped one by one, so a file can exceed 2 GB as long as every section fits in one
+ * buffer.
+ * <pre>
+ * header        magic, version, nodeCount, edgeCount, nodeColumnCount, edgeColumnCount
+ * node ids      string table
+ * node labels   string table
+ * node geometry float x[n], y[n], z[n], size[n], int argb[n]
+ * edges         int source[m], int target[m], double weight[m], byte directed[m]
+ * edge labels   string table
+ * node columns  one section per column
+ * edge columns  one section per column
+ * </pre>
+ * A string table is a presence bitmap, int offsets[count + 1] and the UTF-8 bytes.
+ * A column section starts with the column id and title, each an int length plus
+ * UTF-8 bytes, and a type byte. After padding comes a presence bitmap and the
+ * primitive values, or a string table.
+ */
+public final class GCBFormat {
+
+    public static final int MAGIC = 0x31424347;    // "GCB1"
+    public static final int VERSION = 1;
+
+    public static final byte TYPE_INT = 1;
+    public static final byte TYPE_LONG = 2;
+    public static final byte TYPE_FLOAT = 3;
+    public static final byte TYPE_DOUBLE = 4;
+    public static final byte TYPE_BOOLEAN = 5;
+    public static final byte TYPE_STRING = 6;
+
+    private GCBFormat() {
+    }
+
+    /*
+     * Column type byte for a value class, other classes are stored as strings
+     */
+    public static byte typeOf(Class<?> type) {
+        if (type == Integer.class || type == Short.class || type == Byte.class) {
+            return TYPE_INT;
+        } else if (type == Long.class) {
+            return TYPE_LONG;
+        } else if (type == Float.class) {
+            return TYPE_FLOAT;
+        } else if (type == Double.class) {
+            return TYPE_DOUBLE;
+        } else if (type == Boolean.class) {
+            return TYPE_BOOLEAN;
+        }
+        return TYPE_STRING;
+    }
+
+    public static Class<?> classOf(byte type) {
+        switch (type) {
+            case TYPE_INT:
+                return Integer.class;
+            case TYPE_LONG:
+                return Long.class;
+            case TYPE_FLOAT:
+                return Float.class;
+            case TYPE_DOUBLE:
+                return Double.class;
+            case TYPE_BOOLEAN:
+                return Boolean.class;
+            case TYPE_STRING:
+                return String.class;
+            default:
+                throw new IllegalArgumentException("Unknown column type "+type);
+        }
+    }
+
+    public static int bitmapBytes(int count) {
+        return (count + 7) / 8;
+    }
+
+    public static long padded(long length) {
+        return (length + 7) & ~7L;
+    }
+
+    public static boolean isPresent(ByteBuffer buf, int bitmapStart, int index) {
+        return (buf.get(bitmapStart + (index >>> 3)) & (1 << (index & 7))) != 0;
+    }
+
+    /**
+     * Read side of a string table, decodes one string at a time from a mapped buffer
+     */
+    public static class StringTable {
+        private final ByteBuffer buf;
+        private final ByteBuffer view;
+        private final int bitmapStart;
+        private final int offsetsStart;
+        private final int bytesStart;
+        private byte[] scratch = new byte[64];
+
+        public StringTable(ByteBuffer buf, int start, int count) {
+            this.buf = buf;
+            // Absolute bulk get needs Java 13, so bytes are read through a positioned view
+            this.view = buf.duplicate();
+            this.bitmapStart = start;
+            this.offsetsStart = start + (int) padded(bitmapBytes(count));
+            this.bytesStart = offsetsStart + 4 * (count + 1);
+        }
+
+        public String get(int index) {
+            if (!isPresent(buf, bitmapStart, index)) {
+                return null;
+            }
+            int from = buf.getInt(offsetsStart + 4 * index);
+            int to = buf.getInt(offsetsStart + 4 * (index + 1));
+            int length = to - from;
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            view.position(bytesStart + from);
+            view.get(scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package importer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.openide.util.lookup.ServiceProvider;
+
+@ServiceProvider(service = CompressionCodec.class)
+public class GzipCodec implements CompressionCodec {
+
+    @Override
+    public String getExtension() {
+        return "gz";
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) throws IOException {
+        // Also reads files made of several concatenated gzip members, like pigz output
+        return new GZIPInputStream(in, 1 << 16);
+    }
+}
@@ -0,0 +1,36 @@
+package importer;
+
+import org.gephi.io.importer.api.FileType;
+import org.gephi.io.importer.spi.FileImporter;
+import org.gephi.io.importer.spi.FileImporterBuilder;
+import org.openide.filesystems.FileObject;
+import org.openide.util.NbBundle;
+import org.openide.util.lookup.ServiceProvider;
+
+@ServiceProvider(service = FileImporterBuilder.class)
+public class ImporterBuilderEdgeList implements FileImporterBuilder {
+
+    public static final String IDENTIFER = "edgelist";
+
+    @Override
+    public FileImporter buildImporter() {
+        return new ImporterEdgeList();
+    }
+
+    @Override
+    public String getName() {
+        return IDENTIFER;
+    }
+
+    @Override
+    public FileType[] getFileTypes() {
+        FileType ft = new FileType(new String[] {".csv", ".tsv"}, NbBundle.getMessage(getClass(), "fileType_EdgeList_Name"));
+        return new FileType[] {ft};
+    }
+
+    @Override
+    public boolean isMatchingImporter(FileObject fileObject) {
+        // .csv also holds node tables and matrices, so this importer is only used when asked for by name
+        return false;
+    }
+}
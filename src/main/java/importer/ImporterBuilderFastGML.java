@@ -0,0 +1,38 @@
+package importer;
+
+import org.gephi.io.importer.api.FileType;
+import org.gephi.io.importer.spi.FileImporter;
+import org.gephi.io.importer.spi.FileImporterBuilder;
+import org.openide.filesystems.FileObject;
+import org.openide.util.NbBundle;
+import org.openide.util.lookup.ServiceProvider;
+
+/*
+ * Positioned so it is matched before Gephi's own GML importer, which stays available as 'gml'
+ */
+@ServiceProvider(service = FileImporterBuilder.class, position = 100)
+public class ImporterBuilderFastGML implements FileImporterBuilder {
+
+    public static final String IDENTIFER = "fastgml";
+
+    @Override
+    public FileImporter buildImporter() {
+        return new ImporterFastGML();
+    }
+
+    @Override
+    public String getName() {
+        return IDENTIFER;
+    }
+
+    @Override
+    public FileType[] getFileTypes() {
+        FileType ft = new FileType(".gml", NbBundle.getMessage(getClass(), "fileType_FastGML_Name"));
+        return new FileType[] {ft};
+    }
+
+    @Override
+    public boolean isMatchingImporter(FileObject fileObject) {
+        return fileObject.getExt().equalsIgnoreCase("gml");
+    }
+}
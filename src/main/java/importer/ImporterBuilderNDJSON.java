@@ -0,0 +1,35 @@
+package importer;
+
+import org.gephi.io.importer.api.FileType;
+import org.gephi.io.importer.spi.FileImporter;
+import org.gephi.io.importer.spi.FileImporterBuilder;
+import org.openide.filesystems.FileObject;
+import org.openide.util.NbBundle;
+import org.openide.util.lookup.ServiceProvider;
+
+@ServiceProvider(service = FileImporterBuilder.class)
+public class ImporterBuilderNDJSON implements FileImporterBuilder {
+
+    public static final String IDENTIFER = "ndjson";
+
+    @Override
+    public FileImporter buildImporter() {
+        return new ImporterNDJSON();
+    }
+
+    @Override
+    public String getName() {
+        return IDENTIFER;
+    }
+
+    @Override
+    public FileType[] getFileTypes() {
+        FileType ft = new FileType(new String[] {".ndjson", ".jsonl"}, NbBundle.getMessage(getClass(), "fileType_NDJSON_Name"));
+        return new FileType[] {ft};
+    }
+
+    @Override
+    public boolean isMatchingImporter(FileObject fileObject) {
+        return fileObject.getExt().equalsIgnoreCase("ndjson") || fileObject.getExt().equalsIgnoreCase("jsonl");
+    }
+}
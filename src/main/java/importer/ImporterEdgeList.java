@@ -0,0 +1,793 @@
+package importer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gephi.io.importer.api.ContainerLoader;
+import org.gephi.io.importer.api.EdgeDirectionDefault;
+import org.gephi.io.importer.api.EdgeDraft;
+import org.gephi.io.importer.api.Issue;
+import org.gephi.io.importer.api.NodeDraft;
+import org.gephi.io.importer.api.Report;
+import org.gephi.io.importer.spi.FileImporter;
+import org.gephi.utils.longtask.spi.LongTask;
+import org.gephi.utils.progress.Progress;
+import org.gephi.utils.progress.ProgressTicket;
+import org.openide.util.NbBundle;
+
+/**
+ * Imports {@code source,target,weight,...} edge lists (CSV or TSV) in parallel.
+ * <p>
+ * The file is cut into byte ranges that end on line boundaries and each range is
+ * parsed by a worker thread. Node ids are interned into one concurrent map, and a
+ * single feeder hands the parsed chunks to the container in file order, so node and
+ * edge order do not depend on thread timing. A compressed file is read as a stream
+ * and cut into chunks as it is decompressed. Quoted fields are supported, but they
+ * may not contain line breaks.
+ * <p>
+ * Column types are sampled from the first rows. A later value that does not fit is
+ * kept as text and widens its column (integer to long to double, anything to string),
+ * so attribute columns are declared and their values set after the last chunk.
+ */
+public class ImporterEdgeList implements FileImporter, FileImporter.FileAware, LongTask, ProjectingImporter,
+        InterningImporter, DecompressingImporter {
+
+    private static final int SAMPLE_ROWS = 1000;
+    private static final int SAMPLE_BYTES = 1 << 20;
+    private static final int MIN_CHUNK_BYTES = 1 << 20;
+    private static final int MAX_CHUNK_BYTES = 16 << 20;
+
+    private Reader reader;
+    private File file;
+    private ContainerLoader container;
+    private Report report;
+    private ProgressTicket progressTicket;
+    private volatile boolean cancel = false;
+
+    private Character delimiter = null;
+    private Boolean header = null;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private Set<String> columns = null;
+    private StringDictionary dictionary = null;
+
+    private FileChannel channel;
+    private InputStream stream;
+    private String[] columnNames;
+    private Class<?>[] columnTypes;
+    // Sampled types widened by values that don't fit them, the columns are declared with these
+    private Class<?>[] valueTypes;
+    // Chunks whose attribute values are set once all types are known
+    private final List<Chunk> pendingValues = new ArrayList<>();
+    private int sourceColumn;
+    private int targetColumn;
+    private int weightColumn;
+    private int labelColumn;
+    private final ConcurrentHashMap<String, NodeId> nodeIds = new ConcurrentHashMap<>();
+    private final AtomicInteger nextNodeIndex = new AtomicInteger();
+    private final AtomicInteger badRows = new AtomicInteger();
+    private final AtomicInteger badWeights = new AtomicInteger();
+    private long edgeCount = 0;
+
+    @Override
+    public boolean execute(ContainerLoader container) {
+        this.container = container;
+        this.report = new Report();
+        container.setEdgeDefault(EdgeDirectionDefault.DIRECTED);
+
+        try {
+            // Chunks are read from the file, the text reader is not used
+            if (reader != null) {
+                reader.close();
+            }
+            if (file == null) {
+                report.logIssue(new Issue(NbBundle.getMessage(getClass(), "importerEdgeList_error_nofile"), Issue.Level.SEVERE));
+                return false;
+            }
+            if (CompressedInput.codecFor(file) != null) {
+                // No random access into a compressed file, chunks are cut by the reading thread
+                try (var in = CompressedInput.open(file)) {
+                    stream = in;
+                    importData();
+                }
+            } else {
+                try (var ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                    channel = ch;
+                    importData();
+                }
+            }
+            return true;
+        } catch (Exception e) {
+            // A row that failed on a parser thread is reported with its own message
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            report.logIssue(new Issue(NbBundle.getMessage(getClass(), "importerEdgeList_error_parsing", String.valueOf(cause)), Issue.Level.SEVERE));
+            return false;
+        } finally {
+            channel = null;
+            stream = null;
+        }
+    }
+
+    private void importData() throws IOException, InterruptedException, ExecutionException {
+        Progress.start(progressTicket);
+
+        long size;
+        byte[] sample;
+        if (channel != null) {
+            size = channel.size();
+            sample = read(0, (int) Math.min(size, SAMPLE_BYTES));
+        } else {
+            sample = stream.readNBytes(SAMPLE_BYTES);
+            size = sample.length < SAMPLE_BYTES ? sample.length : Long.MAX_VALUE;
+        }
+        long dataStart = detectColumns(sample, size);
+        if (columnNames == null) {
+            Progress.finish(progressTicket);
+            return;
+        }
+        valueTypes = columnTypes.clone();
+
+        List<Long> bounds = null;
+        StreamChunks streamChunks = null;
+        if (channel != null) {
+            bounds = chunkBounds(dataStart, size);
+            Progress.switchToDeterminate(progressTicket, bounds.size() - 1);
+        } else {
+            // A compressed file has no known size, it is cut into chunks as it is read
+            streamChunks = new StreamChunks(Arrays.copyOfRange(sample, (int) dataStart, sample.length));
+            Progress.switchToIndeterminate(progressTicket);
+        }
+        Progress.setDisplayName(progressTicket, "Importing edges");
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            var thread = new Thread(r, "edgelist-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        int chunkCount = 0;
+        try {
+            // Keep a bounded window of chunks in flight, the feeder takes them in file order
+            var inFlight = new ArrayDeque<Future<Chunk>>();
+            boolean more = bounds == null || bounds.size() > 1;
+            var drafts = new NodeDraft[1024];
+            while (more || !inFlight.isEmpty()) {
+                while (more && inFlight.size() < threads * 2) {
+                    if (bounds != null) {
+                        long from = bounds.get(chunkCount);
+                        long to = bounds.get(chunkCount + 1);
+                        inFlight.add(pool.submit(() -> parseChunk(read(from, (int) (to - from)))));
+                        chunkCount++;
+                        more = chunkCount < bounds.size() - 1;
+                    } else {
+                        byte[] bytes = streamChunks.next();
+                        if (bytes == null) {
+                            more = false;
+                        } else {
+                            inFlight.add(pool.submit(() -> parseChunk(bytes)));
+                            chunkCount++;
+                        }
+                    }
+                }
+                if (cancel) {
+                    return;
+                }
+                if (!inFlight.isEmpty()) {
+                    drafts = feed(inFlight.poll().get(), drafts);
+                    Progress.progress(progressTicket);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        setValues();
+
+        if (badRows.get() > 0) {
+            report.logIssue(new Issue(
+                NbBundle.getMessage(getClass(), "importerEdgeList_error_badrows", badRows.get()),
+                Issue.Level.WARNING));
+        }
+        if (badWeights.get() > 0) {
+            report.logIssue(new Issue(
+                NbBundle.getMessage(getClass(), "importerEdgeList_error_badweights", badWeights.get()),
+                Issue.Level.WARNING));
+        }
+        report.log(String.format("%s edges, %s nodes, %s chunks on %s threads",
+            edgeCount, nodeIds.size(), chunkCount, threads));
+        if (dictionary != null) {
+            report.log(dictionary.summary());
+        }
+        Progress.finish(progressTicket);
+    }
+
+    /*
+     * Creates node drafts on first appearance and adds the chunk's edges
+     */
+    private NodeDraft[] feed(Chunk chunk, NodeDraft[] drafts) {
+        if (chunk.hasValues()) {
+            chunk.edges = new EdgeDraft[chunk.rows];
+        }
+        for (int row = 0; row < chunk.rows; row++) {
+            var source = chunk.sources[row];
+            var target = chunk.targets[row];
+            int maxIndex = Math.max(source.index, target.index);
+            if (maxIndex >= drafts.length) {
+                drafts = Arrays.copyOf(drafts, Math.max(maxIndex + 1, drafts.length * 2));
+            }
+            if (drafts[source.index] == null) {
+                drafts[source.index] = addNode(source.id);
+            }
+            if (drafts[target.index] == null) {
+                drafts[target.index] = addNode(target.id);
+            }
+
+            EdgeDraft edgeDraft = container.factory().newEdgeDraft();
+            edgeDraft.setSource(drafts[source.index]);
+            edgeDraft.setTarget(drafts[target.index]);
+            if (chunk.weights != null) {
+                edgeDraft.setWeight(chunk.weights[row]);
+            }
+            if (chunk.labels != null && chunk.labels[row] != null) {
+                edgeDraft.setLabel(chunk.labels[row]);
+            }
+            if (chunk.edges != null) {
+                chunk.edges[row] = edgeDraft;
+            }
+            container.addEdge(edgeDraft);
+            edgeCount++;
+        }
+        if (chunk.edges != null) {
+            // Only the edge drafts and values are needed from here on
+            chunk.sources = null;
+            chunk.targets = null;
+            chunk.weights = null;
+            chunk.labels = null;
+            pendingValues.add(chunk);
+        }
+        return drafts;
+    }
+
+    /*
+     * Declares the attribute columns with their final types and sets the values,
+     * converting the ones parsed with a narrower sampled type
+     */
+    private void setValues() {
+        for (int c = 0; c < columnNames.length; c++) {
+            if (isAttribute(c)) {
+                container.addEdgeColumn(columnNames[c], valueTypes[c]);
+                if (valueTypes[c] != columnTypes[c]) {
+                    report.logIssue(new Issue(NbBundle.getMessage(getClass(), "importerEdgeList_error_widened",
+                        columnNames[c], columnTypes[c].getSimpleName(), valueTypes[c].getSimpleName()), Issue.Level.WARNING));
+                }
+            }
+        }
+        for (var chunk : pendingValues) {
+            for (int c = 0; c < columnNames.length; c++) {
+                if (chunk.values[c] == null) {
+                    continue;
+                }
+                boolean widened = valueTypes[c] != columnTypes[c];
+                for (int row = 0; row < chunk.rows; row++) {
+                    Object value = chunk.values[c][row];
+                    if (value != null) {
+                        chunk.edges[row].setValue(columnNames[c], widened ? convert(columnNames[c], value, valueTypes[c]) : value);
+                    }
+                }
+            }
+        }
+        pendingValues.clear();
+    }
+
+    private Object convert(String column, Object value, Class<?> type) {
+        if (type == String.class) {
+            return intern(column, value.toString());
+        } else if (value.getClass() == type) {
+            return value;
+        } else if (value instanceof String) {
+            // A value that did not fit the sampled type, it fits the widened one
+            return parse((String) value, type);
+        } else if (type == Long.class) {
+            return ((Number) value).longValue();
+        } else {
+            return ((Number) value).doubleValue();
+        }
+    }
+
+    /*
+     * A value that does not fit the sampled type of column c widens it, shared by the parser threads
+     */
+    private synchronized void widenColumn(int c, String value) {
+        valueTypes[c] = widen(valueTypes[c], value);
+    }
+
+    private NodeDraft addNode(String id) {
+        NodeDraft nodeDraft = container.factory().newNodeDraft(id);
+        container.addNode(nodeDraft);
+        return nodeDraft;
+    }
+
+    /*
+     * Finds the delimiter, the header and the column types from the first rows.
+     * Returns the offset of the first data row.
+     */
+    private long detectColumns(byte[] sample, long size) {
+        int firstEnd = lineEnd(sample, 0, sample.length);
+        String firstLine = decodeLine(sample, 0, firstEnd);
+        if (firstLine.isBlank()) {
+            return 0;
+        }
+        if (delimiter == null) {
+            delimiter = file.getName().toLowerCase().endsWith(".tsv") || firstLine.indexOf('\t') >= 0 ? '\t' : ',';
+        }
+        var fields = new ArrayList<String>();
+        splitFields(sample, 0, firstEnd, fields);
+        if (header == null) {
+            header = false;
+            for (var field : fields) {
+                String name = field.trim().toLowerCase();
+                if (name.equals("source") || name.equals("target") || name.equals("from") || name.equals("to")) {
+                    header = true;
+                }
+            }
+        }
+
+        int columnCount = fields.size();
+        columnNames = new String[columnCount];
+        sourceColumn = 0;
+        targetColumn = Math.min(1, columnCount - 1);
+        weightColumn = -1;
+        labelColumn = -1;
+        for (int c = 0; c < columnCount; c++) {
+            columnNames[c] = header ? fields.get(c).trim() : "column" + c;
+            String name = columnNames[c].toLowerCase();
+            if (header && (name.equals("source") || name.equals("from"))) {
+                sourceColumn = c;
+            } else if (header && (name.equals("target") || name.equals("to"))) {
+                targetColumn = c;
+            } else if (header && name.equals("weight")) {
+                weightColumn = c;
+            } else if (header && name.equals("label")) {
+                labelColumn = c;
+            }
+        }
+
+        // Narrowest type that holds every sampled value, the last line may be cut off
+        columnTypes = new Class<?>[columnCount];
+        int pos = header ? Math.min(firstEnd + 1, sample.length) : 0;
+        int rows = 0;
+        while (pos < sample.length && rows < SAMPLE_ROWS) {
+            int end = lineEnd(sample, pos, sample.length);
+            if (end == sample.length && sample.length < size) {
+                break;
+            }
+            splitFields(sample, pos, end, fields);
+            for (int c = 0; c < Math.min(columnCount, fields.size()); c++) {
+                columnTypes[c] = widen(columnTypes[c], fields.get(c));
+            }
+            rows++;
+            pos = end + 1;
+        }
+        for (int c = 0; c < columnCount; c++) {
+            if (columnTypes[c] == null) {
+                columnTypes[c] = String.class;
+            }
+        }
+        if (!header && columnCount > 2 && Number.class.isAssignableFrom(columnTypes[2])) {
+            weightColumn = 2;
+            columnNames[2] = "weight";
+        }
+        return header ? Math.min(firstEnd + 1, sample.length) : 0;
+    }
+
+    private boolean isAttribute(int c) {
+        return c != sourceColumn && c != targetColumn && c != weightColumn && c != labelColumn
+            && (columns == null || columns.contains(columnNames[c].toLowerCase(Locale.ROOT)));
+    }
+
+    private static Class<?> widen(Class<?> current, String value) {
+        value = value.trim();
+        if (value.isEmpty() || current == String.class) {
+            return current;
+        }
+        if (current == null && parses(value, Boolean.class)) {
+            return Boolean.class;
+        }
+        if (current == null || current == Integer.class) {
+            if (parses(value, Integer.class)) {
+                return Integer.class;
+            }
+            current = Long.class;
+        }
+        if (current == Long.class) {
+            if (parses(value, Long.class)) {
+                return Long.class;
+            }
+            current = Double.class;
+        }
+        if (current == Double.class) {
+            return parses(value, Double.class) ? Double.class : String.class;
+        }
+        if (current == Boolean.class) {
+            return parses(value, Boolean.class) ? Boolean.class : String.class;
+        }
+        return String.class;
+    }
+
+    private static boolean parses(String value, Class<?> type) {
+        return parse(value, type) != null;
+    }
+
+    private static Object parse(String value, Class<?> type) {
+        try {
+            if (type == Integer.class) {
+                return Integer.valueOf(value);
+            } else if (type == Long.class) {
+                return Long.valueOf(value);
+            } else if (type == Double.class) {
+                return Double.valueOf(value);
+            } else if (type == Boolean.class) {
+                if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")) {
+                    return Boolean.valueOf(value);
+                }
+                return null;
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /*
+     * Cuts [dataStart, size) into ranges that each end right after a line break
+     */
+    private List<Long> chunkBounds(long dataStart, long size) throws IOException {
+        long chunkBytes = Math.max(MIN_CHUNK_BYTES, Math.min(MAX_CHUNK_BYTES, (size - dataStart) / (threads * 4L)));
+        var bounds = new ArrayList<Long>();
+        bounds.add(dataStart);
+        long pos = dataStart;
+        var probe = ByteBuffer.allocate(4096);
+        while (pos + chunkBytes < size) {
+            long next = pos + chunkBytes;
+            long found = -1;
+            while (found < 0 && next < size) {
+                probe.clear();
+                int n = channel.read(probe, next);
+                if (n <= 0) {
+                    break;
+                }
+                for (int i = 0; i < n; i++) {
+                    if (probe.get(i) == '\n') {
+                        found = next + i + 1;
+                        break;
+                    }
+                }
+                next += n;
+            }
+            if (found < 0) {
+                break;
+            }
+            bounds.add(found);
+            pos = found;
+        }
+        if (bounds.get(bounds.size() - 1) < size) {
+            bounds.add(size);
+        }
+        return bounds;
+    }
+
+    private Chunk parseChunk(byte[] bytes) {
+        var chunk = new Chunk(estimateRows(bytes));
+        var fields = new ArrayList<String>();
+        int pos = 0;
+        while (pos < bytes.length && !cancel) {
+            int end = lineEnd(bytes, pos, bytes.length);
+            if (end > pos && !(end == pos + 1 && bytes[pos] == '\r')) {
+                splitFields(bytes, pos, end, fields);
+                addRow(chunk, fields);
+            }
+            pos = end + 1;
+        }
+        return chunk;
+    }
+
+    private void addRow(Chunk chunk, List<String> fields) {
+        if (fields.size() <= Math.max(sourceColumn, targetColumn)) {
+            badRows.incrementAndGet();
+            return;
+        }
+        String source = fields.get(sourceColumn).trim();
+        String target = fields.get(targetColumn).trim();
+        if (source.isEmpty() || target.isEmpty()) {
+            badRows.incrementAndGet();
+            return;
+        }
+        int row = chunk.grow();
+        chunk.sources[row] = nodeIds.computeIfAbsent(source, id -> new NodeId(id, nextNodeIndex.getAndIncrement()));
+        chunk.targets[row] = nodeIds.computeIfAbsent(target, id -> new NodeId(id, nextNodeIndex.getAndIncrement()));
+        if (weightColumn >= 0) {
+            double weight = 1.0;
+            if (weightColumn < fields.size() && !fields.get(weightColumn).isBlank()) {
+                Object value = parse(fields.get(weightColumn).trim(), Double.class);
+                if (value != null) {
+                    weight = (Double) value;
+                } else {
+                    badWeights.incrementAndGet();
+                }
+            }
+            chunk.weights[row] = weight;
+        }
+        if (labelColumn >= 0 && labelColumn < fields.size()) {
+            chunk.labels[row] = intern("label", fields.get(labelColumn));
+        }
+        for (int c = 0; c < Math.min(columnNames.length, fields.size()); c++) {
+            if (chunk.values[c] == null) {
+                continue;
+            }
+            String field = columnTypes[c] == String.class ? fields.get(c) : fields.get(c).trim();
+            if (field.isEmpty()) {
+                continue;
+            }
+            Object value = columnTypes[c] == String.class ? intern(columnNames[c], field) : parse(field, columnTypes[c]);
+            if (value == null) {
+                // Kept as text, it is converted once the widened column type is known
+                widenColumn(c, field);
+                value = field;
+            }
+            chunk.values[c][row] = value;
+        }
+    }
+
+    private String intern(String column, String value) {
+        return dictionary == null ? value : dictionary.intern(column, value);
+    }
+
+    private static int estimateRows(byte[] bytes) {
+        return Math.max(16, bytes.length / 32);
+    }
+
+    private byte[] read(long from, int length) throws IOException {
+        var bytes = new byte[length];
+        var buf = ByteBuffer.wrap(bytes);
+        while (buf.hasRemaining()) {
+            // Positional reads are safe to run from several threads on one channel
+            if (channel.read(buf, from + buf.position()) < 0) {
+                break;
+            }
+        }
+        return bytes;
+    }
+
+    private static int lineEnd(byte[] bytes, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            if (bytes[i] == '\n') {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    private static String decodeLine(byte[] bytes, int from, int to) {
+        return new String(bytes, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    /*
+     * Splits one line into fields, "quoted ""fields""" keep delimiters
+     */
+    private void splitFields(byte[] bytes, int from, int to, List<String> fields) {
+        fields.clear();
+        if (to > from && bytes[to - 1] == '\r') {
+            to--;
+        }
+        char delim = delimiter;
+        int pos = from;
+        while (pos <= to) {
+            if (pos < to && bytes[pos] == '"') {
+                var sb = new StringBuilder();
+                int start = pos + 1;
+                int i = start;
+                while (i < to) {
+                    if (bytes[i] == '"') {
+                        if (i + 1 < to && bytes[i + 1] == '"') {
+                            sb.append(decodeLine(bytes, start, i + 1));
+                            i += 2;
+                            start = i;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                sb.append(decodeLine(bytes, start, i));
+                fields.add(sb.toString());
+                // Skip to the delimiter after the closing quote
+                while (i < to && bytes[i] != delim) {
+                    i++;
+                }
+                pos = i + 1;
+            } else {
+                int i = pos;
+                while (i < to && bytes[i] != delim) {
+                    i++;
+                }
+                fields.add(decodeLine(bytes, pos, i));
+                pos = i + 1;
+            }
+        }
+    }
+
+    /**
+     * Cuts a stream into chunks that end right after a line break
+     */
+    private class StreamChunks {
+        private byte[] rest;
+
+        StreamChunks(byte[] rest) {
+            this.rest = rest;
+        }
+
+        /*
+         * Next chunk of whole lines, null at the end of the stream
+         */
+        byte[] next() throws IOException {
+            if (rest == null) {
+                return null;
+            }
+            var bytes = Arrays.copyOf(rest, Math.max(MIN_CHUNK_BYTES * 4, rest.length * 2));
+            int length = rest.length;
+            while (true) {
+                int n = stream.readNBytes(bytes, length, bytes.length - length);
+                length += n;
+                if (length < bytes.length) {
+                    // End of the stream, the last line may have no line break
+                    rest = null;
+                    return length > 0 ? Arrays.copyOf(bytes, length) : null;
+                }
+                int cut = length - 1;
+                while (cut >= 0 && bytes[cut] != '\n') {
+                    cut--;
+                }
+                if (cut >= 0) {
+                    rest = Arrays.copyOfRange(bytes, cut + 1, length);
+                    return Arrays.copyOf(bytes, cut + 1);
+                }
+                // A line longer than the chunk
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+        }
+    }
+
+    /**
+     * Interned node id with the index of its draft
+     */
+    private static class NodeId {
+        final String id;
+        final int index;
+
+        NodeId(String id, int index) {
+            this.id = id;
+            this.index = index;
+        }
+    }
+
+    private class Chunk {
+        int rows = 0;
+        NodeId[] sources;
+        NodeId[] targets;
+        double[] weights;
+        String[] labels;
+        final Object[][] values;
+        // Edge draft of each row, when there are attribute values to set later
+        EdgeDraft[] edges;
+
+        Chunk(int capacity) {
+            sources = new NodeId[capacity];
+            targets = new NodeId[capacity];
+            weights = weightColumn >= 0 ? new double[capacity] : null;
+            labels = labelColumn >= 0 ? new String[capacity] : null;
+            values = new Object[columnNames.length][];
+            for (int c = 0; c < columnNames.length; c++) {
+                if (isAttribute(c)) {
+                    values[c] = new Object[capacity];
+                }
+            }
+        }
+
+        boolean hasValues() {
+            for (var columnValues : values) {
+                if (columnValues != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        int grow() {
+            if (rows == sources.length) {
+                int capacity = rows * 2;
+                sources = Arrays.copyOf(sources, capacity);
+                targets = Arrays.copyOf(targets, capacity);
+                if (weights != null) {
+                    weights = Arrays.copyOf(weights, capacity);
+                }
+                if (labels != null) {
+                    labels = Arrays.copyOf(labels, capacity);
+                }
+                for (int c = 0; c < values.length; c++) {
+                    if (values[c] != null) {
+                        values[c] = Arrays.copyOf(values[c], capacity);
+                    }
+                }
+            }
+            return rows++;
+        }
+    }
+
+    @Override
+    public void setColumns(Set<String> columns) {
+        this.columns = columns;
+    }
+
+    @Override
+    public void setDictionary(StringDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    public void setDelimiter(char delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    public void setHeader(boolean header) {
+        this.header = header;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    @Override
+    public void setReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public void setFile(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public ContainerLoader getContainer() {
+        return container;
+    }
+
+    @Override
+    public Report getReport() {
+        return report;
+    }
+
+    @Override
+    public boolean cancel() {
+        cancel = true;
+        return true;
+    }
+
+    @Override
+    public void setProgressTicket(ProgressTicket progressTicket) {
+        this.progressTicket = progressTicket;
+    }
+}
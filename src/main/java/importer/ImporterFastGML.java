@@ -0,0 +1,680 @@
+package importer;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.gephi.io.importer.api.ContainerLoader;
+import org.gephi.io.importer.api.EdgeDirection;
+import org.gephi.io.importer.api.EdgeDirectionDefault;
+import org.gephi.io.importer.api.EdgeDraft;
+import org.gephi.io.importer.api.Issue;
+import org.gephi.io.importer.api.NodeDraft;
+import org.gephi.io.importer.api.Report;
+import org.gephi.io.importer.spi.FileImporter;
+import org.gephi.utils.longtask.spi.LongTask;
+import org.gephi.utils.progress.Progress;
+import org.gephi.utils.progress.ProgressTicket;
+import org.openide.util.NbBundle;
+
+/**
+ * GML importer that gives the same graph as Gephi's ImporterGML, but reads the file
+ * in one pass instead of first building it as nested lists of strings.
+ * <p>
+ * Bytes are tokenized straight from a memory-mapped file (or the decompressed stream
+ * of a compressed one). Keys are looked up in a table keyed by their bytes, so a key
+ * is a String only once per file, and numbers are parsed from the bytes. Values are
+ * typed like the stock importer: unquoted integers are Long, other numbers Double and
+ * the rest String.
+ */
+public class ImporterFastGML implements FileImporter, FileImporter.FileAware, LongTask, ProjectingImporter,
+        InterningImporter, DecompressingImporter {
+
+    private static final long WINDOW_BYTES = 1L << 30;
+    private static final int STREAM_BUFFER_BYTES = 1 << 16;
+
+    // Token kinds
+    private static final int EOF = 0;
+    private static final int OPEN = 1;
+    private static final int CLOSE = 2;
+    private static final int WORD = 3;
+    private static final int QUOTED = 4;
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private Reader reader;
+    private File file;
+    private ContainerLoader container;
+    private Report report;
+    private ProgressTicket progressTicket;
+    private boolean cancel = false;
+    private Set<String> columns = null;
+    private StringDictionary dictionary = null;
+
+    // Input: a mapped window of the file, or a buffer refilled from a stream
+    private FileChannel channel;
+    private InputStream stream;
+    private byte[] streamBytes;
+    private ByteBuffer buf;
+    private long consumed = 0;
+    private long size = 0;
+    private long nextProgress = 0;
+
+    // Current token
+    private int token;
+    private byte[] scratch = new byte[256];
+    private int length;
+    private final KeyTable keys = new KeyTable();
+
+    // Current element, reused between elements
+    private final List<String> attributeKeys = new ArrayList<>();
+    private final List<Object> attributeValues = new ArrayList<>();
+
+    @Override
+    public boolean execute(ContainerLoader container) {
+        this.container = container;
+        this.report = new Report();
+
+        try {
+            // The file is read as bytes, the text reader is not used
+            if (reader != null) {
+                reader.close();
+            }
+            if (file == null) {
+                report.logIssue(new Issue(NbBundle.getMessage(getClass(), "importerFastGML_error_nofile"), Issue.Level.SEVERE));
+                return false;
+            }
+            if (CompressedInput.codecFor(file) != null) {
+                try (var in = CompressedInput.open(file)) {
+                    stream = in;
+                    streamBytes = new byte[STREAM_BUFFER_BYTES];
+                    buf = ByteBuffer.wrap(streamBytes, 0, 0);
+                    importData();
+                }
+            } else {
+                try (var ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                    channel = ch;
+                    size = ch.size();
+                    buf = ByteBuffer.allocate(0);
+                    importData();
+                }
+            }
+            return true;
+        } catch (Exception e) {
+            report.logIssue(new Issue(NbBundle.getMessage(getClass(), "importerFastGML_error_parsing", String.valueOf(e)), Issue.Level.SEVERE));
+            return false;
+        } finally {
+            channel = null;
+            stream = null;
+            buf = null;
+        }
+    }
+
+    private void importData() throws IOException {
+        Progress.start(progressTicket);
+        if (size > 0) {
+            Progress.switchToDeterminate(progressTicket, 100);
+        } else {
+            Progress.switchToIndeterminate(progressTicket);
+        }
+
+        // Like the stock importer, every top level 'graph [ ... ]' goes into the container
+        boolean found = false;
+        while (!cancel && nextToken() != EOF) {
+            if (token != WORD && token != QUOTED) {
+                continue;
+            }
+            String key = key();
+            if (nextToken() == OPEN && key.equals("graph")) {
+                parseGraph();
+                found = true;
+            } else {
+                skipRest();
+            }
+        }
+        if (!found && !cancel) {
+            report.logIssue(new Issue(NbBundle.getMessage(getClass(), "importerFastGML_error_badparsing"), Issue.Level.SEVERE));
+        }
+        if (dictionary != null) {
+            report.log(dictionary.summary());
+        }
+        Progress.finish(progressTicket);
+    }
+
+    private void parseGraph() throws IOException {
+        while (!cancel) {
+            if (nextToken() == EOF || token == CLOSE) {
+                return;
+            }
+            if (token == OPEN) {
+                // A list where a key was expected
+                skipList();
+                continue;
+            }
+            String key = key();
+            nextToken();
+            if (token == CLOSE || token == EOF) {
+                // A key without a value
+                return;
+            }
+            if (token == OPEN && key.equals("node")) {
+                parseNode();
+            } else if (token == OPEN && key.equals("edge")) {
+                parseEdge();
+            } else if (key.equals("directed") && token != OPEN) {
+                Object value = value();
+                if (value instanceof Number) {
+                    container.setEdgeDefault(((Number) value).intValue() == 1 ? EdgeDirectionDefault.DIRECTED : EdgeDirectionDefault.UNDIRECTED);
+                } else {
+                    report.logIssue(new Issue(NbBundle.getMessage(getClass(), "importerFastGML_error_directedgraphparse"), Issue.Level.WARNING));
+                }
+            } else {
+                skipRest();
+            }
+            reportProgress();
+        }
+    }
+
+    private void parseNode() throws IOException {
+        String id = null;
+        String label = null;
+        float x = 0;
+        float y = 0;
+        float z = 0;
+        float nodeSize = 0;
+        boolean hasX = false;
+        boolean hasY = false;
+        boolean hasZ = false;
+        boolean hasSize = false;
+        Object fill = null;
+        attributeKeys.clear();
+        attributeValues.clear();
+
+        // Same rules as ImporterGML.addNodeAttributes, applied while reading: id and label
+        // are only taken at the top level, graphics keys and attributes at any depth
+        int depth = 0;
+        while (true) {
+            if (nextToken() == EOF) {
+                break;
+            }
+            if (token == CLOSE) {
+                if (depth-- == 0) {
+                    break;
+                }
+                continue;
+            }
+            if (token == OPEN) {
+                // A list where a key was expected
+                skipList();
+                continue;
+            }
+            String key = key();
+            nextToken();
+            if (token == OPEN) {
+                depth++;
+                continue;
+            }
+            if (token == CLOSE || token == EOF) {
+                // A key without a value
+                if (token == CLOSE && depth-- == 0) {
+                    break;
+                }
+                continue;
+            }
+            Object value = value();
+            if (key.equalsIgnoreCase("id")) {
+                if (depth == 0) {
+                    id = value.toString();
+                }
+            } else if (key.equalsIgnoreCase("label")) {
+                if (depth == 0) {
+                    label = value.toString();
+                }
+            } else if (key.equalsIgnoreCase("x") && value instanceof Number) {
+                x = ((Number) value).floatValue();
+                hasX = true;
+            } else if (key.equalsIgnoreCase("y") && value instanceof Number) {
+                y = ((Number) value).floatValue();
+                hasY = true;
+            } else if (key.equalsIgnoreCase("z") && value instanceof Number) {
+                z = ((Number) value).floatValue();
+                hasZ = true;
+            } else if (key.equalsIgnoreCase("w") && value instanceof Number) {
+                nodeSize = ((Number) value).floatValue();
+                hasSize = true;
+            } else if (key.equalsIgnoreCase("h") || key.equalsIgnoreCase("d")) {
+                // Only the width is used as size
+            } else if (key.equalsIgnoreCase("fill")) {
+                fill = value;
+            } else if (isProjected(key)) {
+                attributeKeys.add(key);
+                attributeValues.add(value instanceof String ? intern(key, (String) value) : value);
+            }
+        }
+
+        NodeDraft nodeDraft;
+        if (id != null) {
+            nodeDraft = container.factory().newNodeDraft(id);
+        } else {
+            nodeDraft = container.factory().newNodeDraft();
+            report.logIssue(new Issue(NbBundle.getMessage(getClass(), "importerFastGML_error_nodeidmissing"), Issue.Level.WARNING));
+        }
+        if (label != null) {
+            nodeDraft.setLabel(label);
+        }
+        if (hasX) {
+            nodeDraft.setX(x);
+        }
+        if (hasY) {
+            nodeDraft.setY(y);
+        }
+        if (hasZ) {
+            nodeDraft.setZ(z);
+        }
+        if (hasSize) {
+            nodeDraft.setSize(nodeSize);
+        }
+        if (fill instanceof String) {
+            nodeDraft.setColor((String) fill);
+        } else if (fill instanceof Number) {
+            nodeDraft.setColor(new Color(((Number) fill).intValue()));
+        }
+        for (int i = 0; i < attributeKeys.size(); i++) {
+            nodeDraft.setValue(attributeKeys.get(i), attributeValues.get(i));
+        }
+        container.addNode(nodeDraft);
+    }
+
+    private void parseEdge() throws IOException {
+        String id = null;
+        String source = null;
+        String target = null;
+        String label = null;
+        Double weight = null;
+        Object directed = null;
+        boolean hasDirected = false;
+        Object fill = null;
+        attributeKeys.clear();
+        attributeValues.clear();
+
+        // Same rules as ImporterGML.parseEdge and addEdgeAttributes: source, target,
+        // weight and label are only taken at the top level and with their exact case
+        int depth = 0;
+        while (true) {
+            if (nextToken() == EOF) {
+                break;
+            }
+            if (token == CLOSE) {
+                if (depth-- == 0) {
+                    break;
+                }
+                continue;
+            }
+            if (token == OPEN) {
+                skipList();
+                continue;
+            }
+            String key = key();
+            nextToken();
+            if (token == OPEN) {
+                depth++;
+                continue;
+            }
+            if (token == CLOSE || token == EOF) {
+                if (token == CLOSE && depth-- == 0) {
+                    break;
+                }
+                continue;
+            }
+            Object value = value();
+            if (key.equalsIgnoreCase("id")) {
+                if (depth == 0) {
+                    id = value.toString();
+                }
+            } else if (key.equalsIgnoreCase("source") || key.equalsIgnoreCase("target")
+                    || key.equalsIgnoreCase("value") || key.equalsIgnoreCase("weight")
+                    || key.equalsIgnoreCase("label")) {
+                if (depth > 0) {
+                    continue;
+                }
+                switch (key) {
+                    case "source":
+                        source = value.toString();
+                        break;
+                    case "target":
+                        target = value.toString();
+                        break;
+                    case "value":
+                    case "weight":
+                        if (value instanceof Number) {
+                            weight = ((Number) value).doubleValue();
+                        }
+                        break;
+                    case "label":
+                        label = value.toString();
+                        break;
+                    default:
+                        break;
+                }
+            } else if (key.equalsIgnoreCase("directed")) {
+                directed = value;
+                hasDirected = true;
+            } else if (key.equalsIgnoreCase("fill")) {
+                fill = value;
+            } else if (isProjected(key)) {
+                attributeKeys.add(key);
+                attributeValues.add(value instanceof String ? intern(key, (String) value) : value);
+            }
+        }
+
+        EdgeDraft edgeDraft = id != null ? container.factory().newEdgeDraft(id) : container.factory().newEdgeDraft();
+        if (source != null) {
+            edgeDraft.setSource(container.getNode(source));
+        }
+        if (target != null) {
+            edgeDraft.setTarget(container.getNode(target));
+        }
+        if (weight != null) {
+            edgeDraft.setWeight(weight);
+        }
+        if (label != null) {
+            edgeDraft.setLabel(intern("label", label));
+        }
+        if (hasDirected) {
+            if (directed instanceof Number) {
+                edgeDraft.setDirection(((Number) directed).intValue() == 1 ? EdgeDirection.DIRECTED : EdgeDirection.UNDIRECTED);
+            } else {
+                report.logIssue(new Issue(
+                    NbBundle.getMessage(getClass(), "importerFastGML_error_directedparse", id != null ? id : ""),
+                    Issue.Level.WARNING));
+            }
+        }
+        if (fill instanceof String) {
+            edgeDraft.setColor((String) fill);
+        } else if (fill instanceof Number) {
+            edgeDraft.setColor(new Color(((Number) fill).intValue()));
+        }
+        for (int i = 0; i < attributeKeys.size(); i++) {
+            edgeDraft.setValue(attributeKeys.get(i), attributeValues.get(i));
+        }
+        container.addEdge(edgeDraft);
+    }
+
+    /*
+     * Reads tokens up to the end of the current value, e.g. after a key whose value is not used
+     */
+    private void skipRest() throws IOException {
+        if (token == OPEN) {
+            skipList();
+        }
+    }
+
+    /*
+     * Skips to the bracket closing the list that was just opened
+     */
+    private void skipList() throws IOException {
+        int depth = 1;
+        while (depth > 0 && nextToken() != EOF) {
+            if (token == OPEN) {
+                depth++;
+            } else if (token == CLOSE) {
+                depth--;
+            }
+        }
+    }
+
+    private void reportProgress() {
+        long position = consumed + buf.position();
+        if (size > 0 && position >= nextProgress) {
+            Progress.progress(progressTicket, (int) (100 * position / size));
+            nextProgress = position + size / 100;
+        }
+    }
+
+    // ---- Values
+
+    private Object value() {
+        return token == QUOTED ? new String(scratch, 0, length, StandardCharsets.UTF_8) : wordValue();
+    }
+
+    /*
+     * Long.valueOf, then Double.valueOf, then the string, like the stock tokenizer.
+     * Plain integers and decimals are parsed from the bytes without making a String.
+     */
+    private Object wordValue() {
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (scratch[0] == '-' || scratch[0] == '+')) {
+            negative = scratch[0] == '-';
+            i = 1;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fraction = -1;
+        for (; i < length; i++) {
+            byte b = scratch[i];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+            } else if (b == '.' && fraction < 0) {
+                fraction = i;
+            } else {
+                break;
+            }
+        }
+        if (i == length && digits > 0 && digits <= 15) {
+            if (fraction < 0) {
+                return negative ? -mantissa : mantissa;
+            }
+            // Exact: the mantissa and the power of ten are both exact doubles, so one division rounds correctly
+            int decimals = length - fraction - 1;
+            if (decimals <= 22) {
+                double value = mantissa / POWERS_OF_TEN[decimals];
+                return negative ? -value : value;
+            }
+        }
+        String word = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        try {
+            return Long.valueOf(word);
+        } catch (NumberFormatException e) {
+            // Not an integer
+        }
+        try {
+            return Double.valueOf(word);
+        } catch (NumberFormatException e) {
+            return word;
+        }
+    }
+
+    private String intern(String column, String value) {
+        return dictionary == null ? value : dictionary.intern(column, value);
+    }
+
+    private boolean isProjected(String key) {
+        return columns == null || columns.contains(key.toLowerCase(Locale.ROOT));
+    }
+
+    private String key() {
+        return keys.get(scratch, length);
+    }
+
+    // ---- Tokenizer
+
+    private int nextToken() throws IOException {
+        int b = nextByte();
+        while (b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f') {
+            b = nextByte();
+        }
+        length = 0;
+        switch (b) {
+            case -1:
+                return token = EOF;
+            case '[':
+                return token = OPEN;
+            case ']':
+                return token = CLOSE;
+            case '"':
+                // Quotes are not escaped in GML, &quot; is used instead
+                while ((b = nextByte()) != -1 && b != '"') {
+                    append(b);
+                }
+                return token = QUOTED;
+            default:
+                append(b);
+                while ((b = peekByte()) != -1 && b != ' ' && b != '\n' && b != '\r' && b != '\t' && b != '\f' && b != '[' && b != ']') {
+                    append(nextByte());
+                }
+                return token = WORD;
+        }
+    }
+
+    private void append(int b) {
+        if (length == scratch.length) {
+            scratch = Arrays.copyOf(scratch, scratch.length * 2);
+        }
+        scratch[length++] = (byte) b;
+    }
+
+    private int nextByte() throws IOException {
+        if (!buf.hasRemaining() && !refill()) {
+            return -1;
+        }
+        return buf.get() & 0xff;
+    }
+
+    private int peekByte() throws IOException {
+        if (!buf.hasRemaining() && !refill()) {
+            return -1;
+        }
+        return buf.get(buf.position()) & 0xff;
+    }
+
+    private boolean refill() throws IOException {
+        consumed += buf.limit();
+        if (channel != null) {
+            if (consumed >= size) {
+                return false;
+            }
+            // Mapped a window at a time, so files over 2GB work too
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, consumed, Math.min(WINDOW_BYTES, size - consumed));
+            return true;
+        }
+        int n = stream.read(streamBytes);
+        if (n <= 0) {
+            buf = ByteBuffer.wrap(streamBytes, 0, 0);
+            return false;
+        }
+        buf = ByteBuffer.wrap(streamBytes, 0, n);
+        return true;
+    }
+
+    /**
+     * Keys by their bytes, so repeated keys do not make new strings
+     */
+    private static class KeyTable {
+        private byte[][] bytes = new byte[64][];
+        private String[] strings = new String[64];
+        private int count = 0;
+
+        String get(byte[] key, int length) {
+            int hash = 1;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + key[i];
+            }
+            int mask = bytes.length - 1;
+            int slot = hash & mask;
+            while (bytes[slot] != null) {
+                if (Arrays.equals(bytes[slot], 0, bytes[slot].length, key, 0, length)) {
+                    return strings[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            var copy = Arrays.copyOf(key, length);
+            String string = new String(copy, StandardCharsets.UTF_8);
+            bytes[slot] = copy;
+            strings[slot] = string;
+            if (++count * 2 > bytes.length) {
+                grow();
+            }
+            return string;
+        }
+
+        private void grow() {
+            var oldBytes = bytes;
+            var oldStrings = strings;
+            bytes = new byte[oldBytes.length * 2][];
+            strings = new String[oldStrings.length * 2];
+            int mask = bytes.length - 1;
+            for (int i = 0; i < oldBytes.length; i++) {
+                if (oldBytes[i] == null) {
+                    continue;
+                }
+                int hash = 1;
+                for (byte b : oldBytes[i]) {
+                    hash = 31 * hash + b;
+                }
+                int slot = hash & mask;
+                while (bytes[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                bytes[slot] = oldBytes[i];
+                strings[slot] = oldStrings[i];
+            }
+        }
+    }
+
+    @Override
+    public void setColumns(Set<String> columns) {
+        this.columns = columns;
+    }
+
+    @Override
+    public void setDictionary(StringDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public void setFile(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public void setReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public ContainerLoader getContainer() {
+        return container;
+    }
+
+    @Override
+    public Report getReport() {
+        return report;
+    }
+
+    @Override
+    public boolean cancel() {
+        cancel = true;
+        return true;
+    }
+
+    @Override
+    public void setProgressTicket(ProgressTicket progressTicket) {
+        this.progressTicket = progressTicket;
+    }
+}
@@ -0,0 +1,318 @@
+package importer;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Set;
+
+import org.gephi.io.importer.api.ContainerLoader;
+import org.gephi.io.importer.api.EdgeDirection;
+import org.gephi.io.importer.api.EdgeDirectionDefault;
+import org.gephi.io.importer.api.EdgeDraft;
+import org.gephi.io.importer.api.Issue;
+import org.gephi.io.importer.api.NodeDraft;
+import org.gephi.io.importer.api.Report;
+import org.gephi.io.importer.spi.FileImporter;
+import org.gephi.utils.longtask.spi.LongTask;
+import org.gephi.utils.progress.Progress;
+import org.gephi.utils.progress.ProgressTicket;
+import org.openide.util.NbBundle;
+
+/**
+ * Reads the columnar binary format described in {@link GCBFormat}.
+ * <p>
+ * Every section is mapped with {@link FileChannel#map} and read with absolute gets,
+ * so nothing is parsed and the only allocations are the drafts handed to the container.
+ */
+public class ImporterGCB implements FileImporter, FileImporter.FileAware, LongTask, ProjectingImporter, InterningImporter {
+
+    private Reader reader;
+    private File file;
+    private ContainerLoader container;
+    private Report report;
+    private ProgressTicket progressTicket;
+    private boolean cancel = false;
+    private Set<String> columns = null;
+    private StringDictionary dictionary = null;
+
+    private FileChannel channel;
+    private long position = 0;
+
+    @Override
+    public boolean execute(ContainerLoader container) {
+        this.container = container;
+        this.report = new Report();
+        container.setEdgeDefault(EdgeDirectionDefault.DIRECTED);
+
+        try {
+            // Binary content is read from the file, the text reader is not used
+            if (reader != null) {
+                reader.close();
+            }
+            if (file == null) {
+                report.logIssue(new Issue(NbBundle.getMessage(getClass(), "importerGCB_error_nofile"), Issue.Level.SEVERE));
+                return false;
+            }
+            try (var ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                channel = ch;
+                importData();
+            }
+            return true;
+        } catch (Exception e) {
+            report.logIssue(new Issue(NbBundle.getMessage(getClass(), "importerGCB_error_parsing", String.valueOf(e)), Issue.Level.SEVERE));
+            return false;
+        } finally {
+            channel = null;
+        }
+    }
+
+    private void importData() throws IOException {
+        Progress.start(progressTicket);
+
+        var header = nextSection();
+        if (header.getInt(0) != GCBFormat.MAGIC) {
+            throw new IOException("Not a GCB file");
+        }
+        if (header.getInt(4) != GCBFormat.VERSION) {
+            throw new IOException("Unsupported GCB version "+header.getInt(4));
+        }
+        int nodeCount = header.getInt(8);
+        int edgeCount = header.getInt(12);
+        int nodeColumnCount = header.getInt(16);
+        int edgeColumnCount = header.getInt(20);
+        Progress.switchToDeterminate(progressTicket, nodeCount + edgeCount);
+
+        var ids = new GCBFormat.StringTable(nextSection(), 0, nodeCount);
+        var nodeLabels = new GCBFormat.StringTable(nextSection(), 0, nodeCount);
+        var geometry = nextSection();
+        var edges = nextSection();
+        var edgeLabels = new GCBFormat.StringTable(nextSection(), 0, edgeCount);
+        // Sections of skipped columns are mapped but never read
+        var nodeColumnList = new ArrayList<ColumnReader>();
+        for (int c = 0; c < nodeColumnCount; c++) {
+            var column = new ColumnReader(nextSection(), nodeCount);
+            if (isProjected(column.id)) {
+                container.addNodeColumn(column.id, GCBFormat.classOf(column.type)).setTitle(column.title);
+                nodeColumnList.add(column);
+            }
+        }
+        var edgeColumnList = new ArrayList<ColumnReader>();
+        for (int c = 0; c < edgeColumnCount; c++) {
+            var column = new ColumnReader(nextSection(), edgeCount);
+            if (isProjected(column.id)) {
+                container.addEdgeColumn(column.id, GCBFormat.classOf(column.type)).setTitle(column.title);
+                edgeColumnList.add(column);
+            }
+        }
+        var nodeColumns = nodeColumnList.toArray(new ColumnReader[0]);
+        var edgeColumns = edgeColumnList.toArray(new ColumnReader[0]);
+
+        Progress.setDisplayName(progressTicket, "Importing nodes");
+        // Drafts are kept by index, edges refer to nodes by their position in the file
+        var nodes = new NodeDraft[nodeCount];
+        int xStart = 0;
+        int yStart = 4 * nodeCount;
+        int zStart = 8 * nodeCount;
+        int sizeStart = 12 * nodeCount;
+        int colorStart = 16 * nodeCount;
+        for (int i = 0; i < nodeCount; i++) {
+            if (cancel) {
+                return;
+            }
+            NodeDraft nodeDraft = container.factory().newNodeDraft(ids.get(i));
+            String label = nodeLabels.get(i);
+            if (label != null) {
+                nodeDraft.setLabel(label);
+            }
+            nodeDraft.setX(geometry.getFloat(xStart + 4 * i));
+            nodeDraft.setY(geometry.getFloat(yStart + 4 * i));
+            nodeDraft.setZ(geometry.getFloat(zStart + 4 * i));
+            nodeDraft.setSize(geometry.getFloat(sizeStart + 4 * i));
+            nodeDraft.setColor(new Color(geometry.getInt(colorStart + 4 * i), true));
+            for (var column : nodeColumns) {
+                Object value = intern(column, column.get(i));
+                if (value != null) {
+                    nodeDraft.setValue(column.id, value);
+                }
+            }
+            container.addNode(nodeDraft);
+            nodes[i] = nodeDraft;
+            Progress.progress(progressTicket);
+        }
+
+        Progress.setDisplayName(progressTicket, "Importing edges");
+        int sourceStart = 0;
+        int targetStart = 4 * edgeCount;
+        int weightStart = 8 * edgeCount;
+        int directedStart = 16 * edgeCount;
+        for (int i = 0; i < edgeCount; i++) {
+            if (cancel) {
+                return;
+            }
+            int source = edges.getInt(sourceStart + 4 * i);
+            int target = edges.getInt(targetStart + 4 * i);
+            if (source < 0 || source >= nodeCount || target < 0 || target >= nodeCount) {
+                report.logIssue(new Issue(
+                    NbBundle.getMessage(getClass(), "importerGCB_error_badedge", i, source, target),
+                    Issue.Level.WARNING));
+                continue;
+            }
+            EdgeDraft edgeDraft = container.factory().newEdgeDraft();
+            edgeDraft.setSource(nodes[source]);
+            edgeDraft.setTarget(nodes[target]);
+            edgeDraft.setWeight(edges.getDouble(weightStart + 8 * i));
+            edgeDraft.setDirection(edges.get(directedStart + i) != 0 ? EdgeDirection.DIRECTED : EdgeDirection.UNDIRECTED);
+            String label = intern("label", edgeLabels.get(i));
+            if (label != null) {
+                edgeDraft.setLabel(label);
+            }
+            for (var column : edgeColumns) {
+                Object value = intern(column, column.get(i));
+                if (value != null) {
+                    edgeDraft.setValue(column.id, value);
+                }
+            }
+            container.addEdge(edgeDraft);
+            Progress.progress(progressTicket);
+        }
+
+        if (dictionary != null) {
+            report.log(dictionary.summary());
+        }
+        Progress.finish(progressTicket);
+    }
+
+    private Object intern(ColumnReader column, Object value) {
+        return dictionary != null && value instanceof String ? dictionary.intern(column.id, (String) value) : value;
+    }
+
+    private String intern(String column, String value) {
+        return dictionary == null ? value : dictionary.intern(column, value);
+    }
+
+    private boolean isProjected(String columnId) {
+        return columns == null || columns.contains(columnId.toLowerCase(Locale.ROOT));
+    }
+
+    /*
+     * Maps the next length-prefixed section and moves past its padding
+     */
+    private ByteBuffer nextSection() throws IOException {
+        var lengthBuf = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        while (lengthBuf.hasRemaining()) {
+            if (channel.read(lengthBuf, position + lengthBuf.position()) < 0) {
+                throw new IOException("Truncated GCB file");
+            }
+        }
+        long length = lengthBuf.getLong(0);
+        if (length < 0 || length > Integer.MAX_VALUE || position + 8 + length > channel.size()) {
+            throw new IOException("Bad GCB section length "+length);
+        }
+        MappedByteBuffer section = channel.map(FileChannel.MapMode.READ_ONLY, position + 8, length);
+        position += 8 + GCBFormat.padded(length);
+        return section.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static class ColumnReader {
+        final String id;
+        final String title;
+        final byte type;
+        private final ByteBuffer buf;
+        private final int dataStart;
+        private final int valuesStart;
+        private final GCBFormat.StringTable strings;
+
+        ColumnReader(ByteBuffer buf, int count) {
+            this.buf = buf;
+            this.id = readString(buf, 0);
+            int titleStart = 4 + buf.getInt(0);
+            this.title = readString(buf, titleStart);
+            int typeStart = titleStart + 4 + buf.getInt(titleStart);
+            this.type = buf.get(typeStart);
+            this.dataStart = (int) GCBFormat.padded(typeStart + 1);
+            this.valuesStart = dataStart + (int) GCBFormat.padded(GCBFormat.bitmapBytes(count));
+            this.strings = type == GCBFormat.TYPE_STRING ? new GCBFormat.StringTable(buf, dataStart, count) : null;
+        }
+
+        private static String readString(ByteBuffer buf, int start) {
+            var bytes = new byte[buf.getInt(start)];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buf.get(start + 4 + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        Object get(int i) {
+            if (strings != null) {
+                return strings.get(i);
+            }
+            if (!GCBFormat.isPresent(buf, dataStart, i)) {
+                return null;
+            }
+            switch (type) {
+                case GCBFormat.TYPE_INT:
+                    return buf.getInt(valuesStart + 4 * i);
+                case GCBFormat.TYPE_LONG:
+                    return buf.getLong(valuesStart + 8 * i);
+                case GCBFormat.TYPE_FLOAT:
+                    return buf.getFloat(valuesStart + 4 * i);
+                case GCBFormat.TYPE_DOUBLE:
+                    return buf.getDouble(valuesStart + 8 * i);
+                case GCBFormat.TYPE_BOOLEAN:
+                    return buf.get(valuesStart + i) != 0;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    @Override
+    public void setColumns(Set<String> columns) {
+        this.columns = columns;
+    }
+
+    @Override
+    public void setDictionary(StringDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public void setReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public void setFile(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public ContainerLoader getContainer() {
+        return container;
+    }
+
+    @Override
+    public Report getReport() {
+        return report;
+    }
+
+    @Override
+    public boolean cancel() {
+        cancel = true;
+        return true;
+    }
+
+    @Override
+    public void setProgressTicket(ProgressTicket progressTicket) {
+        this.progressTicket = progressTicket;
+    }
+}
@@ -1,9 +1,12 @@
 package importer;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
 import org.gephi.io.importer.api.ContainerLoader;
 import org.gephi.io.importer.api.EdgeDirectionDefault;
@@ -17,18 +20,33 @@ import org.gephi.utils.progress.Progress;
 import org.gephi.utils.progress.ProgressTicket;
 import org.openide.util.NbBundle;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
-public class ImporterJSON implements FileImporter, LongTask {
+public class ImporterJSON implements FileImporter, FileImporter.FileAware, LongTask, ProjectingImporter,
+        InterningImporter, DecompressingImporter {
 
     private Reader reader;
+    private File file;
     private ContainerLoader container;
     private Report report;
     private ProgressTicket progressTicket;
     private boolean cancel = false;
+    private Set<String> columns = null;
+    private int typeSample = 1000;
+    private boolean floatColumns = false;
+    private StringDictionary dictionary = null;
+
+    private boolean nodesImported = false;
+    private int nodeCount = 0;
+    private final List<PendingEdge> deferredEdges = new ArrayList<>();
+    private final List<String> keys = new ArrayList<>();
+    private final List<Object> values = new ArrayList<>();
+    private final List<String> sampledKeys = new ArrayList<>();
+    private final List<Object> sampledValues = new ArrayList<>();
+    // Null when typeSample is 0 and every number is a Double
+    private JsonTypeSampler nodeSampler = null;
+    private JsonTypeSampler edgeSampler = null;
 
     @Override
     public boolean execute(ContainerLoader container) {
@@ -40,7 +58,7 @@ public class ImporterJSON implements FileImporter, LongTask {
             importData();
             return true;
         } catch (Exception e) {
-            report.logIssue(new Issue(NbBundle.getMessage(getClass(), "importerJSON_error_parsing"), Issue.Level.SEVERE));
+            report.logIssue(new Issue(NbBundle.getMessage(getClass(), "importerJSON_error_parsing", String.valueOf(e)), Issue.Level.SEVERE));
             return false;
         } finally {
             try {
@@ -54,121 +72,321 @@ public class ImporterJSON implements FileImporter, LongTask {
 
     private void importData() throws IOException {
         Progress.start(progressTicket);
-        
-        // Use Gson's JsonParser.parse() instead of deprecated constructor
-        JsonObject json = JsonParser.parseReader(reader).getAsJsonObject();
-
-        // Import nodes
-        if (json.has("nodes")) {
-            JsonArray nodesArray = json.getAsJsonArray("nodes");
-            Progress.setDisplayName(progressTicket, "Importing nodes");
-            Progress.switchToDeterminate(progressTicket, nodesArray.size());
-            
-            Map<String, NodeDraft> nodeMap = new HashMap<>();
-            int nodeCount = 0;
-            
-            for (JsonElement nodeElement : nodesArray) {
-                if (cancel) {
-                    return;
-                }
-                
-                JsonObject nodeObject = nodeElement.getAsJsonObject();
-                String id = nodeObject.has("id") ? nodeObject.get("id").getAsString() : "node_" + nodeCount;
-                
-                NodeDraft nodeDraft = container.factory().newNodeDraft(id);
-                
-                if (nodeObject.has("label")) {
-                    nodeDraft.setLabel(nodeObject.get("label").getAsString());
-                }
-                
-                // Handle node attributes
-                for (Map.Entry<String, JsonElement> entry : nodeObject.entrySet()) {
-                    String key = entry.getKey();
-                    if (!key.equals("id") && !key.equals("label")) {
-                        JsonElement value = entry.getValue();
-                        if (value.isJsonPrimitive()) {
-                            if (value.getAsJsonPrimitive().isString()) {
-                                nodeDraft.setValue(key, value.getAsString());
-                            } else if (value.getAsJsonPrimitive().isBoolean()) {
-                                nodeDraft.setValue(key, value.getAsBoolean());
-                            } else if (value.getAsJsonPrimitive().isNumber()) {
-                                nodeDraft.setValue(key, value.getAsDouble());
+        Progress.switchToIndeterminate(progressTicket);
+        if (typeSample > 0) {
+            nodeSampler = new JsonTypeSampler(this, typeSample, floatColumns);
+            edgeSampler = new JsonTypeSampler(this, typeSample, floatColumns);
+        }
+
+        if (reader == null) {
+            // File-aware importers are given the file and no reader, a compressed file is read as it is decompressed
+            reader = CompressedInput.openReader(file);
+        }
+
+        // Stream tokens instead of building a DOM, so only the container grows with the file.
+        // Edges met before "nodes" is finished are kept in deferredEdges until their nodes exist.
+        JsonReader json = new JsonReader(reader);
+        json.beginObject();
+        while (json.hasNext()) {
+            if (cancel) {
+                return;
+            }
+            String name = json.nextName();
+            switch (name) {
+                case "nodes":
+                    importNodes(json);
+                    nodesImported = true;
+                    break;
+                case "edges":
+                case "relationships":
+                    importEdges(json);
+                    break;
+                default:
+                    json.skipValue();
+                    break;
+            }
+        }
+
+        for (PendingEdge pending : deferredEdges) {
+            if (cancel) {
+                return;
+            }
+            addEdge(pending.draft, pending.sourceId, pending.targetId);
+        }
+        deferredEdges.clear();
+
+        // Every value has been seen, so the sampled columns get their final type
+        if (nodeSampler != null) {
+            report.log("Node column types: "+nodeSampler.finish(container, true));
+            report.log("Edge column types: "+edgeSampler.finish(container, false));
+        }
+
+        if (dictionary != null) {
+            report.log(dictionary.summary());
+        }
+        Progress.finish(progressTicket);
+    }
+
+    private void importNodes(JsonReader json) throws IOException {
+        Progress.setDisplayName(progressTicket, "Importing nodes");
+        json.beginArray();
+        while (json.hasNext()) {
+            if (cancel) {
+                return;
+            }
+            if (json.peek() != JsonToken.BEGIN_OBJECT) {
+                json.skipValue();
+                continue;
+            }
+
+            // The id may come after other fields, so attributes are collected first
+            String id = null;
+            String label = null;
+            keys.clear();
+            values.clear();
+            sampledKeys.clear();
+            sampledValues.clear();
+            if (nodeSampler != null) {
+                nodeSampler.nextElement();
+            }
+            json.beginObject();
+            while (json.hasNext()) {
+                String key = json.nextName();
+                switch (key) {
+                    case "id":
+                        id = readString(json);
+                        break;
+                    case "label":
+                        label = readString(json);
+                        break;
+                    default:
+                        if (!isProjected(key)) {
+                            json.skipValue();
+                            break;
+                        }
+                        if (nodeSampler != null && nodeSampler.takes(key)) {
+                            Object value = nodeSampler.read(json, key);
+                            if (value != null) {
+                                sampledKeys.add(key);
+                                sampledValues.add(value);
                             }
+                            break;
                         }
-                    }
+                        Object value = readValue(json, key);
+                        if (value != null) {
+                            keys.add(key);
+                            values.add(value);
+                        }
+                        break;
                 }
-                
-                nodeMap.put(id, nodeDraft);
-                container.addNode(nodeDraft);
-                nodeCount++;
-                Progress.progress(progressTicket);
-            }
-            
-            // Import edges
-            if (json.has("edges") || json.has("relationships")) {
-                JsonArray edgesArray = json.has("edges") ? json.getAsJsonArray("edges") : json.getAsJsonArray("relationships");
-                Progress.setDisplayName(progressTicket, "Importing edges");
-                Progress.switchToDeterminate(progressTicket, edgesArray.size());
-                
-                int edgeCount = 0;
-                
-                for (JsonElement edgeElement : edgesArray) {
-                    if (cancel) {
-                        return;
-                    }
-                    
-                    JsonObject edgeObject = edgeElement.getAsJsonObject();
-                    String sourceId = edgeObject.has("source") ? edgeObject.get("source").getAsString() : 
-                                    edgeObject.has("from") ? edgeObject.get("from").getAsString() : null;
-                    String targetId = edgeObject.has("target") ? edgeObject.get("target").getAsString() : 
-                                    edgeObject.has("to") ? edgeObject.get("to").getAsString() : null;
-                    
-                    if (sourceId != null && targetId != null && nodeMap.containsKey(sourceId) && nodeMap.containsKey(targetId)) {
-                        EdgeDraft edgeDraft = container.factory().newEdgeDraft();
-                        edgeDraft.setSource(nodeMap.get(sourceId));
-                        edgeDraft.setTarget(nodeMap.get(targetId));
-                        
-                        if (edgeObject.has("label")) {
-                            edgeDraft.setLabel(edgeObject.get("label").getAsString());
+            }
+            json.endObject();
+
+            if (id == null) {
+                id = "node_" + nodeCount;
+            } else if (!deferredEdges.isEmpty()) {
+                // Shares the id string with the deferred edges that point to this node
+                id = intern(StringDictionary.IDS, id);
+            }
+            NodeDraft nodeDraft = container.factory().newNodeDraft(id);
+            if (label != null) {
+                nodeDraft.setLabel(label);
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                nodeDraft.setValue(keys.get(i), values.get(i));
+            }
+            for (int i = 0; i < sampledKeys.size(); i++) {
+                nodeSampler.keep(sampledKeys.get(i), nodeDraft, sampledValues.get(i));
+            }
+
+            container.addNode(nodeDraft);
+            nodeCount++;
+            Progress.progress(progressTicket);
+        }
+        json.endArray();
+    }
+
+    private void importEdges(JsonReader json) throws IOException {
+        Progress.setDisplayName(progressTicket, "Importing edges");
+        json.beginArray();
+        while (json.hasNext()) {
+            if (cancel) {
+                return;
+            }
+            if (json.peek() != JsonToken.BEGIN_OBJECT) {
+                json.skipValue();
+                continue;
+            }
+
+            String source = null;
+            String from = null;
+            String target = null;
+            String to = null;
+            EdgeDraft edgeDraft = container.factory().newEdgeDraft();
+            if (edgeSampler != null) {
+                edgeSampler.nextElement();
+            }
+            json.beginObject();
+            while (json.hasNext()) {
+                String key = json.nextName();
+                switch (key) {
+                    case "source":
+                        source = readString(json);
+                        break;
+                    case "from":
+                        from = readString(json);
+                        break;
+                    case "target":
+                        target = readString(json);
+                        break;
+                    case "to":
+                        to = readString(json);
+                        break;
+                    case "label":
+                        String label = intern("label", readString(json));
+                        if (label != null) {
+                            edgeDraft.setLabel(label);
                         }
-                        
+                        break;
+                    case "weight":
                         // Handle edge weight
-                        if (edgeObject.has("weight") && edgeObject.get("weight").isJsonPrimitive() && 
-                            edgeObject.get("weight").getAsJsonPrimitive().isNumber()) {
-                            edgeDraft.setWeight(edgeObject.get("weight").getAsDouble());
+                        if (json.peek() == JsonToken.NUMBER) {
+                            edgeDraft.setWeight(json.nextDouble());
+                        } else {
+                            json.skipValue();
                         }
-                        
+                        break;
+                    default:
                         // Handle edge attributes
-                        for (Map.Entry<String, JsonElement> entry : edgeObject.entrySet()) {
-                            String key = entry.getKey();
-                            if (!key.equals("source") && !key.equals("target") && !key.equals("from") && 
-                                !key.equals("to") && !key.equals("label") && !key.equals("weight")) {
-                                JsonElement value = entry.getValue();
-                                if (value.isJsonPrimitive()) {
-                                    if (value.getAsJsonPrimitive().isString()) {
-                                        edgeDraft.setValue(key, value.getAsString());
-                                    } else if (value.getAsJsonPrimitive().isBoolean()) {
-                                        edgeDraft.setValue(key, value.getAsBoolean());
-                                    } else if (value.getAsJsonPrimitive().isNumber()) {
-                                        edgeDraft.setValue(key, value.getAsDouble());
-                                    }
-                                }
+                        if (!isProjected(key)) {
+                            json.skipValue();
+                            break;
+                        }
+                        if (edgeSampler != null && edgeSampler.takes(key)) {
+                            Object value = edgeSampler.read(json, key);
+                            if (value != null) {
+                                edgeSampler.keep(key, edgeDraft, value);
                             }
+                            break;
+                        }
+                        Object value = readValue(json, key);
+                        if (value != null) {
+                            edgeDraft.setValue(key, value);
                         }
-                        
-                        container.addEdge(edgeDraft);
-                        edgeCount++;
-                    } else {
-                        report.logIssue(new Issue(
-                            NbBundle.getMessage(getClass(), "importerJSON_error_missingnodes", sourceId, targetId),
-                            Issue.Level.WARNING));
-                    }
-                    Progress.progress(progressTicket);
+                        break;
                 }
             }
+            json.endObject();
+
+            String sourceId = source != null ? source : from;
+            String targetId = target != null ? target : to;
+            if (nodesImported) {
+                addEdge(edgeDraft, sourceId, targetId);
+            } else {
+                // Kept until the nodes exist, so endpoints repeated over many edges are shared
+                deferredEdges.add(new PendingEdge(edgeDraft,
+                    intern(StringDictionary.IDS, sourceId), intern(StringDictionary.IDS, targetId)));
+            }
+            Progress.progress(progressTicket);
         }
-        
-        Progress.finish(progressTicket);
+        json.endArray();
+    }
+
+    private void addEdge(EdgeDraft edgeDraft, String sourceId, String targetId) {
+        if (sourceId != null && targetId != null && container.nodeExists(sourceId) && container.nodeExists(targetId)) {
+            edgeDraft.setSource(container.getNode(sourceId));
+            edgeDraft.setTarget(container.getNode(targetId));
+            container.addEdge(edgeDraft);
+        } else {
+            report.logIssue(new Issue(
+                NbBundle.getMessage(getClass(), "importerJSON_error_missingnodes", sourceId, targetId),
+                Issue.Level.WARNING));
+        }
+    }
+
+    /*
+     * Untyped path for keys that were not sampled: numbers are Doubles
+     */
+    private Object readValue(JsonReader json, String key) throws IOException {
+        Object value = readPrimitive(json);
+        return value instanceof String ? intern(key, (String) value) : value;
+    }
+
+    String intern(String column, String value) {
+        return dictionary == null ? value : dictionary.intern(column, value);
+    }
+
+    boolean isProjected(String key) {
+        return columns == null || columns.contains(key.toLowerCase(Locale.ROOT));
+    }
+
+    private static String readString(JsonReader json) throws IOException {
+        switch (json.peek()) {
+            case STRING:
+            case NUMBER:
+                return json.nextString();
+            case BOOLEAN:
+                return String.valueOf(json.nextBoolean());
+            default:
+                json.skipValue();
+                return null;
+        }
+    }
+
+    private static Object readPrimitive(JsonReader json) throws IOException {
+        switch (json.peek()) {
+            case STRING:
+                return json.nextString();
+            case BOOLEAN:
+                return json.nextBoolean();
+            case NUMBER:
+                return json.nextDouble();
+            default:
+                // Nested objects, arrays and nulls are not imported
+                json.skipValue();
+                return null;
+        }
+    }
+
+    private static class PendingEdge {
+        final EdgeDraft draft;
+        final String sourceId;
+        final String targetId;
+
+        PendingEdge(EdgeDraft draft, String sourceId, String targetId) {
+            this.draft = draft;
+            this.sourceId = sourceId;
+            this.targetId = targetId;
+        }
+    }
+
+    @Override
+    public void setColumns(Set<String> columns) {
+        this.columns = columns;
+    }
+
+    @Override
+    public void setDictionary(StringDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /*
+     * Elements per array whose keys get typed columns, 0 keeps every number a Double
+     */
+    public void setTypeSample(int typeSample) {
+        this.typeSample = typeSample;
+    }
+
+    /*
+     * Lets fractions with up to 7 significant digits take a Float column instead of a Double
+     */
+    public void setFloatColumns(boolean floatColumns) {
+        this.floatColumns = floatColumns;
+    }
+
+    @Override
+    public void setFile(File file) {
+        this.file = file;
     }
 
     @Override
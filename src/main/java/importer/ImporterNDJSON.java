@@ -0,0 +1,538 @@
+package importer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gephi.io.importer.api.ContainerLoader;
+import org.gephi.io.importer.api.EdgeDirection;
+import org.gephi.io.importer.api.EdgeDirectionDefault;
+import org.gephi.io.importer.api.EdgeDraft;
+import org.gephi.io.importer.api.Issue;
+import org.gephi.io.importer.api.NodeDraft;
+import org.gephi.io.importer.api.Report;
+import org.gephi.io.importer.spi.FileImporter;
+import org.gephi.utils.longtask.spi.LongTask;
+import org.gephi.utils.progress.Progress;
+import org.gephi.utils.progress.ProgressTicket;
+import org.openide.util.NbBundle;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Imports JSON Lines, one node or edge object per line:
+ * <pre>
+ * {"type":"node","id":"a","label":"A","group":"x"}
+ * {"type":"edge","source":"a","target":"b","weight":2}
+ * </pre>
+ * Lines are read in batches and parsed by worker threads, a single feeder adds them
+ * to the container in input order. Only a bounded window of batches is held, so the
+ * input can be a pipe of any length. An edge may come before its nodes, they are
+ * created by the edge and filled in when their own line arrives. Without a "type",
+ * objects with a source or a target are edges.
+ */
+public class ImporterNDJSON implements FileImporter, LongTask, ProjectingImporter, InterningImporter {
+
+    private static final int BATCH_LINES = 4096;
+    private static final int MAX_SAMPLE_LINES = 1 << 18;
+
+    private Reader reader;
+    private ContainerLoader container;
+    private Report report;
+    private ProgressTicket progressTicket;
+    private volatile boolean cancel = false;
+    private Set<String> columns = null;
+    private StringDictionary dictionary = null;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int typeSample = 1000;
+    private boolean floatColumns = false;
+
+    private Map<String, Class<?>> nodeTypes = Collections.emptyMap();
+    private Map<String, Class<?>> edgeTypes = Collections.emptyMap();
+    private final AtomicInteger badLines = new AtomicInteger();
+    private long lineCount = 0;
+    private int nodeCount = 0;
+    private int edgeCount = 0;
+    private int implicitNodes = 0;
+
+    @Override
+    public boolean execute(ContainerLoader container) {
+        this.container = container;
+        this.report = new Report();
+        container.setEdgeDefault(EdgeDirectionDefault.DIRECTED);
+
+        try (var lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader, 1 << 16)) {
+            importData(lines);
+            return true;
+        } catch (Exception e) {
+            // A line that failed on a parser thread is reported with its own message
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            report.logIssue(new Issue(NbBundle.getMessage(getClass(), "importerNDJSON_error_parsing", String.valueOf(cause)), Issue.Level.SEVERE));
+            return false;
+        }
+    }
+
+    private void importData(BufferedReader lines) throws IOException, InterruptedException, ExecutionException {
+        Progress.start(progressTicket);
+        Progress.switchToIndeterminate(progressTicket);
+        Progress.setDisplayName(progressTicket, "Importing lines");
+
+        // There is no second pass over a stream, so the types come from the first nodes and
+        // edges, read ahead up to MAX_SAMPLE_LINES lines in case all edges come first
+        var prefetched = new ArrayDeque<List<String>>();
+        if (typeSample > 0) {
+            var sampler = new LineSampler();
+            int prefetchedLines = 0;
+            List<String> sampled;
+            do {
+                sampled = readBatch(lines);
+                prefetched.add(sampled);
+                prefetchedLines += sampled.size();
+            } while (!sampled.isEmpty() && !sampler.sample(sampled) && prefetchedLines < MAX_SAMPLE_LINES);
+            sampler.declareTypes();
+        }
+        List<String> batch = prefetched.isEmpty() ? readBatch(lines) : prefetched.poll();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            var thread = new Thread(r, "ndjson-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            var inFlight = new ArrayDeque<Future<List<Line>>>();
+            while (!batch.isEmpty() || !inFlight.isEmpty()) {
+                while (!batch.isEmpty() && inFlight.size() < threads * 2) {
+                    var lineBatch = batch;
+                    inFlight.add(pool.submit(() -> parseBatch(lineBatch)));
+                    batch = prefetched.isEmpty() ? readBatch(lines) : prefetched.poll();
+                }
+                if (cancel) {
+                    return;
+                }
+                for (var line : inFlight.poll().get()) {
+                    add(line);
+                }
+                Progress.progress(progressTicket);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if (badLines.get() > 0) {
+            report.logIssue(new Issue(
+                NbBundle.getMessage(getClass(), "importerNDJSON_error_badlines", badLines.get()),
+                Issue.Level.WARNING));
+        }
+        report.log(String.format("%s lines, %s node lines, %s edge lines, %s nodes created by edges, %s threads",
+            lineCount, nodeCount, edgeCount, implicitNodes, threads));
+        if (dictionary != null) {
+            report.log(dictionary.summary());
+        }
+        Progress.finish(progressTicket);
+    }
+
+    private List<String> readBatch(BufferedReader lines) throws IOException {
+        var batch = new ArrayList<String>(BATCH_LINES);
+        String line;
+        while (batch.size() < BATCH_LINES && (line = lines.readLine()) != null) {
+            lineCount++;
+            if (!line.isBlank()) {
+                batch.add(line);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Collects value stats from the first typeSample node lines and edge lines
+     */
+    private class LineSampler {
+        final Map<String, JsonTypeSampler.ValueStats> nodeStats = new LinkedHashMap<>();
+        final Map<String, JsonTypeSampler.ValueStats> edgeStats = new LinkedHashMap<>();
+        int nodes = 0;
+        int edges = 0;
+
+        /*
+         * True once enough nodes and edges were seen
+         */
+        boolean sample(List<String> batch) {
+            int bad = badLines.get();
+            for (String text : batch) {
+                var line = parseRaw(text);
+                if (line == null || (line.edge ? edges : nodes) >= typeSample) {
+                    continue;
+                }
+                if (line.edge) {
+                    edges++;
+                } else {
+                    nodes++;
+                }
+                var stats = line.edge ? edgeStats : nodeStats;
+                for (int i = 0; i < line.keys.size(); i++) {
+                    var keyStats = stats.computeIfAbsent(line.keys.get(i), k -> new JsonTypeSampler.ValueStats());
+                    Object value = line.values.get(i);
+                    if (value instanceof NumberLiteral) {
+                        keyStats.addNumber(((NumberLiteral) value).literal);
+                    } else if (value instanceof Boolean) {
+                        keyStats.booleans = true;
+                    } else {
+                        keyStats.strings = true;
+                    }
+                }
+            }
+            // Bad lines are counted when they are parsed again
+            badLines.set(bad);
+            return nodes >= typeSample && edges >= typeSample;
+        }
+
+        void declareTypes() {
+            nodeTypes = types(nodeStats);
+            edgeTypes = types(edgeStats);
+            nodeTypes.forEach(container::addNodeColumn);
+            edgeTypes.forEach(container::addEdgeColumn);
+            report.log("Node column types: "+nodeTypes);
+            report.log("Edge column types: "+edgeTypes);
+        }
+    }
+
+    private Map<String, Class<?>> types(Map<String, JsonTypeSampler.ValueStats> stats) {
+        var types = new LinkedHashMap<String, Class<?>>();
+        stats.forEach((key, keyStats) -> {
+            Class<?> type = keyStats.type(floatColumns);
+            if (type != null) {
+                types.put(key, type);
+            }
+        });
+        return types;
+    }
+
+    /*
+     * Runs on a worker thread, the container is only touched by the feeder
+     */
+    private List<Line> parseBatch(List<String> batch) {
+        var parsed = new ArrayList<Line>(batch.size());
+        for (String text : batch) {
+            if (cancel) {
+                break;
+            }
+            var line = parseRaw(text);
+            if (line != null) {
+                convertValues(line);
+                parsed.add(line);
+            }
+        }
+        return parsed;
+    }
+
+    /*
+     * Reads one object, numbers are kept as their literal until the column type is known
+     */
+    private Line parseRaw(String text) {
+        var line = new Line();
+        String type = null;
+        try {
+            JsonReader json = new JsonReader(new StringReader(text));
+            json.beginObject();
+            while (json.hasNext()) {
+                String key = json.nextName();
+                switch (key) {
+                    case "type":
+                        type = readString(json);
+                        break;
+                    case "id":
+                        line.id = readString(json);
+                        break;
+                    case "source":
+                    case "from":
+                        line.source = readString(json);
+                        break;
+                    case "target":
+                    case "to":
+                        line.target = readString(json);
+                        break;
+                    case "label":
+                        line.label = readString(json);
+                        break;
+                    case "weight":
+                        if (json.peek() == JsonToken.NUMBER) {
+                            line.weight = json.nextDouble();
+                        } else {
+                            json.skipValue();
+                        }
+                        break;
+                    case "directed":
+                        if (json.peek() == JsonToken.BOOLEAN) {
+                            line.directed = json.nextBoolean();
+                        } else {
+                            json.skipValue();
+                        }
+                        break;
+                    default:
+                        Object value = isProjected(key) ? readRaw(json) : skip(json);
+                        if (value != null) {
+                            line.keys.add(key);
+                            line.values.add(value);
+                        }
+                        break;
+                }
+            }
+            json.endObject();
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            badLines.incrementAndGet();
+            return null;
+        }
+
+        if ("edge".equals(type)) {
+            line.edge = true;
+        } else if (!"node".equals(type)) {
+            line.edge = line.source != null || line.target != null;
+            if (type != null && isProjected("type")) {
+                // Not a line kind, so an ordinary attribute
+                line.keys.add("type");
+                line.values.add(type);
+            }
+        }
+        if (line.edge && (line.source == null || line.target == null)) {
+            badLines.incrementAndGet();
+            return null;
+        }
+        return line;
+    }
+
+    private void convertValues(Line line) {
+        var types = line.edge ? edgeTypes : nodeTypes;
+        for (int i = 0; i < line.values.size(); i++) {
+            String key = line.keys.get(i);
+            Object value = convert(key, line.values.get(i), types.get(key));
+            if (value instanceof String) {
+                value = intern(key, (String) value);
+            }
+            line.values.set(i, value);
+        }
+        if (line.edge && line.label != null) {
+            line.label = intern("label", line.label);
+        }
+    }
+
+    /*
+     * Same conversions as ImporterJSON: keys that were not sampled keep numbers as Double.
+     * A stream is read once and its columns are declared before the first line is added,
+     * so a value that does not fit its sampled type stops the import instead of being lost.
+     */
+    private Object convert(String key, Object value, Class<?> type) {
+        if (type == null) {
+            return value instanceof NumberLiteral ? Double.valueOf(((NumberLiteral) value).literal) : value;
+        }
+        String literal = value instanceof NumberLiteral ? ((NumberLiteral) value).literal : String.valueOf(value);
+        if (type == Boolean.class) {
+            if (value instanceof Boolean) {
+                return value;
+            }
+            throw badValue(key, literal, type);
+        }
+        if (type == String.class) {
+            return literal;
+        }
+        try {
+            if (type == Integer.class) {
+                return Integer.valueOf(literal);
+            } else if (type == Long.class) {
+                return Long.valueOf(literal);
+            } else if (type == Float.class) {
+                return Float.valueOf(literal);
+            }
+            return Double.valueOf(literal);
+        } catch (NumberFormatException e) {
+            throw badValue(key, literal, type);
+        }
+    }
+
+    private IllegalArgumentException badValue(String key, String literal, Class<?> type) {
+        return new IllegalArgumentException(NbBundle.getMessage(getClass(), "importerNDJSON_error_badvalue",
+            literal, key, type.getSimpleName()));
+    }
+
+    private void add(Line line) {
+        if (!line.edge) {
+            String id = line.id != null ? line.id : "node_" + nodeCount;
+            NodeDraft nodeDraft = container.nodeExists(id) ? container.getNode(id) : addNode(id);
+            if (line.label != null) {
+                nodeDraft.setLabel(line.label);
+            }
+            for (int i = 0; i < line.keys.size(); i++) {
+                if (line.values.get(i) != null) {
+                    nodeDraft.setValue(line.keys.get(i), line.values.get(i));
+                }
+            }
+            nodeCount++;
+            return;
+        }
+
+        EdgeDraft edgeDraft = line.id != null ? container.factory().newEdgeDraft(line.id) : container.factory().newEdgeDraft();
+        edgeDraft.setSource(endpoint(line.source));
+        edgeDraft.setTarget(endpoint(line.target));
+        if (line.weight != null) {
+            edgeDraft.setWeight(line.weight);
+        }
+        if (line.directed != null) {
+            edgeDraft.setDirection(line.directed ? EdgeDirection.DIRECTED : EdgeDirection.UNDIRECTED);
+        }
+        if (line.label != null) {
+            edgeDraft.setLabel(line.label);
+        }
+        for (int i = 0; i < line.keys.size(); i++) {
+            if (line.values.get(i) != null) {
+                edgeDraft.setValue(line.keys.get(i), line.values.get(i));
+            }
+        }
+        container.addEdge(edgeDraft);
+        edgeCount++;
+    }
+
+    private NodeDraft endpoint(String id) {
+        if (container.nodeExists(id)) {
+            return container.getNode(id);
+        }
+        implicitNodes++;
+        return addNode(id);
+    }
+
+    private NodeDraft addNode(String id) {
+        NodeDraft nodeDraft = container.factory().newNodeDraft(id);
+        container.addNode(nodeDraft);
+        return nodeDraft;
+    }
+
+    private String intern(String column, String value) {
+        return dictionary == null ? value : dictionary.intern(column, value);
+    }
+
+    private boolean isProjected(String key) {
+        return columns == null || columns.contains(key.toLowerCase(Locale.ROOT));
+    }
+
+    private static Object skip(JsonReader json) throws IOException {
+        json.skipValue();
+        return null;
+    }
+
+    private static String readString(JsonReader json) throws IOException {
+        switch (json.peek()) {
+            case STRING:
+            case NUMBER:
+                return json.nextString();
+            case BOOLEAN:
+                return String.valueOf(json.nextBoolean());
+            default:
+                json.skipValue();
+                return null;
+        }
+    }
+
+    private static Object readRaw(JsonReader json) throws IOException {
+        switch (json.peek()) {
+            case STRING:
+                return json.nextString();
+            case BOOLEAN:
+                return json.nextBoolean();
+            case NUMBER:
+                return new NumberLiteral(json.nextString());
+            default:
+                // Nested objects, arrays and nulls are not imported
+                json.skipValue();
+                return null;
+        }
+    }
+
+    /**
+     * One parsed line
+     */
+    private static class Line {
+        boolean edge;
+        String id;
+        String source;
+        String target;
+        String label;
+        Double weight;
+        Boolean directed;
+        final List<String> keys = new ArrayList<>();
+        final List<Object> values = new ArrayList<>();
+    }
+
+    private static class NumberLiteral {
+        final String literal;
+
+        NumberLiteral(String literal) {
+            this.literal = literal;
+        }
+    }
+
+    @Override
+    public void setColumns(Set<String> columns) {
+        this.columns = columns;
+    }
+
+    @Override
+    public void setDictionary(StringDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /*
+     * Lines sampled for column types, 0 keeps every number a Double
+     */
+    public void setTypeSample(int typeSample) {
+        this.typeSample = typeSample;
+    }
+
+    /*
+     * Lets fractions with up to 7 significant digits take a Float column instead of a Double
+     */
+    public void setFloatColumns(boolean floatColumns) {
+        this.floatColumns = floatColumns;
+    }
+
+    @Override
+    public void setReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public ContainerLoader getContainer() {
+        return container;
+    }
+
+    @Override
+    public Report getReport() {
+        return report;
+    }
+
+    @Override
+    public boolean cancel() {
+        cancel = true;
+        return true;
+    }
+
+    @Override
+    public void setProgressTicket(ProgressTicket progressTicket) {
+        this.progressTicket = progressTicket;
+    }
+}
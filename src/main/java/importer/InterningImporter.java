@@ -0,0 +1,13 @@
+package importer;
+
+/**
+ * An importer that can share repeated string values through a dictionary instead of
+ * keeping a copy per element.
+ */
+public interface InterningImporter {
+
+    /*
+     * Dictionary for string attribute values and ids, null keeps every string as read
+     */
+    void setDictionary(StringDictionary dictionary);
+}
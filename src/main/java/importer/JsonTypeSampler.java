@@ -0,0 +1,222 @@
+package importer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.gephi.io.importer.api.ContainerLoader;
+import org.gephi.io.importer.api.ElementDraft;
+
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Types the attributes of one JSON array ("nodes" or "edges") in the pass that imports it.
+ * Keys met in the first elements get a column with the narrowest type that holds all
+ * their values, so a later {@code 1.5} or {@code 3000000000} widens it instead of being
+ * lost. A column can't change its type once declared, so the values of these keys are
+ * kept aside and set on their drafts after the last element, when the types are known.
+ */
+class JsonTypeSampler {
+
+    private final int sampleSize;
+    private final boolean floats;
+    private final ImporterJSON importer;
+    private final Map<String, SampledColumn> columns = new LinkedHashMap<>();
+    private int elements = 0;
+
+    JsonTypeSampler(ImporterJSON importer, int sampleSize, boolean floats) {
+        this.importer = importer;
+        this.sampleSize = sampleSize;
+        this.floats = floats;
+    }
+
+    /*
+     * Called before each element of the array
+     */
+    void nextElement() {
+        elements++;
+    }
+
+    /*
+     * Whether the value of key is taken here, keys first met past the sample are not
+     */
+    boolean takes(String key) {
+        if (columns.containsKey(key)) {
+            return true;
+        }
+        if (elements > sampleSize) {
+            return false;
+        }
+        columns.put(key, new SampledColumn());
+        return true;
+    }
+
+    /*
+     * Reads the value of a key that takes() accepted, null for values that are not imported
+     */
+    Object read(JsonReader json, String key) throws IOException {
+        var stats = columns.get(key).stats;
+        switch (json.peek()) {
+            case STRING:
+                stats.strings = true;
+                return importer.intern(key, json.nextString());
+            case BOOLEAN:
+                stats.booleans = true;
+                return json.nextBoolean();
+            case NUMBER:
+                String literal = json.nextString();
+                stats.addNumber(literal);
+                return number(literal);
+            default:
+                // Nested objects, arrays and nulls are not imported
+                json.skipValue();
+                return null;
+        }
+    }
+
+    /*
+     * Keeps a value read by read() until finish() sets it on draft
+     */
+    void keep(String key, ElementDraft draft, Object value) {
+        var column = columns.get(key);
+        column.drafts.add(draft);
+        column.values.add(value);
+    }
+
+    /*
+     * Declares the columns with their types and sets the kept values, returns the types
+     */
+    Map<String, Class<?>> finish(ContainerLoader container, boolean nodes) {
+        var types = new LinkedHashMap<String, Class<?>>();
+        for (var entry : columns.entrySet()) {
+            String key = entry.getKey();
+            var column = entry.getValue();
+            Class<?> type = column.stats.type(floats);
+            if (type == null) {
+                continue;
+            }
+            types.put(key, type);
+            if (nodes) {
+                container.addNodeColumn(key, type);
+            } else {
+                container.addEdgeColumn(key, type);
+            }
+            for (int i = 0; i < column.drafts.size(); i++) {
+                column.drafts.get(i).setValue(key, convert(key, column.values.get(i), type));
+            }
+        }
+        columns.clear();
+        return types;
+    }
+
+    private static Object number(String literal) {
+        try {
+            return Long.valueOf(literal);
+        } catch (NumberFormatException e) {
+            return Double.valueOf(literal);
+        }
+    }
+
+    private Object convert(String key, Object value, Class<?> type) {
+        if (type == String.class) {
+            return value instanceof String ? value : importer.intern(key, String.valueOf(value));
+        } else if (type == Integer.class) {
+            return ((Number) value).intValue();
+        } else if (type == Long.class) {
+            return ((Number) value).longValue();
+        } else if (type == Float.class) {
+            return ((Number) value).floatValue();
+        } else if (type == Double.class) {
+            return ((Number) value).doubleValue();
+        }
+        return value;
+    }
+
+    private static class SampledColumn {
+        final ValueStats stats = new ValueStats();
+        final List<ElementDraft> drafts = new ArrayList<>();
+        final List<Object> values = new ArrayList<>();
+    }
+
+    /**
+     * What was seen for one key, also used by the NDJSON importer
+     */
+    static class ValueStats {
+        boolean strings = false;
+        boolean booleans = false;
+        boolean numbers = false;
+        boolean integral = true;
+        boolean floatSafe = true;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+
+        void addNumber(String literal) {
+            numbers = true;
+            if (integral && literal.indexOf('.') < 0 && literal.indexOf('e') < 0 && literal.indexOf('E') < 0) {
+                try {
+                    long value = Long.parseLong(literal);
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                    return;
+                } catch (NumberFormatException e) {
+                    // Too big for a long
+                }
+            }
+            integral = false;
+            if (floatSafe) {
+                floatSafe = fitsFloat(literal);
+            }
+        }
+
+        /*
+         * floats allows Float for fractions that fit one, otherwise they are Double
+         */
+        Class<?> type(boolean floats) {
+            if (strings || (booleans && numbers)) {
+                return String.class;
+            } else if (booleans) {
+                return Boolean.class;
+            } else if (!numbers) {
+                return null;
+            } else if (integral) {
+                return min >= Integer.MIN_VALUE && max <= Integer.MAX_VALUE ? Integer.class : Long.class;
+            }
+            if (!floats) {
+                return Double.class;
+            }
+            // Integral values seen before a fraction also have to fit a float
+            if (floatSafe && min <= max) {
+                floatSafe = Math.abs(min) < (1 << 24) && Math.abs(max) < (1 << 24);
+            }
+            return floatSafe ? Float.class : Double.class;
+        }
+
+        /*
+         * A float keeps about 7 significant decimal digits
+         */
+        private static boolean fitsFloat(String literal) {
+            int exponent = Math.max(literal.indexOf('e'), literal.indexOf('E'));
+            String mantissa = exponent >= 0 ? literal.substring(0, exponent) : literal;
+            int digits = 0;
+            boolean leading = true;
+            for (int i = 0; i < mantissa.length(); i++) {
+                char c = mantissa.charAt(i);
+                if (c < '0' || c > '9') {
+                    continue;
+                }
+                if (leading && c == '0') {
+                    continue;
+                }
+                leading = false;
+                digits++;
+            }
+            if (digits > 7) {
+                return false;
+            }
+            double value = Math.abs(Double.parseDouble(literal));
+            return value == 0 || (value >= Float.MIN_NORMAL && value <= Float.MAX_VALUE);
+        }
+    }
+}
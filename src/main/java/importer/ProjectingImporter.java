@@ -0,0 +1,15 @@
+package importer;
+
+import java.util.Set;
+
+/**
+ * An importer that can leave out attribute columns while reading, so values that
+ * are never used are not created at all.
+ */
+public interface ProjectingImporter {
+
+    /*
+     * Lower case ids of the attribute columns to import, null imports all of them
+     */
+    void setColumns(Set<String> columns);
+}
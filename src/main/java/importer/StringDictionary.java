@@ -0,0 +1,148 @@
+package importer;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dedupes repeated strings while importing, so a value like a country name that is
+ * repeated on a million elements is stored once.
+ * <p>
+ * Each column has its own dictionary. In auto mode a column stops being interned once
+ * it looks high-cardinality, i.e. more than half of its first values are distinct or
+ * it grows past {@link #MAX_DISTINCT} values. Columns named explicitly are always
+ * interned. Safe to use from several parser threads.
+ */
+public class StringDictionary {
+
+    public static final String IDS = "<ids>";
+
+    private static final int AUTO_CHECK_AFTER = 1000;
+    private static final int MAX_DISTINCT = 1 << 16;
+
+    private final Set<String> forcedColumns;
+    private final Map<String, ColumnDictionary> columns = new ConcurrentHashMap<>();
+
+    /*
+     * Auto mode: every column is a candidate, high-cardinality ones are dropped
+     */
+    public StringDictionary() {
+        this.forcedColumns = null;
+    }
+
+    /*
+     * Only the given columns (lower case) are interned, whatever their cardinality
+     */
+    public StringDictionary(Set<String> forcedColumns) {
+        this.forcedColumns = forcedColumns;
+    }
+
+    public String intern(String column, String value) {
+        if (value == null) {
+            return null;
+        }
+        return columns.computeIfAbsent(column, this::newColumn).intern(value);
+    }
+
+    private ColumnDictionary newColumn(String column) {
+        if (column.equals(IDS)) {
+            // Ids are only interned where they repeat, e.g. edge endpoints kept for later
+            return new ColumnDictionary(false);
+        }
+        if (forcedColumns == null) {
+            return new ColumnDictionary(true);
+        }
+        // Columns that were not asked for get a disabled dictionary
+        var dictionary = new ColumnDictionary(false);
+        dictionary.disabled = !forcedColumns.contains(column.toLowerCase(Locale.ROOT));
+        return dictionary;
+    }
+
+    public long savedBytes() {
+        long saved = 0;
+        for (var dictionary : columns.values()) {
+            saved += dictionary.savedBytes.sum();
+        }
+        return saved;
+    }
+
+    /*
+     * e.g. 'Interned 2 columns, 999990 repeated strings, about 42.0 MB saved (distinct values: country=8, type=2)'
+     */
+    public String summary() {
+        var interned = new TreeMap<String, Integer>();
+        long hits = 0;
+        for (var entry : columns.entrySet()) {
+            var dictionary = entry.getValue();
+            if (!dictionary.disabled && dictionary.hits.sum() > 0) {
+                interned.put(entry.getKey(), dictionary.values.size());
+                hits += dictionary.hits.sum();
+            }
+        }
+        var sb = new StringBuilder();
+        sb.append(String.format("Interned %s columns, %s repeated strings, about %.1f MB saved",
+            interned.size(), hits, savedBytes() / 1e6));
+        if (!interned.isEmpty()) {
+            sb.append(" (distinct values: ");
+            boolean first = true;
+            for (var entry : interned.entrySet()) {
+                sb.append(first ? "" : ", ").append(entry.getKey()).append('=').append(entry.getValue());
+                first = false;
+            }
+            sb.append(')');
+        }
+        return sb.toString();
+    }
+
+    /*
+     * Heap taken by a String: 24 byte object plus its array, Latin-1 strings use a byte per char
+     */
+    static long sizeOf(String value) {
+        boolean latin1 = true;
+        for (int i = 0; i < value.length() && latin1; i++) {
+            latin1 = value.charAt(i) < 256;
+        }
+        long array = 16 + (long) value.length() * (latin1 ? 1 : 2);
+        return 24 + ((array + 7) & ~7L);
+    }
+
+    private static class ColumnDictionary {
+        final boolean auto;
+        final Map<String, String> values = new ConcurrentHashMap<>();
+        final LongAdder seen = new LongAdder();
+        final LongAdder hits = new LongAdder();
+        final LongAdder savedBytes = new LongAdder();
+        volatile boolean disabled = false;
+
+        ColumnDictionary(boolean auto) {
+            this.auto = auto;
+        }
+
+        String intern(String value) {
+            if (disabled) {
+                return value;
+            }
+            String existing = values.putIfAbsent(value, value);
+            if (existing != null) {
+                hits.increment();
+                savedBytes.add(sizeOf(value));
+                return existing;
+            }
+            if (auto) {
+                seen.increment();
+                long count = seen.sum() + hits.sum();
+                if (values.size() > MAX_DISTINCT || (count >= AUTO_CHECK_AFTER && values.size() > count / 2)) {
+                    // Mostly unique values, the map would cost more than it saves
+                    disabled = true;
+                    values.clear();
+                    hits.reset();
+                    savedBytes.reset();
+                }
+            }
+            return value;
+        }
+    }
+}
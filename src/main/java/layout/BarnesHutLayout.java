@@ -0,0 +1,666 @@
+package layout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.layout.spi.Layout;
+import org.gephi.layout.spi.LayoutBuilder;
+import org.gephi.layout.spi.LayoutProperty;
+import org.openide.util.NbBundle;
+
+/**
+ * ForceAtlas2's forces computed on plain arrays instead of Gephi nodes.
+ * <p>
+ * {@link #initAlgo()} copies positions, masses (degree + 1) and a CSR adjacency holding
+ * both directions of every edge into arrays. Every step sorts the nodes along a Z-order
+ * curve, builds a Barnes-Hut quadtree over that order, then computes repulsion,
+ * attraction and gravity on a {@link ForkJoinPool}. Each node sums its own forces, so
+ * the threads share no writes. The speed adapts like ForceAtlas2's. The graph's nodes
+ * are only updated by {@link #writePositions()} and {@link #endAlgo()}.
+ */
+public class BarnesHutLayout implements Layout, BufferedPositionsLayout {
+
+    // Bits of the Z-order key per axis, i.e. the deepest quadtree level
+    private static final int LEVELS = 15;
+    // Cells with this many nodes or less are leaves, their nodes are summed directly
+    private static final int LEAF_SIZE = 8;
+    // Nodes per parallel task
+    private static final int CHUNK = 2048;
+
+    private final LayoutBuilder builder;
+    private GraphModel graphModel;
+
+    private double scaling;
+    private double gravity;
+    private boolean strongGravity;
+    private boolean linLog;
+    private double edgeWeightInfluence;
+    private double jitterTolerance;
+    private double theta;
+    private int threads;
+
+    // Per node, by index in nodes
+    private Node[] nodes;
+    private float[] x;
+    private float[] y;
+    private float[] mass;
+    private boolean[] fixed;
+    private float[] fx;
+    private float[] fy;
+    private float[] oldFx;
+    private float[] oldFy;
+    // Neighbors of node i are adjacency[adjacencyStart[i]] .. adjacency[adjacencyStart[i + 1] - 1]
+    private int[] adjacencyStart;
+    private int[] adjacency;
+    private float[] adjacencyWeight;
+
+    // Z-order key << 32 | node index, sorted every step, and the nodes in that order
+    private long[] keys;
+    private int[] order;
+    private float[] sx;
+    private float[] sy;
+    private float[] sm;
+    private float rootSize;
+
+    // Quadtree cells over ranges of the sorted nodes, the children of a cell are consecutive
+    private int cellCount;
+    private int[] cellStart;
+    private int[] cellEnd;
+    private int[] cellChild;
+    private int[] cellChildren;
+    private float[] cellX;
+    private float[] cellY;
+    private float[] cellMass;
+    private float[] cellSize;
+
+    private double speed;
+    private double speedEfficiency;
+    private double[] chunkSwinging;
+    private double[] chunkTraction;
+    private ForkJoinPool pool;
+
+    public BarnesHutLayout(LayoutBuilder builder) {
+        this.builder = builder;
+    }
+
+    @Override
+    public void setGraphModel(GraphModel graphModel) {
+        this.graphModel = graphModel;
+    }
+
+    @Override
+    public void initAlgo() {
+        var graph = graphModel.getGraphVisible();
+        graph.readLock();
+        try {
+            nodes = graph.getNodes().toArray();
+            int n = nodes.length;
+            x = new float[n];
+            y = new float[n];
+            fixed = new boolean[n];
+            int maxStoreId = 0;
+            for (var node : nodes) {
+                maxStoreId = Math.max(maxStoreId, node.getStoreId());
+            }
+            int[] indexOf = new int[maxStoreId + 1];
+            for (int i = 0; i < n; i++) {
+                x[i] = nodes[i].x();
+                y[i] = nodes[i].y();
+                fixed[i] = nodes[i].isFixed();
+                indexOf[nodes[i].getStoreId()] = i;
+            }
+
+            var edges = graph.getEdges().toArray();
+            adjacencyStart = new int[n + 1];
+            for (var edge : edges) {
+                int source = indexOf[edge.getSource().getStoreId()];
+                int target = indexOf[edge.getTarget().getStoreId()];
+                if (source != target) {
+                    adjacencyStart[source + 1]++;
+                    adjacencyStart[target + 1]++;
+                }
+            }
+            mass = new float[n];
+            for (int i = 0; i < n; i++) {
+                mass[i] = 1 + adjacencyStart[i + 1];
+                adjacencyStart[i + 1] += adjacencyStart[i];
+            }
+            adjacency = new int[adjacencyStart[n]];
+            adjacencyWeight = new float[adjacencyStart[n]];
+            int[] next = Arrays.copyOf(adjacencyStart, n);
+            for (var edge : edges) {
+                int source = indexOf[edge.getSource().getStoreId()];
+                int target = indexOf[edge.getTarget().getStoreId()];
+                if (source == target) {
+                    continue;
+                }
+                float weight = (float) (edgeWeightInfluence == 0 ? 1 :
+                    edgeWeightInfluence == 1 ? edge.getWeight() : Math.pow(edge.getWeight(), edgeWeightInfluence));
+                adjacency[next[source]] = target;
+                adjacencyWeight[next[source]++] = weight;
+                adjacency[next[target]] = source;
+                adjacencyWeight[next[target]++] = weight;
+            }
+        } finally {
+            graph.readUnlock();
+        }
+
+        int n = nodes.length;
+        fx = new float[n];
+        fy = new float[n];
+        oldFx = new float[n];
+        oldFy = new float[n];
+        keys = new long[n];
+        order = new int[n];
+        sx = new float[n];
+        sy = new float[n];
+        sm = new float[n];
+        allocateCells(n / 2 + 64);
+        chunkSwinging = new double[n / CHUNK + 1];
+        chunkTraction = new double[n / CHUNK + 1];
+        speed = 1;
+        speedEfficiency = 1;
+        pool = new ForkJoinPool(Math.max(1, threads));
+    }
+
+    @Override
+    public void goAlgo() {
+        int n = nodes.length;
+        if (n == 0) {
+            return;
+        }
+        float[] swap = oldFx;
+        oldFx = fx;
+        fx = swap;
+        swap = oldFy;
+        oldFy = fy;
+        fy = swap;
+
+        sortNodes();
+        cellCount = 1;
+        buildCell(0, 0, n, 0, rootSize);
+        parallel(n, this::computeForces);
+        adjustSpeed();
+        parallel(n, this::move);
+    }
+
+    /*
+     * Sorts the nodes by the Z-order key of their position, so every quadtree cell is a range
+     */
+    private void sortNodes() {
+        int n = nodes.length;
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+        float size = Math.max(maxX - minX, maxY - minY);
+        rootSize = size > 0 ? size : 1;
+        final float originX = minX;
+        final float originY = minY;
+        final double scale = (1 << LEVELS) / (double) rootSize;
+        final int maxCell = (1 << LEVELS) - 1;
+        parallel(n, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                int qx = Math.min(maxCell, Math.max(0, (int) ((x[i] - originX) * scale)));
+                int qy = Math.min(maxCell, Math.max(0, (int) ((y[i] - originY) * scale)));
+                keys[i] = (spread(qx) | spread(qy) << 1) << 32 | i;
+            }
+        });
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                // Forks into this pool, not the common one
+                Arrays.parallelSort(keys);
+            }
+        });
+        parallel(n, (from, to) -> {
+            for (int k = from; k < to; k++) {
+                int i = (int) keys[k];
+                order[k] = i;
+                sx[k] = x[i];
+                sy[k] = y[i];
+                sm[k] = mass[i];
+            }
+        });
+    }
+
+    /*
+     * Spreads the low 16 bits of v to the even bits
+     */
+    private static long spread(int v) {
+        long bits = v & 0xFFFFL;
+        bits = (bits | (bits << 8)) & 0x00FF00FFL;
+        bits = (bits | (bits << 4)) & 0x0F0F0F0FL;
+        bits = (bits | (bits << 2)) & 0x33333333L;
+        bits = (bits | (bits << 1)) & 0x55555555L;
+        return bits;
+    }
+
+    /*
+     * Fills the cell for sorted nodes from..to at the given level, then its children
+     */
+    private void buildCell(int cell, int from, int to, int level, float size) {
+        cellStart[cell] = from;
+        cellEnd[cell] = to;
+        cellSize[cell] = size;
+        if (to - from <= LEAF_SIZE || level == LEVELS) {
+            cellChildren[cell] = 0;
+            double m = 0, mx = 0, my = 0;
+            for (int k = from; k < to; k++) {
+                m += sm[k];
+                mx += sx[k] * sm[k];
+                my += sy[k] * sm[k];
+            }
+            cellMass[cell] = (float) m;
+            cellX[cell] = (float) (mx / m);
+            cellY[cell] = (float) (my / m);
+            return;
+        }
+        // The two key bits of this level are the quadrant, quadrants are consecutive in the sorted keys
+        int shift = 32 + 2 * (LEVELS - 1 - level);
+        int[] bounds = new int[5];
+        bounds[0] = from;
+        for (int quadrant = 1; quadrant < 4; quadrant++) {
+            bounds[quadrant] = firstInQuadrant(bounds[quadrant - 1], to, shift, quadrant);
+        }
+        bounds[4] = to;
+        int children = 0;
+        for (int quadrant = 0; quadrant < 4; quadrant++) {
+            if (bounds[quadrant + 1] > bounds[quadrant]) {
+                children++;
+            }
+        }
+        int first = cellCount;
+        cellCount += children;
+        if (cellCount > cellStart.length) {
+            allocateCells(Math.max(cellCount, cellStart.length * 2));
+        }
+        cellChild[cell] = first;
+        cellChildren[cell] = children;
+
+        double m = 0, mx = 0, my = 0;
+        int child = first;
+        for (int quadrant = 0; quadrant < 4; quadrant++) {
+            if (bounds[quadrant + 1] > bounds[quadrant]) {
+                buildCell(child, bounds[quadrant], bounds[quadrant + 1], level + 1, size / 2);
+                m += cellMass[child];
+                mx += (double) cellX[child] * cellMass[child];
+                my += (double) cellY[child] * cellMass[child];
+                child++;
+            }
+        }
+        cellMass[cell] = (float) m;
+        cellX[cell] = (float) (mx / m);
+        cellY[cell] = (float) (my / m);
+    }
+
+    private int firstInQuadrant(int from, int to, int shift, int quadrant) {
+        int lo = from, hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if ((int) ((keys[mid] >>> shift) & 3) < quadrant) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private void allocateCells(int capacity) {
+        cellStart = cellStart == null ? new int[capacity] : Arrays.copyOf(cellStart, capacity);
+        cellEnd = cellEnd == null ? new int[capacity] : Arrays.copyOf(cellEnd, capacity);
+        cellChild = cellChild == null ? new int[capacity] : Arrays.copyOf(cellChild, capacity);
+        cellChildren = cellChildren == null ? new int[capacity] : Arrays.copyOf(cellChildren, capacity);
+        cellX = cellX == null ? new float[capacity] : Arrays.copyOf(cellX, capacity);
+        cellY = cellY == null ? new float[capacity] : Arrays.copyOf(cellY, capacity);
+        cellMass = cellMass == null ? new float[capacity] : Arrays.copyOf(cellMass, capacity);
+        cellSize = cellSize == null ? new float[capacity] : Arrays.copyOf(cellSize, capacity);
+    }
+
+    /*
+     * Forces on the sorted nodes from..to, neighbors in the sorted order share most of the tree walk
+     */
+    private void computeForces(int from, int to) {
+        int[] stack = new int[4 * LEVELS + 8];
+        double theta2 = theta * theta;
+        for (int k = from; k < to; k++) {
+            int i = order[k];
+            double px = sx[k], py = sy[k], pm = sm[k];
+            double dx = 0, dy = 0;
+
+            // Repulsion, a cell far enough away counts as one mass at its center of mass
+            int top = 0;
+            stack[top++] = 0;
+            while (top > 0) {
+                int cell = stack[--top];
+                int children = cellChildren[cell];
+                if (children == 0) {
+                    for (int j = cellStart[cell]; j < cellEnd[cell]; j++) {
+                        double ex = px - sx[j], ey = py - sy[j];
+                        double d2 = ex * ex + ey * ey;
+                        if (d2 > 0) {
+                            double f = scaling * pm * sm[j] / d2;
+                            dx += ex * f;
+                            dy += ey * f;
+                        }
+                    }
+                    continue;
+                }
+                double ex = px - cellX[cell], ey = py - cellY[cell];
+                double d2 = ex * ex + ey * ey;
+                double size = cellSize[cell];
+                // A cell holding the node itself is always opened
+                boolean inside = k >= cellStart[cell] && k < cellEnd[cell];
+                if (!inside && size * size < theta2 * d2) {
+                    double f = scaling * pm * cellMass[cell] / d2;
+                    dx += ex * f;
+                    dy += ey * f;
+                } else {
+                    int first = cellChild[cell];
+                    for (int c = 0; c < children; c++) {
+                        stack[top++] = first + c;
+                    }
+                }
+            }
+
+            // Attraction along edges
+            for (int e = adjacencyStart[i]; e < adjacencyStart[i + 1]; e++) {
+                int j = adjacency[e];
+                double ex = x[j] - px, ey = y[j] - py;
+                double f = adjacencyWeight[e];
+                if (linLog) {
+                    double d = Math.sqrt(ex * ex + ey * ey);
+                    f = d > 0 ? f * Math.log(1 + d) / d : 0;
+                }
+                dx += ex * f;
+                dy += ey * f;
+            }
+
+            // Gravity
+            double d = Math.sqrt(px * px + py * py);
+            if (d > 0) {
+                double f = strongGravity ? gravity * pm : gravity * pm / d;
+                dx -= px * f;
+                dy -= py * f;
+            }
+
+            fx[i] = (float) dx;
+            fy[i] = (float) dy;
+        }
+    }
+
+    /*
+     * ForceAtlas2's adaptive speed, from how much the nodes swing compared to how much they move
+     */
+    private void adjustSpeed() {
+        int n = nodes.length;
+        parallel(n, (from, to) -> {
+            double swinging = 0, traction = 0;
+            for (int i = from; i < to; i++) {
+                if (fixed[i]) {
+                    continue;
+                }
+                double sdx = oldFx[i] - fx[i], sdy = oldFy[i] - fy[i];
+                double tdx = oldFx[i] + fx[i], tdy = oldFy[i] + fy[i];
+                swinging += mass[i] * Math.sqrt(sdx * sdx + sdy * sdy);
+                traction += mass[i] * 0.5 * Math.sqrt(tdx * tdx + tdy * tdy);
+            }
+            chunkSwinging[from / CHUNK] = swinging;
+            chunkTraction[from / CHUNK] = traction;
+        });
+        double totalSwinging = 0, totalTraction = 0;
+        for (int c = 0; c <= (n - 1) / CHUNK; c++) {
+            totalSwinging += chunkSwinging[c];
+            totalTraction += chunkTraction[c];
+        }
+        if (!(totalSwinging > 0) || !(totalTraction > 0)) {
+            return;
+        }
+
+        double estimatedOptimalJitterTolerance = 0.05 * Math.sqrt(n);
+        double minJT = Math.sqrt(estimatedOptimalJitterTolerance);
+        double maxJT = 10;
+        double jt = jitterTolerance * Math.max(minJT,
+            Math.min(maxJT, estimatedOptimalJitterTolerance * totalTraction / ((double) n * n)));
+        double minSpeedEfficiency = 0.05;
+        if (totalSwinging / totalTraction > 2.0) {
+            if (speedEfficiency > minSpeedEfficiency) {
+                speedEfficiency *= 0.5;
+            }
+            jt = Math.max(jt, jitterTolerance);
+        }
+        double targetSpeed = jt * speedEfficiency * totalTraction / totalSwinging;
+        if (totalSwinging > jt * totalTraction) {
+            if (speedEfficiency > minSpeedEfficiency) {
+                speedEfficiency *= 0.7;
+            }
+        } else if (speed < 1000) {
+            speedEfficiency *= 1.3;
+        }
+        double maxRise = 0.5;
+        speed = speed + Math.min(targetSpeed - speed, maxRise * speed);
+    }
+
+    private void move(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (fixed[i]) {
+                continue;
+            }
+            double sdx = oldFx[i] - fx[i], sdy = oldFy[i] - fy[i];
+            double swinging = mass[i] * Math.sqrt(sdx * sdx + sdy * sdy);
+            double factor = speed / (1 + Math.sqrt(speed * swinging));
+            x[i] += fx[i] * factor;
+            y[i] += fy[i] * factor;
+        }
+    }
+
+    private interface Range {
+        void run(int from, int to);
+    }
+
+    /*
+     * Runs body over 0..n in chunks of CHUNK, a chunk always starts at a multiple of CHUNK
+     */
+    private void parallel(int n, Range body) {
+        pool.invoke(new RangeTask(body, 0, (n + CHUNK - 1) / CHUNK, n));
+    }
+
+    private static class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Range body;
+        private final int fromChunk;
+        private final int toChunk;
+        private final int n;
+
+        RangeTask(Range body, int fromChunk, int toChunk, int n) {
+            this.body = body;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+            this.n = n;
+        }
+
+        @Override
+        protected void compute() {
+            if (toChunk - fromChunk <= 1) {
+                body.run(fromChunk * CHUNK, Math.min(n, toChunk * CHUNK));
+                return;
+            }
+            int mid = (fromChunk + toChunk) >>> 1;
+            invokeAll(new RangeTask(body, fromChunk, mid, n), new RangeTask(body, mid, toChunk, n));
+        }
+    }
+
+    @Override
+    public void writePositions() {
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i].setX(x[i]);
+            nodes[i].setY(y[i]);
+        }
+    }
+
+    @Override
+    public Node[] nodes() {
+        return nodes;
+    }
+
+    @Override
+    public float[] positionsX() {
+        return x;
+    }
+
+    @Override
+    public float[] positionsY() {
+        return y;
+    }
+
+    @Override
+    public boolean canAlgo() {
+        return graphModel != null;
+    }
+
+    @Override
+    public void endAlgo() {
+        if (nodes != null) {
+            writePositions();
+        }
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        // The arrays can be large, keep only the properties
+        nodes = null;
+        x = y = mass = fx = fy = oldFx = oldFy = null;
+        fixed = null;
+        adjacencyStart = adjacency = null;
+        adjacencyWeight = null;
+        keys = null;
+        order = null;
+        sx = sy = sm = null;
+        cellStart = cellEnd = cellChild = cellChildren = null;
+        cellX = cellY = cellMass = cellSize = null;
+    }
+
+    @Override
+    public LayoutProperty[] getProperties() {
+        List<LayoutProperty> properties = new ArrayList<>();
+        final String tuning = NbBundle.getMessage(getClass(), "BarnesHut.category.tuning");
+        final String behavior = NbBundle.getMessage(getClass(), "BarnesHut.category.behavior");
+        final String performance = NbBundle.getMessage(getClass(), "BarnesHut.category.performance");
+        try {
+            properties.add(property(Double.class, "scaling", tuning, "getScaling", "setScaling"));
+            properties.add(property(Boolean.class, "strongGravity", tuning, "isStrongGravity", "setStrongGravity"));
+            properties.add(property(Double.class, "gravity", tuning, "getGravity", "setGravity"));
+            properties.add(property(Boolean.class, "linLog", behavior, "isLinLog", "setLinLog"));
+            properties.add(property(Double.class, "edgeWeightInfluence", behavior, "getEdgeWeightInfluence", "setEdgeWeightInfluence"));
+            properties.add(property(Double.class, "jitterTolerance", performance, "getJitterTolerance", "setJitterTolerance"));
+            properties.add(property(Double.class, "theta", performance, "getTheta", "setTheta"));
+            properties.add(property(Integer.class, "threads", performance, "getThreads", "setThreads"));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+        return properties.toArray(new LayoutProperty[0]);
+    }
+
+    private LayoutProperty property(Class<?> type, String key, String category, String getter, String setter) throws NoSuchMethodException {
+        return LayoutProperty.createProperty(this, type,
+            NbBundle.getMessage(getClass(), "BarnesHut."+key+".name"), category, "BarnesHut."+key+".name",
+            NbBundle.getMessage(getClass(), "BarnesHut."+key+".desc"), getter, setter);
+    }
+
+    /*
+     * The values a ForceAtlas2 entry of a pipeline gets, so both give the same picture:
+     * like ForceAtlas2, graphs under 100 visible nodes get a scaling of 10
+     */
+    @Override
+    public void resetPropertiesValues() {
+        int nodeCount = graphModel != null ? graphModel.getGraphVisible().getNodeCount() : 0;
+        scaling = nodeCount >= 100 ? 2.0 : 10.0;
+        strongGravity = false;
+        gravity = 1.0;
+        linLog = false;
+        edgeWeightInfluence = 1.0;
+        jitterTolerance = 1.0;
+        theta = 1.2;
+        threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public LayoutBuilder getBuilder() {
+        return builder;
+    }
+
+    public Double getScaling() {
+        return scaling;
+    }
+
+    public void setScaling(Double scaling) {
+        this.scaling = scaling;
+    }
+
+    public Boolean isStrongGravity() {
+        return strongGravity;
+    }
+
+    public void setStrongGravity(Boolean strongGravity) {
+        this.strongGravity = strongGravity;
+    }
+
+    public Double getGravity() {
+        return gravity;
+    }
+
+    public void setGravity(Double gravity) {
+        this.gravity = gravity;
+    }
+
+    public Boolean isLinLog() {
+        return linLog;
+    }
+
+    public void setLinLog(Boolean linLog) {
+        this.linLog = linLog;
+    }
+
+    public Double getEdgeWeightInfluence() {
+        return edgeWeightInfluence;
+    }
+
+    public void setEdgeWeightInfluence(Double edgeWeightInfluence) {
+        this.edgeWeightInfluence = edgeWeightInfluence;
+    }
+
+    public Double getJitterTolerance() {
+        return jitterTolerance;
+    }
+
+    public void setJitterTolerance(Double jitterTolerance) {
+        this.jitterTolerance = jitterTolerance;
+    }
+
+    public Double getTheta() {
+        return theta;
+    }
+
+    public void setTheta(Double theta) {
+        this.theta = theta;
+    }
+
+    public Integer getThreads() {
+        return threads;
+    }
+
+    public void setThreads(Integer threads) {
+        this.threads = threads;
+    }
+}
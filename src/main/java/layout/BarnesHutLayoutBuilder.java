@@ -0,0 +1,61 @@
+package layout;
+
+import javax.swing.Icon;
+import javax.swing.JPanel;
+
+import org.gephi.layout.spi.Layout;
+import org.gephi.layout.spi.LayoutBuilder;
+import org.gephi.layout.spi.LayoutUI;
+import org.openide.util.NbBundle;
+import org.openide.util.lookup.ServiceProvider;
+
+@ServiceProvider(service = LayoutBuilder.class)
+public class BarnesHutLayoutBuilder implements LayoutBuilder {
+
+    public static final String IDENTIFER = "BarnesHut";
+
+    private final LayoutUI ui = new BarnesHutUI();
+
+    @Override
+    public String getName() {
+        return NbBundle.getMessage(getClass(), "BarnesHut.name");
+    }
+
+    @Override
+    public LayoutUI getUI() {
+        return ui;
+    }
+
+    @Override
+    public BarnesHutLayout buildLayout() {
+        return new BarnesHutLayout(this);
+    }
+
+    private static class BarnesHutUI implements LayoutUI {
+
+        @Override
+        public String getDescription() {
+            return NbBundle.getMessage(BarnesHutLayoutBuilder.class, "BarnesHut.description");
+        }
+
+        @Override
+        public Icon getIcon() {
+            return null;
+        }
+
+        @Override
+        public JPanel getSimplePanel(Layout layout) {
+            return null;
+        }
+
+        @Override
+        public int getQualityRank() {
+            return 4;
+        }
+
+        @Override
+        public int getSpeedRank() {
+            return 5;
+        }
+    }
+}
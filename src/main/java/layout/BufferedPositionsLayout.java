@@ -0,0 +1,25 @@
+package layout;
+
+import org.gephi.graph.api.Node;
+
+/**
+ * A layout that keeps node positions in its own arrays while it runs. The graph's
+ * nodes are only updated by {@link #writePositions()}, e.g. before a frame is
+ * exported, and when the run ends in {@code endAlgo()}.
+ */
+public interface BufferedPositionsLayout {
+
+    /*
+     * Copies the current positions to the graph's nodes
+     */
+    void writePositions();
+
+    /*
+     * Nodes of the running layout, in the order of positionsX() and positionsY()
+     */
+    Node[] nodes();
+
+    float[] positionsX();
+
+    float[] positionsY();
+}
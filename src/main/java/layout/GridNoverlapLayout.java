@@ -0,0 +1,461 @@
+package layout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.layout.spi.Layout;
+import org.gephi.layout.spi.LayoutBuilder;
+import org.gephi.layout.spi.LayoutProperty;
+import org.openide.util.NbBundle;
+
+/**
+ * Overlap removal like Noverlap (a node takes up a circle of size * ratio + margin) on
+ * plain arrays, for large graphs.
+ * <p>
+ * Every step hashes the nodes into a uniform grid whose cells are as wide as the largest
+ * circle, so overlapping nodes are always in neighbouring cells. Cells get one of 9
+ * colors by (x mod 3, y mod 3); cells of one color are processed in parallel, one color
+ * after the other. A cell pushes apart the overlapping pairs between its nodes and its
+ * neighbours' right away (Gauss-Seidel style), which is safe because the neighbourhoods
+ * of same-colored cells don't meet. Each cell runs its pairs in a fixed order, so the
+ * result doesn't depend on the threads. Pairs are pushed apart by speed times their
+ * overlap; a speed a bit below 2 overshoots on purpose (over-relaxation), since a dense
+ * clump only grows as fast as the pushes travel through it. The layout stops when a step
+ * finds no overlap, when stallSteps steps in a row found no fewer overlaps than the best
+ * step so far, or after stepLimit steps, since a clump denser than the space around it
+ * can take thousands of steps to clear. The graph's nodes are only updated by {@link #writePositions()} and
+ * {@link #endAlgo()}.
+ */
+public class GridNoverlapLayout implements Layout, BufferedPositionsLayout {
+
+    // Nodes per parallel task
+    private static final int CHUNK = 2048;
+
+    private final LayoutBuilder builder;
+    private GraphModel graphModel;
+
+    private double ratio;
+    private double margin;
+    private double speed;
+    private int threads;
+    private int stallSteps;
+    private int stepLimit;
+
+    private Node[] nodes;
+    private float[] x;
+    private float[] y;
+    private float[] radius;
+    private boolean[] fixed;
+    private float maxRadius;
+
+    // Nodes of grid bucket b are cellNodes[cellStart[b]] .. cellNodes[cellStart[b + 1] - 1]
+    private int[] cellStart;
+    private int[] cellNodes;
+    private int[] nodeCellX;
+    private int[] nodeCellY;
+    private int bucketMask;
+    // Nodes whose cell has color c, in bucket order, are colorNodes[colorStart[c]] .. colorNodes[colorStart[c + 1] - 1]
+    private int[] colorStart;
+    private int[] colorNodes;
+
+    private long overlaps;
+    private long fewestOverlaps;
+    private int stepsDone;
+    private int stalledSteps;
+    private boolean done;
+    private ForkJoinPool pool;
+
+    public GridNoverlapLayout(LayoutBuilder builder) {
+        this.builder = builder;
+    }
+
+    @Override
+    public void setGraphModel(GraphModel graphModel) {
+        this.graphModel = graphModel;
+    }
+
+    @Override
+    public void initAlgo() {
+        var graph = graphModel.getGraphVisible();
+        graph.readLock();
+        try {
+            nodes = graph.getNodes().toArray();
+        } finally {
+            graph.readUnlock();
+        }
+        int n = nodes.length;
+        x = new float[n];
+        y = new float[n];
+        radius = new float[n];
+        fixed = new boolean[n];
+        maxRadius = 0;
+        for (int i = 0; i < n; i++) {
+            x[i] = nodes[i].x();
+            y[i] = nodes[i].y();
+            radius[i] = (float) (nodes[i].size() * ratio + margin);
+            fixed[i] = nodes[i].isFixed();
+            maxRadius = Math.max(maxRadius, radius[i]);
+        }
+        nodeCellX = new int[n];
+        nodeCellY = new int[n];
+        int buckets = Integer.highestOneBit(Math.max(1, n) * 2 - 1);
+        bucketMask = buckets - 1;
+        cellStart = new int[buckets + 1];
+        cellNodes = new int[n];
+        colorStart = new int[10];
+        colorNodes = new int[n];
+        overlaps = -1;
+        fewestOverlaps = Long.MAX_VALUE;
+        stepsDone = 0;
+        stalledSteps = 0;
+        done = n < 2 || !(maxRadius > 0);
+        pool = new ForkJoinPool(Math.max(1, threads));
+    }
+
+    @Override
+    public void goAlgo() {
+        if (done) {
+            return;
+        }
+        buildGrid();
+        overlaps = 0;
+        for (int color = 0; color < 9; color++) {
+            int from = colorStart[color];
+            int to = colorStart[color + 1];
+            int chunks = (to - from + CHUNK - 1) / CHUNK;
+            if (chunks > 0) {
+                int c = color;
+                overlaps += pool.invoke(new RangeTask((f, t) -> separate(c, f, t), 0, chunks, to - from));
+            }
+        }
+        stepsDone++;
+        if (overlaps < fewestOverlaps) {
+            fewestOverlaps = overlaps;
+            stalledSteps = 0;
+        } else {
+            stalledSteps++;
+        }
+        done = overlaps == 0
+            || (stallSteps > 0 && stalledSteps >= stallSteps)
+            || (stepLimit > 0 && stepsDone >= stepLimit);
+    }
+
+    /*
+     * Hashes the nodes' cells into buckets and sorts the nodes by bucket (counting sort),
+     * then lists them by the color of their cell, still in bucket order
+     */
+    private void buildGrid() {
+        int n = nodes.length;
+        double cellSize = 2.0 * maxRadius;
+        Arrays.fill(cellStart, 0);
+        for (int i = 0; i < n; i++) {
+            nodeCellX[i] = (int) Math.floor(x[i] / cellSize);
+            nodeCellY[i] = (int) Math.floor(y[i] / cellSize);
+            cellStart[bucket(nodeCellX[i], nodeCellY[i]) + 1]++;
+        }
+        for (int b = 0; b < bucketMask + 1; b++) {
+            cellStart[b + 1] += cellStart[b];
+        }
+        int[] next = Arrays.copyOf(cellStart, bucketMask + 1);
+        for (int i = 0; i < n; i++) {
+            cellNodes[next[bucket(nodeCellX[i], nodeCellY[i])]++] = i;
+        }
+
+        Arrays.fill(colorStart, 0);
+        for (int i = 0; i < n; i++) {
+            colorStart[color(i) + 1]++;
+        }
+        for (int c = 0; c < 9; c++) {
+            colorStart[c + 1] += colorStart[c];
+        }
+        next = Arrays.copyOf(colorStart, 9);
+        for (int k = 0; k < n; k++) {
+            int i = cellNodes[k];
+            colorNodes[next[color(i)]++] = i;
+        }
+    }
+
+    /*
+     * Cells of one color are 3 cells apart, so their neighbourhoods don't meet
+     */
+    private int color(int i) {
+        return Math.floorMod(nodeCellX[i], 3) * 3 + Math.floorMod(nodeCellY[i], 3);
+    }
+
+    private int bucket(int cx, int cy) {
+        int h = cx * 0x9E3779B1 + cy * 0x85EBCA77;
+        return (h ^ (h >>> 15)) & bucketMask;
+    }
+
+    /*
+     * Pushes apart the overlapping pairs of the nodes colorNodes[colorStart[color] + from ..
+     * colorStart[color] + to - 1]. The range is widened to whole buckets, since a bucket
+     * can hold more than one cell of the color and those must not run on two threads.
+     * Returns the overlaps it found.
+     */
+    private long separate(int color, int from, int to) {
+        int base = colorStart[color];
+        int end = colorStart[color + 1];
+        int start = base + from;
+        // a bucket that starts before the range belongs to the range before
+        while (start > base && start < end && bucketOf(colorNodes[start]) == bucketOf(colorNodes[start - 1])) {
+            start++;
+        }
+        int stop = base + to;
+        while (stop < end && stop > base && bucketOf(colorNodes[stop]) == bucketOf(colorNodes[stop - 1])) {
+            stop++;
+        }
+        long seen = 0;
+        int[] visited = new int[9];
+        for (int k = start; k < stop; k++) {
+            int i = colorNodes[k];
+            int cx = nodeCellX[i], cy = nodeCellY[i];
+            int visitedCount = 0;
+            for (int ox = -1; ox <= 1; ox++) {
+                for (int oy = -1; oy <= 1; oy++) {
+                    int b = bucket(cx + ox, cy + oy);
+                    // two neighbouring cells can share a bucket, look at it once
+                    boolean again = false;
+                    for (int v = 0; v < visitedCount; v++) {
+                        again |= visited[v] == b;
+                    }
+                    if (again) {
+                        continue;
+                    }
+                    visited[visitedCount++] = b;
+                    for (int e = cellStart[b]; e < cellStart[b + 1]; e++) {
+                        int j = cellNodes[e];
+                        int dxCell = nodeCellX[j] - cx, dyCell = nodeCellY[j] - cy;
+                        // other cells hashed to the bucket, and pairs of one cell seen from the other node
+                        if (dxCell < -1 || dxCell > 1 || dyCell < -1 || dyCell > 1
+                            || (dxCell == 0 && dyCell == 0 && j <= i)) {
+                            continue;
+                        }
+                        if (separate(i, j)) {
+                            seen++;
+                        }
+                    }
+                }
+            }
+        }
+        return seen;
+    }
+
+    private int bucketOf(int i) {
+        return bucket(nodeCellX[i], nodeCellY[i]);
+    }
+
+    /*
+     * Moves i and j apart by speed times their overlap, true if they overlapped. A pair
+     * is pushed a little further than touching, so float rounding doesn't leave it
+     * overlapping by a hair.
+     */
+    private boolean separate(int i, int j) {
+        double ddx = x[i] - x[j];
+        double ddy = y[i] - y[j];
+        double distance = Math.sqrt(ddx * ddx + ddy * ddy);
+        double slack = (radius[i] + radius[j]) * 1e-3;
+        double overlap = radius[i] + radius[j] - distance;
+        if (overlap <= 0 || (fixed[i] && fixed[j])) {
+            return false;
+        }
+        overlap += slack;
+        if (distance == 0) {
+            // same place: a direction from the pair
+            double angle = (i * 0.618034 + j * 0.414214) * 2 * Math.PI;
+            ddx = Math.cos(angle);
+            ddy = Math.sin(angle);
+            distance = 1;
+        }
+        // each node takes half of the push, all of it when the other is fixed
+        double push = overlap * speed / distance;
+        double shareI = fixed[i] ? 0 : fixed[j] ? 1 : 0.5;
+        double shareJ = 1 - shareI;
+        x[i] += (float) (ddx * push * shareI);
+        y[i] += (float) (ddy * push * shareI);
+        x[j] -= (float) (ddx * push * shareJ);
+        y[j] -= (float) (ddy * push * shareJ);
+        return true;
+    }
+
+    private interface Range {
+        long run(int from, int to);
+    }
+
+    private static class RangeTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final Range body;
+        private final int fromChunk;
+        private final int toChunk;
+        private final int n;
+
+        RangeTask(Range body, int fromChunk, int toChunk, int n) {
+            this.body = body;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+            this.n = n;
+        }
+
+        @Override
+        protected Long compute() {
+            if (toChunk - fromChunk <= 1) {
+                return body.run(fromChunk * CHUNK, Math.min(n, toChunk * CHUNK));
+            }
+            int mid = (fromChunk + toChunk) >>> 1;
+            var left = new RangeTask(body, fromChunk, mid, n);
+            var right = new RangeTask(body, mid, toChunk, n);
+            invokeAll(left, right);
+            return left.join() + right.join();
+        }
+    }
+
+    /*
+     * Overlaps the last step pushed apart, -1 before the first step
+     */
+    public long getOverlaps() {
+        return overlaps;
+    }
+
+    @Override
+    public void writePositions() {
+        for (int i = 0; i < nodes.length; i++) {
+            if (!fixed[i]) {
+                nodes[i].setX(x[i]);
+                nodes[i].setY(y[i]);
+            }
+        }
+    }
+
+    @Override
+    public Node[] nodes() {
+        return nodes;
+    }
+
+    @Override
+    public float[] positionsX() {
+        return x;
+    }
+
+    @Override
+    public float[] positionsY() {
+        return y;
+    }
+
+    @Override
+    public boolean canAlgo() {
+        return !done && graphModel != null;
+    }
+
+    @Override
+    public void endAlgo() {
+        if (nodes != null) {
+            writePositions();
+        }
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        // The arrays can be large, keep only the properties
+        nodes = null;
+        x = y = radius = null;
+        fixed = null;
+        cellStart = cellNodes = nodeCellX = nodeCellY = colorStart = colorNodes = null;
+    }
+
+    @Override
+    public LayoutProperty[] getProperties() {
+        List<LayoutProperty> properties = new ArrayList<>();
+        final String overlap = NbBundle.getMessage(getClass(), "GridNoverlap.category.overlap");
+        final String performance = NbBundle.getMessage(getClass(), "GridNoverlap.category.performance");
+        try {
+            properties.add(property(Double.class, "ratio", overlap, "getRatio", "setRatio"));
+            properties.add(property(Double.class, "margin", overlap, "getMargin", "setMargin"));
+            properties.add(property(Double.class, "speed", performance, "getSpeed", "setSpeed"));
+            properties.add(property(Integer.class, "threads", performance, "getThreads", "setThreads"));
+            properties.add(property(Integer.class, "stallSteps", performance, "getStallSteps", "setStallSteps"));
+            properties.add(property(Integer.class, "stepLimit", performance, "getStepLimit", "setStepLimit"));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+        return properties.toArray(new LayoutProperty[0]);
+    }
+
+    private LayoutProperty property(Class<?> type, String key, String category, String getter, String setter) throws NoSuchMethodException {
+        return LayoutProperty.createProperty(this, type,
+            NbBundle.getMessage(getClass(), "GridNoverlap."+key+".name"), category, "GridNoverlap."+key+".name",
+            NbBundle.getMessage(getClass(), "GridNoverlap."+key+".desc"), getter, setter);
+    }
+
+    /*
+     * Ratio and margin as in Noverlap
+     */
+    @Override
+    public void resetPropertiesValues() {
+        ratio = 1.2;
+        margin = 5.0;
+        speed = 1.9;
+        threads = Runtime.getRuntime().availableProcessors();
+        stallSteps = 200;
+        stepLimit = 1000;
+    }
+
+    @Override
+    public LayoutBuilder getBuilder() {
+        return builder;
+    }
+
+    public Double getRatio() {
+        return ratio;
+    }
+
+    public void setRatio(Double ratio) {
+        this.ratio = ratio;
+    }
+
+    public Double getMargin() {
+        return margin;
+    }
+
+    public void setMargin(Double margin) {
+        this.margin = margin;
+    }
+
+    public Double getSpeed() {
+        return speed;
+    }
+
+    public void setSpeed(Double speed) {
+        // 2 and above pushes pairs past each other and never settles
+        this.speed = Math.max(0.0, Math.min(1.99, speed));
+    }
+
+    public Integer getThreads() {
+        return threads;
+    }
+
+    public void setThreads(Integer threads) {
+        this.threads = threads;
+    }
+
+    public Integer getStallSteps() {
+        return stallSteps;
+    }
+
+    public void setStallSteps(Integer stallSteps) {
+        this.stallSteps = stallSteps;
+    }
+
+    public Integer getStepLimit() {
+        return stepLimit;
+    }
+
+    public void setStepLimit(Integer stepLimit) {
+        this.stepLimit = stepLimit;
+    }
+}
@@ -0,0 +1,61 @@
+package layout;
+
+import javax.swing.Icon;
+import javax.swing.JPanel;
+
+import org.gephi.layout.spi.Layout;
+import org.gephi.layout.spi.LayoutBuilder;
+import org.gephi.layout.spi.LayoutUI;
+import org.openide.util.NbBundle;
+import org.openide.util.lookup.ServiceProvider;
+
+@ServiceProvider(service = LayoutBuilder.class)
+public class GridNoverlapLayoutBuilder implements LayoutBuilder {
+
+    public static final String IDENTIFER = "GridNoverlap";
+
+    private final LayoutUI ui = new GridNoverlapUI();
+
+    @Override
+    public String getName() {
+        return NbBundle.getMessage(getClass(), "GridNoverlap.name");
+    }
+
+    @Override
+    public LayoutUI getUI() {
+        return ui;
+    }
+
+    @Override
+    public GridNoverlapLayout buildLayout() {
+        return new GridNoverlapLayout(this);
+    }
+
+    private static class GridNoverlapUI implements LayoutUI {
+
+        @Override
+        public String getDescription() {
+            return NbBundle.getMessage(GridNoverlapLayoutBuilder.class, "GridNoverlap.description");
+        }
+
+        @Override
+        public Icon getIcon() {
+            return null;
+        }
+
+        @Override
+        public JPanel getSimplePanel(Layout layout) {
+            return null;
+        }
+
+        @Override
+        public int getQualityRank() {
+            return 4;
+        }
+
+        @Override
+        public int getSpeedRank() {
+            return 5;
+        }
+    }
+}
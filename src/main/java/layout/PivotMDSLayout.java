@@ -0,0 +1,428 @@
+package layout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.layout.spi.Layout;
+import org.gephi.layout.spi.LayoutBuilder;
+import org.gephi.layout.spi.LayoutProperty;
+import org.openide.util.NbBundle;
+
+/**
+ * Pivot MDS (Brandes and Pich): an initial placement for force layouts, done in one step.
+ * <p>
+ * Pivots are picked max-min: each next pivot is the node farthest from those already
+ * picked, so a BFS from every pivot gives both its hop distances and the next pivot.
+ * The n x pivots matrix of squared distances is double centered, and the nodes are
+ * projected on its two main axes (power iteration on the small pivots x pivots matrix
+ * C'C). The layout is then scaled so that one hop is {@code Edge length} long, as close
+ * as a least squares fit of the pivot distances allows. Nodes that a BFS can't reach
+ * are put one hop past the farthest node it reached.
+ * <p>
+ * The BFSes run one after the other, since each picks the next pivot; the centering and
+ * projection run on {@code Threads number} threads.
+ */
+public class PivotMDSLayout implements Layout {
+
+    // Nodes per parallel task
+    private static final int CHUNK = 4096;
+    private static final int POWER_ITERATIONS = 200;
+
+    private final LayoutBuilder builder;
+    private GraphModel graphModel;
+
+    private int pivots;
+    private double edgeLength;
+    private int threads;
+
+    private boolean done;
+
+    public PivotMDSLayout(LayoutBuilder builder) {
+        this.builder = builder;
+    }
+
+    @Override
+    public void setGraphModel(GraphModel graphModel) {
+        this.graphModel = graphModel;
+    }
+
+    @Override
+    public void initAlgo() {
+        done = false;
+    }
+
+    /*
+     * The whole placement, later steps do nothing
+     */
+    @Override
+    public void goAlgo() {
+        if (done) {
+            return;
+        }
+        done = true;
+        var graph = graphModel.getGraphVisible();
+        Node[] nodes;
+        int[] adjacencyStart;
+        int[] adjacency;
+        graph.readLock();
+        try {
+            nodes = graph.getNodes().toArray();
+            int n = nodes.length;
+            int maxStoreId = 0;
+            for (var node : nodes) {
+                maxStoreId = Math.max(maxStoreId, node.getStoreId());
+            }
+            int[] indexOf = new int[maxStoreId + 1];
+            for (int i = 0; i < n; i++) {
+                indexOf[nodes[i].getStoreId()] = i;
+            }
+            var edges = graph.getEdges().toArray();
+            adjacencyStart = new int[n + 1];
+            for (var edge : edges) {
+                adjacencyStart[indexOf[edge.getSource().getStoreId()] + 1]++;
+                adjacencyStart[indexOf[edge.getTarget().getStoreId()] + 1]++;
+            }
+            for (int i = 0; i < n; i++) {
+                adjacencyStart[i + 1] += adjacencyStart[i];
+            }
+            adjacency = new int[adjacencyStart[n]];
+            int[] next = Arrays.copyOf(adjacencyStart, n);
+            for (var edge : edges) {
+                int source = indexOf[edge.getSource().getStoreId()];
+                int target = indexOf[edge.getTarget().getStoreId()];
+                adjacency[next[source]++] = target;
+                adjacency[next[target]++] = source;
+            }
+        } finally {
+            graph.readUnlock();
+        }
+
+        int n = nodes.length;
+        int k = Math.min(pivots, n);
+        if (k < 3) {
+            return;
+        }
+        int[] pivotNodes = new int[k];
+        int[][] distances = pivotDistances(n, k, adjacencyStart, adjacency, pivotNodes);
+        adjacency = null;
+
+        var pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            // squared distances, double centered: c(i, j) = -(d2(i, j) - rowMean(i) - colMean(j) + mean) / 2
+            double[] rowMean = new double[n];
+            double[] colMean = new double[k];
+            for (int j = 0; j < k; j++) {
+                for (int i = 0; i < n; i++) {
+                    double d2 = (double) distances[j][i] * distances[j][i];
+                    rowMean[i] += d2 / k;
+                    colMean[j] += d2 / n;
+                }
+            }
+            double mean = 0;
+            for (int j = 0; j < k; j++) {
+                mean += colMean[j] / k;
+            }
+            var centered = new Centered(distances, rowMean, colMean, mean);
+
+            double[] ctc = sumChunks(pool, n, (from, to) -> {
+                double[] sum = new double[k * k];
+                double[] row = new double[k];
+                for (int i = from; i < to; i++) {
+                    centered.row(i, row);
+                    for (int a = 0; a < k; a++) {
+                        for (int b = a; b < k; b++) {
+                            sum[a * k + b] += row[a] * row[b];
+                        }
+                    }
+                }
+                return sum;
+            });
+            for (int a = 0; a < k; a++) {
+                for (int b = 0; b < a; b++) {
+                    ctc[a * k + b] = ctc[b * k + a];
+                }
+            }
+            double[] axisX = mainAxis(ctc, k, null);
+            double[] axisY = mainAxis(ctc, k, axisX);
+
+            float[] x = new float[n];
+            float[] y = new float[n];
+            sumChunks(pool, n, (from, to) -> {
+                double[] row = new double[k];
+                for (int i = from; i < to; i++) {
+                    centered.row(i, row);
+                    double px = 0, py = 0;
+                    for (int j = 0; j < k; j++) {
+                        px += row[j] * axisX[j];
+                        py += row[j] * axisY[j];
+                    }
+                    x[i] = (float) px;
+                    y[i] = (float) py;
+                }
+                return null;
+            });
+
+            // least squares scale of the pivot distances, in hops
+            double[] fit = sumChunks(pool, n, (from, to) -> {
+                double dl = 0, ll = 0;
+                for (int i = from; i < to; i++) {
+                    for (int j = 0; j < k; j++) {
+                        double l = Math.hypot(x[i] - x[pivotNodes[j]], y[i] - y[pivotNodes[j]]);
+                        dl += distances[j][i] * l;
+                        ll += l * l;
+                    }
+                }
+                return new double[] {dl, ll};
+            });
+            double scale = fit[1] > 0 ? fit[0] / fit[1] * edgeLength : 1;
+
+            // nodes with the same distances to every pivot (leaves of one hub, small components)
+            // land on one point, where a force layout can't tell them apart
+            var random = new Random(42);
+            double jitter = 0.1 * edgeLength;
+            for (int i = 0; i < n; i++) {
+                if (!nodes[i].isFixed()) {
+                    nodes[i].setX((float) (x[i] * scale + (random.nextDouble() - 0.5) * jitter));
+                    nodes[i].setY((float) (y[i] * scale + (random.nextDouble() - 0.5) * jitter));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /*
+     * Hop distances from k max-min pivots, distances[j][i] from pivotNodes[j] to node i
+     */
+    private static int[][] pivotDistances(int n, int k, int[] adjacencyStart, int[] adjacency, int[] pivotNodes) {
+        int[][] distances = new int[k][];
+        int[] minDistance = new int[n];
+        Arrays.fill(minDistance, Integer.MAX_VALUE);
+        int[] queue = new int[n];
+        // start from a node of the largest degree, it is central more often than not
+        int pivot = 0;
+        for (int i = 1; i < n; i++) {
+            if (adjacencyStart[i + 1] - adjacencyStart[i] > adjacencyStart[pivot + 1] - adjacencyStart[pivot]) {
+                pivot = i;
+            }
+        }
+        for (int j = 0; j < k; j++) {
+            pivotNodes[j] = pivot;
+            int[] d = new int[n];
+            Arrays.fill(d, -1);
+            d[pivot] = 0;
+            int head = 0, tail = 0;
+            queue[tail++] = pivot;
+            int farthest = 0;
+            while (head < tail) {
+                int u = queue[head++];
+                farthest = d[u];
+                for (int e = adjacencyStart[u]; e < adjacencyStart[u + 1]; e++) {
+                    int v = adjacency[e];
+                    if (d[v] < 0) {
+                        d[v] = d[u] + 1;
+                        queue[tail++] = v;
+                    }
+                }
+            }
+            int next = pivot;
+            for (int i = 0; i < n; i++) {
+                if (d[i] < 0) {
+                    d[i] = farthest + 1;
+                }
+                minDistance[i] = Math.min(minDistance[i], d[i]);
+                if (minDistance[i] > minDistance[next]) {
+                    next = i;
+                }
+            }
+            distances[j] = d;
+            pivot = next;
+        }
+        return distances;
+    }
+
+    /*
+     * Rows of the double centered matrix, computed on the fly instead of stored
+     */
+    private static class Centered {
+        private final int[][] distances;
+        private final double[] rowMean;
+        private final double[] colMean;
+        private final double mean;
+        private final int k;
+
+        Centered(int[][] distances, double[] rowMean, double[] colMean, double mean) {
+            this.distances = distances;
+            this.rowMean = rowMean;
+            this.colMean = colMean;
+            this.mean = mean;
+            this.k = colMean.length;
+        }
+
+        void row(int i, double[] row) {
+            for (int j = 0; j < k; j++) {
+                double d2 = (double) distances[j][i] * distances[j][i];
+                row[j] = -0.5 * (d2 - rowMean[i] - colMean[j] + mean);
+            }
+        }
+    }
+
+    /*
+     * Main eigenvector of the symmetric k x k matrix, orthogonal to the given one if any
+     */
+    private static double[] mainAxis(double[] matrix, int k, double[] orthogonalTo) {
+        double[] v = new double[k];
+        for (int j = 0; j < k; j++) {
+            // any start that is not orthogonal to the answer
+            v[j] = 1 + (j % 7) * 0.1;
+        }
+        double[] w = new double[k];
+        for (int it = 0; it < POWER_ITERATIONS; it++) {
+            if (orthogonalTo != null) {
+                double dot = 0;
+                for (int j = 0; j < k; j++) {
+                    dot += v[j] * orthogonalTo[j];
+                }
+                for (int j = 0; j < k; j++) {
+                    v[j] -= dot * orthogonalTo[j];
+                }
+            }
+            double norm = 0;
+            for (int a = 0; a < k; a++) {
+                double s = 0;
+                for (int b = 0; b < k; b++) {
+                    s += matrix[a * k + b] * v[b];
+                }
+                w[a] = s;
+                norm += s * s;
+            }
+            norm = Math.sqrt(norm);
+            if (norm == 0) {
+                break;
+            }
+            for (int j = 0; j < k; j++) {
+                v[j] = w[j] / norm;
+            }
+        }
+        return v;
+    }
+
+    private interface Chunk {
+        double[] run(int from, int to);
+    }
+
+    /*
+     * Runs chunk over ranges of CHUNK nodes and adds up the arrays it returns, null if it returns none
+     */
+    private static double[] sumChunks(ForkJoinPool pool, int n, Chunk chunk) {
+        return pool.invoke(new ChunkTask(chunk, 0, (n + CHUNK - 1) / CHUNK, n));
+    }
+
+    private static class ChunkTask extends RecursiveTask<double[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final Chunk chunk;
+        private final int fromChunk;
+        private final int toChunk;
+        private final int n;
+
+        ChunkTask(Chunk chunk, int fromChunk, int toChunk, int n) {
+            this.chunk = chunk;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+            this.n = n;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (toChunk - fromChunk <= 1) {
+                return chunk.run(fromChunk * CHUNK, Math.min(n, toChunk * CHUNK));
+            }
+            int mid = (fromChunk + toChunk) >>> 1;
+            var left = new ChunkTask(chunk, fromChunk, mid, n);
+            var right = new ChunkTask(chunk, mid, toChunk, n);
+            invokeAll(left, right);
+            double[] a = left.join();
+            double[] b = right.join();
+            if (a == null || b == null) {
+                return a != null ? a : b;
+            }
+            for (int i = 0; i < a.length; i++) {
+                a[i] += b[i];
+            }
+            return a;
+        }
+    }
+
+    @Override
+    public boolean canAlgo() {
+        return !done && graphModel != null;
+    }
+
+    @Override
+    public void endAlgo() {
+    }
+
+    @Override
+    public LayoutProperty[] getProperties() {
+        List<LayoutProperty> properties = new ArrayList<>();
+        final String placement = NbBundle.getMessage(getClass(), "PivotMDS.category.placement");
+        final String performance = NbBundle.getMessage(getClass(), "PivotMDS.category.performance");
+        try {
+            properties.add(property(Integer.class, "pivots", placement, "getPivots", "setPivots"));
+            properties.add(property(Double.class, "edgeLength", placement, "getEdgeLength", "setEdgeLength"));
+            properties.add(property(Integer.class, "threads", performance, "getThreads", "setThreads"));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+        return properties.toArray(new LayoutProperty[0]);
+    }
+
+    private LayoutProperty property(Class<?> type, String key, String category, String getter, String setter) throws NoSuchMethodException {
+        return LayoutProperty.createProperty(this, type,
+            NbBundle.getMessage(getClass(), "PivotMDS."+key+".name"), category, "PivotMDS."+key+".name",
+            NbBundle.getMessage(getClass(), "PivotMDS."+key+".desc"), getter, setter);
+    }
+
+    @Override
+    public void resetPropertiesValues() {
+        pivots = 50;
+        edgeLength = 100.0;
+        threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public LayoutBuilder getBuilder() {
+        return builder;
+    }
+
+    public Integer getPivots() {
+        return pivots;
+    }
+
+    public void setPivots(Integer pivots) {
+        this.pivots = pivots;
+    }
+
+    public Double getEdgeLength() {
+        return edgeLength;
+    }
+
+    public void setEdgeLength(Double edgeLength) {
+        this.edgeLength = edgeLength;
+    }
+
+    public Integer getThreads() {
+        return threads;
+    }
+
+    public void setThreads(Integer threads) {
+        this.threads = threads;
+    }
+}
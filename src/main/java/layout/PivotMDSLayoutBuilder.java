@@ -0,0 +1,61 @@
+package layout;
+
+import javax.swing.Icon;
+import javax.swing.JPanel;
+
+import org.gephi.layout.spi.Layout;
+import org.gephi.layout.spi.LayoutBuilder;
+import org.gephi.layout.spi.LayoutUI;
+import org.openide.util.NbBundle;
+import org.openide.util.lookup.ServiceProvider;
+
+@ServiceProvider(service = LayoutBuilder.class)
+public class PivotMDSLayoutBuilder implements LayoutBuilder {
+
+    public static final String IDENTIFER = "PivotMDS";
+
+    private final LayoutUI ui = new PivotMDSUI();
+
+    @Override
+    public String getName() {
+        return NbBundle.getMessage(getClass(), "PivotMDS.name");
+    }
+
+    @Override
+    public LayoutUI getUI() {
+        return ui;
+    }
+
+    @Override
+    public PivotMDSLayout buildLayout() {
+        return new PivotMDSLayout(this);
+    }
+
+    private static class PivotMDSUI implements LayoutUI {
+
+        @Override
+        public String getDescription() {
+            return NbBundle.getMessage(PivotMDSLayoutBuilder.class, "PivotMDS.description");
+        }
+
+        @Override
+        public Icon getIcon() {
+            return null;
+        }
+
+        @Override
+        public JPanel getSimplePanel(Layout layout) {
+            return null;
+        }
+
+        @Override
+        public int getQualityRank() {
+            return 2;
+        }
+
+        @Override
+        public int getSpeedRank() {
+            return 5;
+        }
+    }
+}